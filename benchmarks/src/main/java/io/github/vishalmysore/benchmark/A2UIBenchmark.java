@@ -0,0 +1,212 @@
+package io.github.vishalmysore.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.vishalmysore.data.ResultPage;
+import io.github.vishalmysore.service.DerbyService;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A2UI payload construction for a page of query results and messages, with and without the JSON
+ * serialization that follows on the way to the client. The *Maps benchmarks build the same
+ * payloads the way DerbyService did before the UiNode components, a HashMap per nesting level,
+ * as the baseline. Run with {@code -prof gc}, the gc.alloc.rate.norm column is the allocation
+ * per payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class A2UIBenchmark {
+
+    @Param({"5", "50"})
+    private int rows;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DerbyService derbyService;
+    private Method createResultUI;
+    private Method createMessageUI;
+    private ResultPage page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        derbyService = new DerbyService();
+        createResultUI = DerbyService.class.getDeclaredMethod("createResultUI", String.class, ResultPage.class);
+        createResultUI.setAccessible(true);
+        createMessageUI = DerbyService.class.getDeclaredMethod("createMessageUI", String.class, String.class);
+        createMessageUI.setAccessible(true);
+
+        page = new ResultPage();
+        page.setColumns(new String[]{"ID", "NAME", "EMAIL", "AMOUNT"});
+        for (int r = 0; r < rows; r++) {
+            page.getRows().add(new Object[]{r, "name-" + r, "user" + r + "@example.com", r * 9.99});
+        }
+        page.setPageNumber(2);
+        page.setPageSize(rows);
+        page.setFirstRow(rows + 1);
+        page.setPreviousToken("0123456789abcdef0123456789abcdef-0");
+        page.setNextToken("0123456789abcdef0123456789abcdef-2");
+    }
+
+    @Benchmark
+    public Object resultUI() throws Exception {
+        return createResultUI.invoke(derbyService, "SELECT * FROM USERS", page);
+    }
+
+    @Benchmark
+    public byte[] resultUIJson() throws Exception {
+        return objectMapper.writeValueAsBytes(createResultUI.invoke(derbyService, "SELECT * FROM USERS", page));
+    }
+
+    @Benchmark
+    public Object messageUI() throws Exception {
+        return createMessageUI.invoke(derbyService, "Data Inserted", "100 rows inserted into table 'USERS'.");
+    }
+
+    @Benchmark
+    public Object resultUIMaps() {
+        return MapPayloads.resultUI(derbyService, "SELECT * FROM USERS", page);
+    }
+
+    @Benchmark
+    public byte[] resultUIMapsJson() throws Exception {
+        return objectMapper.writeValueAsBytes(MapPayloads.resultUI(derbyService, "SELECT * FROM USERS", page));
+    }
+
+    @Benchmark
+    public Object messageUIMaps() {
+        return MapPayloads.messageUI(derbyService, "Data Inserted", "100 rows inserted into table 'USERS'.");
+    }
+
+    /**
+     * The payloads as DerbyService built them from HashMaps, same shape and same message
+     * envelope, kept here as the baseline for the UiNode versions.
+     */
+    static final class MapPayloads {
+
+        static Map<String, Object> messageUI(DerbyService service, String title, String message) {
+            List<Map<String, Object>> components = new ArrayList<Map<String, Object>>();
+            components.add(column("root", Arrays.asList("title", "message")));
+            components.add(text("title", "🗄️ " + title, "h2"));
+            components.add(text("message", message, "body"));
+            return service.buildA2UIMessage("message_ui", "root", components);
+        }
+
+        static Map<String, Object> resultUI(DerbyService service, String query, ResultPage page) {
+            List<String> children = new ArrayList<String>();
+            List<Map<String, Object>> components = new ArrayList<Map<String, Object>>();
+
+            children.add("title");
+            children.add("query");
+            components.add(text("title", "📊 Query Results", "h2"));
+            components.add(text("query", "Query: " + query, "body"));
+
+            String[] columns = page.getColumns();
+            List<String> header = new ArrayList<String>(columns.length);
+            for (int c = 0; c < columns.length; c++) {
+                String id = "h_" + c;
+                header.add(id);
+                components.add(text(id, columns[c], "h5"));
+            }
+            children.add("header");
+            components.add(row("header", header));
+
+            List<Object[]> rows = page.getRows();
+            for (int r = 0; r < rows.size(); r++) {
+                Object[] row = rows.get(r);
+                List<String> cells = new ArrayList<String>(row.length);
+                for (int c = 0; c < row.length; c++) {
+                    String id = "r" + r + "_" + c;
+                    cells.add(id);
+                    components.add(text(id, String.valueOf(row[c]), "body"));
+                }
+                String id = "row_" + r;
+                children.add(id);
+                components.add(row(id, cells));
+            }
+
+            String range = rows.isEmpty() ? "No rows"
+                    : "Rows " + page.getFirstRow() + "-" + (page.getFirstRow() + rows.size() - 1)
+                    + ", page " + page.getPageNumber();
+            children.add("page_info");
+            components.add(text("page_info", range, "caption"));
+
+            List<String> buttons = new ArrayList<String>();
+            if (page.getPreviousToken() != null) {
+                buttons.add("prev");
+                components.add(text("prev_label", "◀ Previous", "body"));
+                components.add(button("prev", "prev_label", page.getPreviousToken()));
+            }
+            if (page.getNextToken() != null) {
+                buttons.add("next");
+                components.add(text("next_label", "Next ▶", "body"));
+                components.add(button("next", "next_label", page.getNextToken()));
+            }
+            if (!buttons.isEmpty()) {
+                children.add("paging");
+                components.add(row("paging", buttons));
+            }
+            components.add(column("root", children));
+            return service.buildA2UIMessage("query_results", "root", components);
+        }
+
+        private static Map<String, Object> text(String id, String text, String usageHint) {
+            Map<String, Object> literal = new HashMap<String, Object>();
+            literal.put("literalString", text);
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("text", literal);
+            props.put("usageHint", usageHint);
+            return component(id, "Text", props);
+        }
+
+        private static Map<String, Object> row(String id, List<String> children) {
+            return component(id, "Row", childList(children));
+        }
+
+        private static Map<String, Object> column(String id, List<String> children) {
+            return component(id, "Column", childList(children));
+        }
+
+        private static Map<String, Object> childList(List<String> children) {
+            Map<String, Object> explicitList = new HashMap<String, Object>();
+            explicitList.put("explicitList", children);
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("children", explicitList);
+            return props;
+        }
+
+        private static Map<String, Object> button(String id, String labelId, String pageToken) {
+            Map<String, Object> tokenValue = new HashMap<String, Object>();
+            tokenValue.put("literalString", pageToken);
+            Map<String, Object> tokenEntry = new HashMap<String, Object>();
+            tokenEntry.put("key", "pageToken");
+            tokenEntry.put("value", tokenValue);
+            Map<String, Object> action = new HashMap<String, Object>();
+            action.put("name", "showResultPage");
+            action.put("context", Collections.singletonList(tokenEntry));
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("child", labelId);
+            props.put("action", action);
+            return component(id, "Button", props);
+        }
+
+        private static Map<String, Object> component(String id, String type, Map<String, Object> props) {
+            Map<String, Object> component = new HashMap<String, Object>();
+            component.put(type, props);
+            Map<String, Object> node = new HashMap<String, Object>();
+            node.put("id", id);
+            node.put("component", component);
+            return node;
+        }
+    }
+}
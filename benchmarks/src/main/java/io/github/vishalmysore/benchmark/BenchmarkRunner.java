@@ -0,0 +1,34 @@
+package io.github.vishalmysore.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs the suites and archives the results as results/jmh-&lt;bench.version&gt;.json, so the
+ * file of one release can be compared with the next one using {@link ResultComparator}.
+ * Regular JMH command line options (include pattern, -p, -f ...) are passed through.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String version = System.getProperty("bench.version", "dev");
+        Path dir = Paths.get(System.getProperty("bench.results", "benchmarks/results"));
+        Files.createDirectories(dir);
+        Path result = dir.resolve("jmh-" + version + ".json");
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+        new Runner(options).run();
+        System.out.println("Results archived to " + result.toAbsolutePath());
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.vishalmysore.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection acquisition: pooled checkout against opening a Derby connection per call,
+ * which is what every action did before the pool was introduced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionBenchmark {
+
+    private HikariDataSource pool;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = Fixtures.pool();
+        url = pool.getJdbcUrl();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean pooled() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean driverManager() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url)) {
+            return conn.getAutoCommit();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.vishalmysore.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.vishalmysore.advisor.WorkloadRecorder;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.RowData;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.metrics.SqlMetrics;
+import io.github.vishalmysore.service.BulkLoader;
+import io.github.vishalmysore.service.QueryGuard;
+import io.github.vishalmysore.service.ReadReplicas;
+import io.github.vishalmysore.service.ResultStreamer;
+import io.github.vishalmysore.service.SqlBuilder;
+import io.github.vishalmysore.service.StatementCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the application components without a Spring context. Fields that Spring would
+ * inject are set by name, so benchmarks measure the component code and nothing else.
+ */
+final class Fixtures {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private Fixtures() {
+    }
+
+    static HikariDataSource pool() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("bench-" + DATABASES.incrementAndGet());
+        config.setDriverClassName("org.apache.derby.jdbc.EmbeddedDriver");
+        config.setJdbcUrl("jdbc:derby:memory:bench" + DATABASES.get() + ";create=true");
+        config.setMaximumPoolSize(4);
+        return new HikariDataSource(config);
+    }
+
+    static StatementCache statementCache(int size) {
+        StatementCache cache = new StatementCache();
+        set(cache, "cacheSize", size);
+        set(cache, "meterRegistry", new SimpleMeterRegistry());
+        cache.init();
+        return cache;
+    }
+
+    static ResultStreamer resultStreamer(StatementCache cache) {
+        ResultStreamer streamer = new ResultStreamer();
+        set(streamer, "statementCache", cache);
+        set(streamer, "sqlMetrics", sqlMetrics());
+        set(streamer, "queryGuard", queryGuard());
+        set(streamer, "workloadRecorder", workloadRecorder());
+        set(streamer, "readReplicas", new ReadReplicas());
+        set(streamer, "fetchSize", 500);
+        set(streamer, "maxRows", Long.MAX_VALUE);
+        set(streamer, "maxBytes", Long.MAX_VALUE);
+        set(streamer, "streamMaxRows", Long.MAX_VALUE);
+        set(streamer, "streamMaxBytes", Long.MAX_VALUE);
+        return streamer;
+    }
+
+    static BulkLoader bulkLoader(int batchSize) {
+        BulkLoader loader = new BulkLoader();
+        set(loader, "batchSize", batchSize);
+        set(loader, "sqlMetrics", sqlMetrics());
+        set(loader, "schemaCatalog", schemaCatalog());
+        return loader;
+    }
+
+    static QueryGuard queryGuard() {
+        QueryGuard guard = new QueryGuard();
+        set(guard, "enabled", true);
+        set(guard, "maxCost", Double.MAX_VALUE);
+        set(guard, "queryTimeoutSeconds", 0);
+        set(guard, "estimateCacheSize", 256);
+        set(guard, "meterRegistry", new SimpleMeterRegistry());
+        guard.init();
+        return guard;
+    }
+
+    static SchemaCatalog schemaCatalog() {
+        SchemaCatalog catalog = new SchemaCatalog();
+        set(catalog, "summaryMaxChars", 2000);
+        set(catalog, "readReplicas", new ReadReplicas());
+        return catalog;
+    }
+
+    static WorkloadRecorder workloadRecorder() {
+        WorkloadRecorder recorder = new WorkloadRecorder();
+        set(recorder, "enabled", true);
+        set(recorder, "maxShapes", 1000);
+        return recorder;
+    }
+
+    static SqlMetrics sqlMetrics() {
+        SqlMetrics metrics = new SqlMetrics();
+        set(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+        return metrics;
+    }
+
+    /** Column 0 is an INTEGER id, the rest alternate VARCHAR, DOUBLE and DATE */
+    static TableData tableData(String tableName, int rows, int columns) {
+        List<ColumnData> headers = new ArrayList<ColumnData>();
+        for (int c = 0; c < columns; c++) {
+            ColumnData header = new ColumnData();
+            header.setColumnName("C" + c);
+            header.setSqlColumnType(c == 0 ? "INTEGER" : c % 3 == 1 ? "VARCHAR(64)" : c % 3 == 2 ? "DOUBLE" : "DATE");
+            headers.add(header);
+        }
+        List<RowData> rowData = new ArrayList<RowData>(rows);
+        for (int r = 0; r < rows; r++) {
+            List<ColumnData> cells = new ArrayList<ColumnData>(columns);
+            for (int c = 0; c < columns; c++) {
+                ColumnData cell = new ColumnData();
+                cell.setColumnName("C" + c);
+                cell.setColumnValue(c == 0 ? String.valueOf(r)
+                        : c % 3 == 1 ? "value-" + r + "-" + c
+                        : c % 3 == 2 ? String.valueOf(r * 1.5)
+                        : "2024-01-" + (10 + r % 20));
+                cells.add(cell);
+            }
+            RowData row = new RowData();
+            row.setRowNum(r);
+            row.setColumnDataList(cells);
+            rowData.add(row);
+        }
+        TableData tableData = new TableData();
+        tableData.setTableName(tableName);
+        tableData.setHeaderList(headers);
+        tableData.setRowDataList(rowData);
+        return tableData;
+    }
+
+    static void createTable(Connection conn, TableData tableData) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(SqlBuilder.createTable(tableData));
+        }
+    }
+
+    static void set(Object target, String name, Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // look in the superclass
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " on " + target.getClass());
+    }
+}
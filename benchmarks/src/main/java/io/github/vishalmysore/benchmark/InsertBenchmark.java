@@ -0,0 +1,64 @@
+package io.github.vishalmysore.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.vishalmysore.data.LoadStats;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.service.BulkLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insertDataInTable's load path at several row and column counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int rows;
+
+    @Param({"4", "16"})
+    private int columns;
+
+    private HikariDataSource pool;
+    private BulkLoader bulkLoader;
+    private TableData tableData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        pool = Fixtures.pool();
+        bulkLoader = Fixtures.bulkLoader(1000);
+        tableData = Fixtures.tableData("BENCH_INSERT", rows, columns);
+        try (Connection conn = pool.getConnection()) {
+            Fixtures.createTable(conn, tableData);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE BENCH_INSERT");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public LoadStats batchInsert() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return bulkLoader.load(conn, tableData);
+        }
+    }
+}
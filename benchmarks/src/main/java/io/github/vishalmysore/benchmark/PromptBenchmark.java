@@ -0,0 +1,113 @@
+package io.github.vishalmysore.benchmark;
+
+import com.t4a.processor.AIProcessor;
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.vishalmysore.cache.ActionTrace;
+import io.github.vishalmysore.cache.HashingPromptEmbedder;
+import io.github.vishalmysore.cache.PromptResponseCache;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.limit.RequestLimiter;
+import io.github.vishalmysore.service.ProcessorProvider;
+import io.github.vishalmysore.service.PromptService;
+import io.github.vishalmysore.service.ResultStreamer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The prompt pipeline around the LLM. The processor is a local fake that runs one real
+ * query instead of calling a model, so the numbers show the overhead of our own code:
+ * cache lookup, action tracing and the Derby round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+
+    private static final String QUERY = "SELECT COUNT(*) FROM BENCH_PROMPT WHERE C0 > 10";
+
+    @Param({"false", "true"})
+    private boolean cacheEnabled;
+
+    @Param({"EXACT", "SIMILARITY"})
+    private String keyMode;
+
+    private HikariDataSource pool;
+    private PromptService promptService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        pool = Fixtures.pool();
+        final ResultStreamer resultStreamer = Fixtures.resultStreamer(Fixtures.statementCache(64));
+        TableData tableData = Fixtures.tableData("BENCH_PROMPT", 1000, 4);
+        try (Connection conn = pool.getConnection()) {
+            Fixtures.createTable(conn, tableData);
+            Fixtures.bulkLoader(1000).load(conn, tableData);
+        }
+
+        InvocationHandler fake = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "processSingleAction":
+                    ActionTrace.recordRead(Collections.singleton("BENCH_PROMPT"));
+                    try (Connection conn = pool.getConnection()) {
+                        return resultStreamer.collect(conn, QUERY);
+                    }
+                case "query":
+                    return "There are " + args[1] + " matching rows.";
+                case "toString":
+                    return "FakeProcessor";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        AIProcessor processor = (AIProcessor) Proxy.newProxyInstance(
+                AIProcessor.class.getClassLoader(), new Class[]{AIProcessor.class}, fake);
+
+        ProcessorProvider provider = new ProcessorProvider();
+        Fixtures.set(provider, "processor", processor);
+
+        PromptResponseCache cache = new PromptResponseCache();
+        Fixtures.set(cache, "enabled", cacheEnabled);
+        Fixtures.set(cache, "maxSize", 1000);
+        Fixtures.set(cache, "ttlSeconds", 300L);
+        Fixtures.set(cache, "keyMode", PromptResponseCache.KeyMode.valueOf(keyMode));
+        Fixtures.set(cache, "similarityThreshold", 0.92);
+        Fixtures.set(cache, "embedder", new HashingPromptEmbedder());
+        Fixtures.set(cache, "meterRegistry", new SimpleMeterRegistry());
+        cache.init();
+
+        promptService = new PromptService();
+        Fixtures.set(promptService, "processorProvider", provider);
+        Fixtures.set(promptService, "promptResponseCache", cache);
+        Fixtures.set(promptService, "meterRegistry", new SimpleMeterRegistry());
+        Fixtures.set(promptService, "schemaCatalog", Fixtures.schemaCatalog());
+        Fixtures.set(promptService, "schemaSummaryEnabled", false);
+
+        // measure the prompt path itself, not the admission limits
+        RequestLimiter limiter = new RequestLimiter();
+        Fixtures.set(limiter, "enabled", false);
+        Fixtures.set(promptService, "requestLimiter", limiter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public String answer() throws Exception {
+        return promptService.answer("How many rows in bench prompt have c0 above 10?");
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.vishalmysore.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two archived JMH JSON files and exits with status 1 when any benchmark got
+ * slower than the allowed threshold.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar io.github.vishalmysore.benchmark.ResultComparator \
+ *      benchmarks/results/jmh-0.0.1.json benchmarks/results/jmh-0.0.2.json 10
+ * </pre>
+ * All suites report average time, so a larger score is a regression.
+ */
+public class ResultComparator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ResultComparator <baseline.json> <candidate.json> [threshold %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Double> baseline = scores(new File(args[0]));
+        Map<String, Double> candidate = scores(new File(args[1]));
+
+        boolean regression = false;
+        for (Map.Entry<String, Double> entry : candidate.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null || before == 0) {
+                System.out.printf("%-90s %12.3f  (new)%n", entry.getKey(), entry.getValue());
+                continue;
+            }
+            double change = (entry.getValue() - before) * 100 / before;
+            boolean slower = change > threshold;
+            regression |= slower;
+            System.out.printf("%-90s %12.3f -> %12.3f  %+7.1f%%%s%n",
+                    entry.getKey(), before, entry.getValue(), change, slower ? "  REGRESSION" : "");
+        }
+        System.exit(regression ? 1 : 0);
+    }
+
+    private static Map<String, Double> scores(File file) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<String, Double>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.get("benchmark").asText());
+            JsonNode params = run.get("params");
+            if (params != null) {
+                Iterator<Map.Entry<String, JsonNode>> it = params.fields();
+                while (it.hasNext()) {
+                    Map.Entry<String, JsonNode> param = it.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            scores.put(key.toString(), run.get("primaryMetric").get("score").asDouble());
+        }
+        return scores;
+    }
+}
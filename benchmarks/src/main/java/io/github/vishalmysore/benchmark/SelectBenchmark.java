@@ -0,0 +1,128 @@
+package io.github.vishalmysore.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.service.BulkLoader;
+import io.github.vishalmysore.service.JsonRowWriter;
+import io.github.vishalmysore.service.ResultStreamer;
+import io.github.vishalmysore.service.RowHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * retrieveData's read path: materializing a whole result against streaming it row by row,
+ * and the NDJSON endpoint writing rows as Object[] through Jackson against writing them
+ * straight from the ResultSet. Run with {@code -prof gc} to compare gc.alloc.rate.norm;
+ * results/jmh-ndjson-gc.json holds such a run of the two NDJSON benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SelectBenchmark {
+
+    private static final String QUERY = "SELECT * FROM BENCH_SELECT";
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HikariDataSource pool;
+    private ResultStreamer resultStreamer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        pool = Fixtures.pool();
+        resultStreamer = Fixtures.resultStreamer(Fixtures.statementCache(64));
+        BulkLoader loader = Fixtures.bulkLoader(5000);
+        try (Connection conn = pool.getConnection()) {
+            TableData chunk = Fixtures.tableData("BENCH_SELECT", Math.min(rows, 100000), 6);
+            Fixtures.createTable(conn, chunk);
+            for (int loaded = 0; loaded < rows; loaded += chunk.getRowDataList().size()) {
+                loader.load(conn, chunk);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public QueryResult materialize() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return resultStreamer.collect(conn, QUERY);
+        }
+    }
+
+    @Benchmark
+    public ResultStreamer.StreamStats stream(final Blackhole blackhole) throws SQLException, IOException {
+        try (Connection conn = pool.getConnection()) {
+            return resultStreamer.stream(conn, QUERY, Long.MAX_VALUE, Long.MAX_VALUE, new RowHandler() {
+                @Override
+                public void onColumns(String[] columnNames) {
+                    blackhole.consume(columnNames);
+                }
+
+                @Override
+                public void onRow(Object[] values) {
+                    blackhole.consume(values);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public ResultStreamer.StreamStats ndjsonObjects() throws SQLException, IOException {
+        final JsonGenerator gen = objectMapper.getFactory().createGenerator(DISCARD);
+        try (Connection conn = pool.getConnection()) {
+            return resultStreamer.stream(conn, QUERY, Long.MAX_VALUE, Long.MAX_VALUE, new RowHandler() {
+                @Override
+                public void onColumns(String[] columnNames) throws IOException {
+                    gen.writeObject(columnNames);
+                }
+
+                @Override
+                public void onRow(Object[] values) throws IOException {
+                    gen.writeObject(values);
+                    gen.writeRaw('\n');
+                }
+            });
+        } finally {
+            gen.close();
+        }
+    }
+
+    @Benchmark
+    public ResultStreamer.StreamStats ndjsonDirect() throws SQLException, IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(DISCARD);
+        try (Connection conn = pool.getConnection()) {
+            return resultStreamer.stream(conn, QUERY, Long.MAX_VALUE, Long.MAX_VALUE,
+                    new JsonRowWriter(gen, 500));
+        } finally {
+            gen.close();
+        }
+    }
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+}
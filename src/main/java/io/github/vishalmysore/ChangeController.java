@@ -0,0 +1,137 @@
+package io.github.vishalmysore;
+
+import io.github.vishalmysore.cdc.ChangeLog;
+import io.github.vishalmysore.cdc.ChangeRecord;
+import io.github.vishalmysore.cdc.QuerySubscriptions;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.limit.RequestLimiter;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Change data capture: the change log of the write paths, and standing queries that push
+ * result deltas over server-sent events instead of being polled.
+ */
+@RestController
+public class ChangeController {
+
+    private static final int MAX_RECORDS = 1000;
+    private static final int MAX_ROWS = 10000;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private QuerySubscriptions querySubscriptions;
+
+    @Autowired
+    private RequestLimiter requestLimiter;
+
+    @Value("${cdc.subscriptions.timeout-ms:1800000}")
+    private long subscriptionTimeoutMs;
+
+    @Operation(summary = "Read the change log",
+            description = "Changes after the given sequence number, oldest first, optionally of one database. " +
+                    "Inserted rows are only included with rows=true, and then only up to " + MAX_ROWS +
+                    " rows per response. When 'since' is below firstSequence - 1 the log no longer holds " +
+                    "every change and a reader has to start over")
+    @GetMapping("/changes")
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public Map<String, Object> changes(@RequestParam(value = "since", defaultValue = "0") long since,
+                                       @RequestParam(value = "max", defaultValue = "500") int max,
+                                       @RequestParam(value = "databaseName", required = false) String databaseName,
+                                       @RequestParam(value = "rows", defaultValue = "false") boolean rows) {
+        String database = changeLog.database(databaseName);
+        boolean anyDatabase = databaseName == null || databaseName.trim().isEmpty();
+        List<ChangeRecord> records = new ArrayList<ChangeRecord>();
+        long rowBudget = MAX_ROWS;
+        long next = since;
+        for (ChangeRecord record : changeLog.since(since, Math.max(1, Math.min(max, MAX_RECORDS)))) {
+            if (!anyDatabase && !Objects.equals(database, record.getDatabaseName())) {
+                next = record.getSequence();
+                continue;
+            }
+            if (rows && record.getRows() != null && !records.isEmpty() && record.getRowCount() > rowBudget) {
+                break;
+            }
+            next = record.getSequence();
+            if (rows && record.getRows() != null) {
+                rowBudget -= record.getRowCount();
+                records.add(record);
+            } else {
+                records.add(record.withoutRows());
+            }
+        }
+        Map<String, Object> page = new HashMap<String, Object>();
+        page.put("firstSequence", changeLog.firstSequence());
+        page.put("lastSequence", changeLog.lastSequence());
+        page.put("nextSince", next);
+        page.put("changes", records);
+        return page;
+    }
+
+    @Operation(summary = "Subscribe to a query",
+            description = "Emits a 'snapshot' event with the whole result, then a 'rows' event with the rows " +
+                    "each insert adds to it, or another 'snapshot' when a change cannot be applied as rows. " +
+                    "A user holds at most cdc.subscriptions.max-per-principal subscriptions at a time")
+    @GetMapping(value = "/query/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam("sqlQuery") String sqlQuery,
+                                @RequestParam(value = "databaseName", required = false) String databaseName) {
+        requestLimiter.acquireAction("subscribeQuery").close();
+        final SseEmitter emitter = new SseEmitter(subscriptionTimeoutMs);
+        final QuerySubscriptions.Subscription subscription;
+        try {
+            subscription = querySubscriptions.subscribe(sqlQuery, databaseName, new QuerySubscriptions.DeltaListener() {
+                @Override
+                public void onSnapshot(long sequence, QueryResult result) throws IOException {
+                    Map<String, Object> snapshot = new HashMap<String, Object>();
+                    snapshot.put("sequence", sequence);
+                    snapshot.put("columns", result.getColumns());
+                    snapshot.put("rows", result.getRows());
+                    snapshot.put("rowCount", result.getRowCount());
+                    snapshot.put("truncated", result.isTruncated());
+                    emitter.send(SseEmitter.event().name("snapshot").data(snapshot));
+                }
+
+                @Override
+                public void onRows(long sequence, List<Object[]> rows) throws IOException {
+                    Map<String, Object> delta = new HashMap<String, Object>();
+                    delta.put("sequence", sequence);
+                    delta.put("rows", rows);
+                    emitter.send(SseEmitter.event().name("rows").data(delta));
+                }
+
+                @Override
+                public void onError(String message) throws IOException {
+                    emitter.send(SseEmitter.event().name("error").data(message));
+                    emitter.complete();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        return emitter;
+    }
+}
@@ -6,28 +6,44 @@ import com.t4a.predict.PredictionLoader;
 
 import com.t4a.processor.*;
 
-import com.t4a.processor.spring.SpringOpenAIProcessor;
+import io.github.vishalmysore.limit.RateLimitedException;
 import io.github.vishalmysore.service.DerbyService;
+import io.github.vishalmysore.service.PromptService;
+import io.github.vishalmysore.service.QueryCancellation;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.extern.java.Log;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 @Log
 @RestController
 public class DataController {
     @Autowired
-    private ApplicationContext applicationContext;
+    private DerbyService derbyService;
 
     @Autowired
-    private DerbyService derbyService;
+    private PromptService promptService;
+
+    @Autowired
+    @Qualifier("agentExecutor")
+    private TaskExecutor agentExecutor;
+
+    @Value("${agent.async.timeout-ms:120000}")
+    private long asyncTimeoutMs;
 
     @Operation(summary = "Execute any action based on prompt", description = " Try out with any of these prompts <br>" +
             " 1) start database server <br>" +
@@ -41,15 +57,55 @@ public class DataController {
     })
     @GetMapping("/actionOpenAI")
     public String actOnPromptWithOpenAI(@RequestParam("prompt") String prompt) {
-        AIProcessor processor = new SpringOpenAIProcessor(applicationContext);
         try {
-
-            Object object = processor.processSingleAction(prompt);
-            String answer =  processor.query(prompt,object);
-            return answer;
+            return promptService.answer(prompt);
         } catch (AIProcessingException e) {
-            throw new RuntimeException(e);
+            RateLimitedException rateLimited = rateLimited(e);
+            throw rateLimited != null ? rateLimited : new RuntimeException(e);
         }
 
     }
+
+    @Operation(summary = "Execute any action based on prompt without holding a servlet thread",
+            description = "Same as /actionOpenAI, the LLM round trips run on the agent executor " +
+                    "and the request is completed asynchronously")
+    @GetMapping("/actionOpenAI/async")
+    public DeferredResult<String> actOnPromptWithOpenAIAsync(@RequestParam("prompt") String prompt) {
+        final DeferredResult<String> result = new DeferredResult<String>(asyncTimeoutMs);
+        // stop the action's query once nobody is waiting for the answer anymore
+        final QueryCancellation cancellation = new QueryCancellation();
+        result.onTimeout(() -> {
+            cancellation.cancel();
+            result.setErrorResult(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Prompt timed out"));
+        });
+        result.onError(e -> cancellation.cancel());
+        try {
+            agentExecutor.execute(new DelegatingSecurityContextRunnable(() -> {
+                cancellation.enter();
+                try {
+                    result.setResult(promptService.answer(prompt));
+                } catch (Exception e) {
+                    log.warning("Async prompt failed: " + e.getMessage());
+                    RateLimitedException rateLimited = rateLimited(e);
+                    result.setErrorResult(rateLimited != null ? rateLimited : e);
+                } finally {
+                    cancellation.exit();
+                }
+            }));
+        } catch (TaskRejectedException e) {
+            result.setErrorResult(new ResponseStatusException(
+                    HttpStatus.SERVICE_UNAVAILABLE, "Too many prompts in flight"));
+        }
+        return result;
+    }
+
+    /** An action the limiter turned away, wrapped in whatever the processor threw, answers 429 */
+    private static RateLimitedException rateLimited(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof RateLimitedException) {
+                return (RateLimitedException) t;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,103 @@
+package io.github.vishalmysore;
+
+import io.github.vishalmysore.export.ExportFile;
+import io.github.vishalmysore.export.ExportFormat;
+import io.github.vishalmysore.export.ExportService;
+import io.github.vishalmysore.limit.RequestLimiter;
+import io.github.vishalmysore.service.DerbyService;
+import io.github.vishalmysore.service.QueryCancellation;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+/**
+ * Download side of exports, either streamed directly from the query or from a file
+ * produced earlier by the exportData action. A streamed export holds a query slot like
+ * /query/stream, and its query is cancelled when the request ends before the export does.
+ */
+@Log
+@RestController
+public class ExportController {
+
+    private static final String STREAM_KEY = ExportController.class.getName() + ".stream";
+
+    @Autowired
+    private DerbyService derbyService;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private RequestLimiter requestLimiter;
+
+    @Operation(summary = "Stream a SELECT result as CSV or columnar binary",
+            description = "format is CSV (default) or COLUMNAR, rows are written as they are read")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam("sqlQuery") String sqlQuery,
+                                                        @RequestParam(value = "format", required = false) String format,
+                                                        @RequestParam(value = "databaseName", required = false) String databaseName,
+                                                        HttpServletRequest request) {
+        final ExportFormat exportFormat = ExportFormat.of(format);
+        final RequestLimiter.Permit permit = requestLimiter.acquireAction("exportQuery");
+        final QueryCancellation cancellation = new QueryCancellation();
+        // runs on timeouts, errors and disconnects too, also when the body never got to run
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(STREAM_KEY, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                cancellation.cancel();
+                permit.close();
+            }
+        });
+        StreamingResponseBody body = out -> {
+            cancellation.enter();
+            try {
+                derbyService.exportQuery(sqlQuery, databaseName, exportFormat, out);
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage(), e);
+            } finally {
+                cancellation.exit();
+                permit.close();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getMimeType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"export" + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
+    @Operation(summary = "Download a file produced by the exportData action")
+    @GetMapping("/export/{id}")
+    public ResponseEntity<Resource> download(@PathVariable("id") String id) throws IOException {
+        ExportFile file = exportService.find(id);
+        if (file == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired export " + id);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(file.getFormat().getMimeType()))
+                .contentLength(file.getSizeBytes())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + file.getFileName() + "\"")
+                .body(new FileSystemResource(file.getPath()));
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.vishalmysore;
+
+import io.github.vishalmysore.data.ImportProgress;
+import io.github.vishalmysore.service.DerbyService;
+import io.github.vishalmysore.service.ImportTracker;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * File based data path, loads CSV or gzip CSV uploads without going through the LLM.
+ */
+@Log
+@RestController
+public class ImportController {
+
+    @Autowired
+    private DerbyService derbyService;
+
+    @Autowired
+    private ImportTracker importTracker;
+
+    @Operation(summary = "Import a CSV or gzip CSV file into a table",
+            description = "The first line must be the header. A missing table is created with a schema inferred from the first rows")
+    @PostMapping(value = "/import/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ImportProgress importCsv(@RequestParam("tableName") String tableName,
+                                    @RequestParam("file") MultipartFile file,
+                                    @RequestParam(value = "databaseName", required = false) String databaseName)
+            throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return derbyService.importCsv(databaseName, tableName, file.getOriginalFilename(), in, file.getSize());
+        }
+    }
+
+    @Operation(summary = "Progress of running and recent imports")
+    @GetMapping("/import/progress")
+    public List<ImportProgress> progress() {
+        return importTracker.list();
+    }
+
+    @GetMapping("/import/progress/{id}")
+    public ImportProgress progress(@PathVariable("id") String id) {
+        ImportProgress progress = importTracker.get(id);
+        if (progress == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown import " + id);
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.vishalmysore;
+
+import io.github.vishalmysore.data.JobStatus;
+import io.github.vishalmysore.job.JobService;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Background jobs for prompts and actions that take longer than a client is willing to
+ * wait on one request: submit, poll or stream the progress, fetch the result.
+ */
+@Log
+@RestController
+public class JobController {
+
+    @Autowired
+    private JobService jobService;
+
+    @Operation(summary = "Run a prompt as a background job",
+            description = "priority is HIGH, NORMAL (default) or LOW")
+    @PostMapping("/jobs/prompt")
+    public JobStatus submitPrompt(@RequestParam("prompt") String prompt,
+                                  @RequestParam(value = "priority", required = false) String priority) {
+        try {
+            return jobService.submitPrompt(prompt, priority);
+        } catch (TaskRejectedException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @Operation(summary = "Run an agent action as a background job",
+            description = "The body maps the action's parameter names to their values, e.g. " +
+                    "{\"sqlQuery\": \"SELECT * FROM ORDERS\", \"format\": \"CSV\"} for exportData")
+    @PostMapping(value = "/jobs/action/{action}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public JobStatus submitAction(@PathVariable("action") String action,
+                                  @RequestBody(required = false) Map<String, Object> params,
+                                  @RequestParam(value = "priority", required = false) String priority) {
+        try {
+            return jobService.submitAction(action, params, priority);
+        } catch (TaskRejectedException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @Operation(summary = "Jobs of the caller, all jobs for admins")
+    @GetMapping("/jobs")
+    public List<JobStatus> list() {
+        return jobService.list();
+    }
+
+    @GetMapping("/jobs/{id}")
+    public JobStatus status(@PathVariable("id") String id) {
+        return found(id, jobService.get(id));
+    }
+
+    @Operation(summary = "Stream the job status as server-sent events",
+            description = "A 'progress' event every second while the job is queued or running, then one 'end' event")
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable("id") String id) {
+        found(id, jobService.get(id));
+        SseEmitter emitter = new SseEmitter(0L);
+        jobService.stream(id, emitter);
+        return emitter;
+    }
+
+    @Operation(summary = "Result of a completed job")
+    @GetMapping("/jobs/{id}/result")
+    public Object result(@PathVariable("id") String id) {
+        JobStatus status = found(id, jobService.get(id));
+        if (status.getState() != JobStatus.State.COMPLETED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Job " + id + " is " + status.getState() + (status.getMessage() != null ? ": " + status.getMessage() : ""));
+        }
+        return status.getResult();
+    }
+
+    @Operation(summary = "Cancel a queued or running job")
+    @DeleteMapping("/jobs/{id}")
+    public JobStatus cancel(@PathVariable("id") String id) {
+        return found(id, jobService.cancel(id));
+    }
+
+    private static JobStatus found(String id, JobStatus status) {
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job " + id);
+        }
+        return status;
+    }
+}
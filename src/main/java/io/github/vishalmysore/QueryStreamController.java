@@ -0,0 +1,147 @@
+package io.github.vishalmysore;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.vishalmysore.limit.RequestLimiter;
+import io.github.vishalmysore.service.DerbyService;
+import io.github.vishalmysore.service.JsonRowWriter;
+import io.github.vishalmysore.service.QueryCancellation;
+import io.github.vishalmysore.service.ResultStreamer;
+import io.github.vishalmysore.service.RowHandler;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Streams SELECT results incrementally instead of building the whole result in memory.
+ * A stream is admitted on the request thread, so an over the limit caller gets its 429
+ * before any of the body is written, and holds its query slot until the stream ends, or
+ * until the request is over when the stream never gets to run.
+ */
+@Log
+@RestController
+public class QueryStreamController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String PERMIT_KEY = QueryStreamController.class.getName() + ".permit";
+
+    @Autowired
+    private DerbyService derbyService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RequestLimiter requestLimiter;
+
+    @Autowired
+    @Qualifier("streamExecutor")
+    private TaskExecutor streamExecutor;
+
+    @Operation(summary = "Stream query results as NDJSON",
+            description = "First line holds the column names, every following line is one row as a JSON array, " +
+                    "the last line holds the row count and whether the result was truncated")
+    @GetMapping(value = "/query/stream", produces = NDJSON)
+    public StreamingResponseBody streamNdjson(@RequestParam("sqlQuery") String sqlQuery,
+                                              @RequestParam(value = "databaseName", required = false) String databaseName,
+                                              HttpServletRequest request) {
+        final RequestLimiter.Permit permit = requestLimiter.acquireAction("streamQuery");
+        // the body may never run, e.g. on a timeout or a disconnect before the executor picks it up
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(PERMIT_KEY, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                permit.close();
+            }
+        });
+        return out -> {
+            final JsonGenerator gen = objectMapper.getFactory().createGenerator(out);
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setRootValueSeparator(null);
+            try {
+                ResultStreamer.StreamStats stats = derbyService.streamQuery(sqlQuery, databaseName,
+                        new JsonRowWriter(gen, 500));
+                gen.writeObject(summary(stats));
+            } catch (Exception e) {
+                log.warning("Query stream failed: " + e.getMessage());
+                gen.writeStartObject();
+                gen.writeStringField("error", e.getMessage());
+                gen.writeEndObject();
+            } finally {
+                permit.close();
+            }
+            gen.writeRaw('\n');
+            gen.flush();
+        };
+    }
+
+    @Operation(summary = "Stream query results as server-sent events",
+            description = "Emits a 'columns' event, one 'row' event per row and a final 'end' event")
+    @GetMapping(value = "/query/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSse(@RequestParam("sqlQuery") String sqlQuery,
+                                @RequestParam(value = "databaseName", required = false) String databaseName) {
+        final SseEmitter emitter = new SseEmitter(0L);
+        // a closed connection surfaces as a timeout or error on the emitter, stop the query then
+        final QueryCancellation cancellation = new QueryCancellation();
+        emitter.onTimeout(cancellation::cancel);
+        emitter.onError(e -> cancellation.cancel());
+        final RequestLimiter.Permit permit = requestLimiter.acquireAction("streamQuery");
+        try {
+            streamExecutor.execute(new DelegatingSecurityContextRunnable(() -> {
+                cancellation.enter();
+                try {
+                    ResultStreamer.StreamStats stats = derbyService.streamQuery(sqlQuery, databaseName, new RowHandler() {
+                        @Override
+                        public void onColumns(String[] columnNames) throws IOException {
+                            emitter.send(SseEmitter.event().name("columns").data(columnNames));
+                        }
+
+                        @Override
+                        public void onRow(Object[] values) throws IOException {
+                            emitter.send(SseEmitter.event().name("row").data(values));
+                        }
+                    });
+                    emitter.send(SseEmitter.event().name("end").data(summary(stats)));
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.warning("Query stream failed: " + e.getMessage());
+                    emitter.completeWithError(e);
+                } finally {
+                    cancellation.exit();
+                    permit.close();
+                }
+            }));
+        } catch (TaskRejectedException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many streams in flight");
+        }
+        return emitter;
+    }
+
+    private static Map<String, Object> summary(ResultStreamer.StreamStats stats) {
+        Map<String, Object> summary = new HashMap<String, Object>();
+        summary.put("rowCount", stats.getRowCount());
+        summary.put("truncated", stats.isTruncated());
+        return summary;
+    }
+}
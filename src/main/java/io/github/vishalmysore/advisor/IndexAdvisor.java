@@ -0,0 +1,299 @@
+package io.github.vishalmysore.advisor;
+
+import io.github.vishalmysore.cache.SchemaCatalog;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Suggests indexes from the recorded workload. Per query shape and table the candidate is
+ * the equality columns followed by at most one range column, which is the longest prefix a
+ * B-tree index can use; with no filter the ORDER BY columns are used, and every join column
+ * is a candidate of its own. Candidates are ranked by the total time of the queries behind
+ * them and dropped when an existing index already starts with the same columns.
+ * <p>
+ * Applied indexes are remembered per database with the latency their queries had before,
+ * and the same shapes are measured again from then on for the before/after report.
+ */
+@Log
+@Component
+public class IndexAdvisor {
+
+    @Autowired
+    private WorkloadRecorder workloadRecorder;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    @Value("${sql.advisor.min-queries:5}")
+    private long minQueries;
+
+    @Value("${sql.advisor.max-suggestions:10}")
+    private int maxSuggestions;
+
+    /** Applied indexes per database URL */
+    private final Map<String, List<Applied>> applied = new HashMap<String, List<Applied>>();
+
+    private static class Applied {
+        private final IndexSuggestion suggestion;
+        private final List<WorkloadRecorder.QueryShape> shapes;
+
+        Applied(IndexSuggestion suggestion, List<WorkloadRecorder.QueryShape> shapes) {
+            this.suggestion = suggestion;
+            this.shapes = shapes;
+        }
+    }
+
+    private static class Candidate {
+        private final IndexSuggestion suggestion = new IndexSuggestion();
+        private final List<WorkloadRecorder.QueryShape> shapes = new ArrayList<WorkloadRecorder.QueryShape>();
+    }
+
+    public List<IndexSuggestion> suggest(Connection conn) throws SQLException {
+        String url = conn.getMetaData().getURL();
+        return new ArrayList<IndexSuggestion>(candidates(conn, url).keySet());
+    }
+
+    /**
+     * Creates the suggested index with the given name, or all suggestions when the name is
+     * empty, and refreshes the table statistics so the optimizer picks them up. Coverage is
+     * checked against a freshly read catalog before each index.
+     *
+     * @param created told about each index right after it was created, so it is published
+     *                even when a later one fails
+     * @return the applied suggestions
+     */
+    public List<IndexSuggestion> apply(Connection conn, String indexName, Consumer<IndexSuggestion> created)
+            throws SQLException {
+        String url = conn.getMetaData().getURL();
+        schemaCatalog.invalidate(conn);
+        Map<IndexSuggestion, List<WorkloadRecorder.QueryShape>> candidates = candidates(conn, url);
+        List<IndexSuggestion> result = new ArrayList<IndexSuggestion>();
+        for (Map.Entry<IndexSuggestion, List<WorkloadRecorder.QueryShape>> entry : candidates.entrySet()) {
+            IndexSuggestion suggestion = entry.getKey();
+            if (indexName != null && !indexName.trim().isEmpty()
+                    && !suggestion.getIndexName().equalsIgnoreCase(indexName.trim())) {
+                continue;
+            }
+            if (covered(conn, suggestion.getTableName(), suggestion.getColumns())) {
+                // an index created earlier in this call already serves it
+                continue;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(suggestion.getDdl());
+            }
+            schemaCatalog.invalidate(conn);
+            created.accept(suggestion);
+            try (CallableStatement cs = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS(?, ?, NULL)")) {
+                cs.setString(1, conn.getSchema());
+                cs.setString(2, suggestion.getTableName());
+                cs.execute();
+            }
+            long count = 0;
+            double millis = 0;
+            for (WorkloadRecorder.QueryShape shape : entry.getValue()) {
+                WorkloadRecorder.Window before = shape.restart();
+                count += before.getCount();
+                millis += before.getTotalNanos() / 1_000_000.0;
+            }
+            suggestion.setBeforeMillis(count == 0 ? 0 : millis / count);
+            suggestion.setApplied(true);
+            synchronized (applied) {
+                List<Applied> list = applied.get(url);
+                if (list == null) {
+                    list = new ArrayList<Applied>();
+                    applied.put(url, list);
+                }
+                list.add(new Applied(suggestion, entry.getValue()));
+            }
+            log.info("Applied index " + suggestion.getDdl());
+            result.add(suggestion);
+        }
+        return result;
+    }
+
+    /**
+     * Indexes applied through the advisor with the current average latency of their queries.
+     */
+    public List<IndexSuggestion> report(Connection conn) throws SQLException {
+        String url = conn.getMetaData().getURL();
+        List<IndexSuggestion> result = new ArrayList<IndexSuggestion>();
+        synchronized (applied) {
+            List<Applied> list = applied.get(url);
+            if (list == null) {
+                return result;
+            }
+            for (Applied a : list) {
+                long count = 0;
+                long nanos = 0;
+                for (WorkloadRecorder.QueryShape shape : a.shapes) {
+                    count += shape.getWindow().getCount();
+                    nanos += shape.getWindow().getTotalNanos();
+                }
+                a.suggestion.setQueriesAfter(count);
+                a.suggestion.setAfterMillis(count == 0 ? 0 : nanos / 1_000_000.0 / count);
+                result.add(a.suggestion);
+            }
+        }
+        return result;
+    }
+
+    private Map<IndexSuggestion, List<WorkloadRecorder.QueryShape>> candidates(Connection conn, String url)
+            throws SQLException {
+
+        Map<String, Set<String>> columnsByTable = new HashMap<String, Set<String>>();
+        Map<List<String>, Candidate> candidates = new LinkedHashMap<List<String>, Candidate>();
+
+        for (WorkloadRecorder.QueryShape shape : workloadRecorder.shapes(url)) {
+            QueryColumns qc = shape.getColumns();
+            for (String table : qc.getTables()) {
+                Set<String> known = columns(conn, table, columnsByTable);
+                if (known.isEmpty()) {
+                    continue;
+                }
+                List<String> equality = new ArrayList<String>();
+                String range = null;
+                List<String> order = new ArrayList<String>();
+                for (QueryColumns.ColumnUse use : qc.getUses()) {
+                    if (!belongsTo(conn, use, table, qc, columnsByTable)) {
+                        continue;
+                    }
+                    switch (use.getUsage()) {
+                        case EQUALITY:
+                            if (!equality.contains(use.getColumn())) {
+                                equality.add(use.getColumn());
+                            }
+                            break;
+                        case RANGE:
+                            if (range == null) {
+                                range = use.getColumn();
+                            }
+                            break;
+                        case ORDER:
+                            order.add(use.getColumn());
+                            break;
+                        case JOIN:
+                            add(candidates, table, Collections.singletonList(use.getColumn()), shape);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                List<String> columns = new ArrayList<String>(equality);
+                if (range != null && !columns.contains(range)) {
+                    columns.add(range);
+                }
+                if (columns.isEmpty()) {
+                    columns.addAll(order);
+                }
+                if (!columns.isEmpty()) {
+                    add(candidates, table, columns, shape);
+                }
+            }
+        }
+
+        List<Candidate> ranked = new ArrayList<Candidate>();
+        for (Candidate candidate : candidates.values()) {
+            IndexSuggestion s = candidate.suggestion;
+            if (s.getQueries() >= minQueries && !covered(conn, s.getTableName(), s.getColumns())) {
+                ranked.add(candidate);
+            }
+        }
+        ranked.sort((a, b) -> Double.compare(b.suggestion.getTotalMillis(), a.suggestion.getTotalMillis()));
+
+        Map<IndexSuggestion, List<WorkloadRecorder.QueryShape>> result =
+                new LinkedHashMap<IndexSuggestion, List<WorkloadRecorder.QueryShape>>();
+        for (Candidate candidate : ranked.subList(0, Math.min(maxSuggestions, ranked.size()))) {
+            result.put(candidate.suggestion, candidate.shapes);
+        }
+        return result;
+    }
+
+    private static void add(Map<List<String>, Candidate> candidates, String table, List<String> columns,
+                            WorkloadRecorder.QueryShape shape) {
+        List<String> key = new ArrayList<String>();
+        key.add(table);
+        key.addAll(columns);
+        Candidate candidate = candidates.get(key);
+        if (candidate == null) {
+            candidate = new Candidate();
+            IndexSuggestion s = candidate.suggestion;
+            s.setTableName(table);
+            s.setColumns(new ArrayList<String>(columns));
+            s.setIndexName(indexName(table, columns));
+            s.setDdl("CREATE INDEX " + s.getIndexName() + " ON " + table + " (" + String.join(", ", columns) + ")");
+            candidates.put(key, candidate);
+        }
+        if (!candidate.shapes.contains(shape)) {
+            candidate.shapes.add(shape);
+            WorkloadRecorder.Window window = shape.getWindow();
+            candidate.suggestion.setQueries(candidate.suggestion.getQueries() + window.getCount());
+            candidate.suggestion.setTotalMillis(candidate.suggestion.getTotalMillis()
+                    + window.getTotalNanos() / 1_000_000.0);
+        }
+    }
+
+    /** Unqualified columns belong to the one table of the query that has such a column */
+    private boolean belongsTo(Connection conn, QueryColumns.ColumnUse use, String table, QueryColumns qc,
+                              Map<String, Set<String>> columnsByTable) throws SQLException {
+        if (use.getTable() != null) {
+            return use.getTable().equals(table) && columns(conn, table, columnsByTable).contains(use.getColumn());
+        }
+        String owner = null;
+        for (String candidate : qc.getTables()) {
+            if (columns(conn, candidate, columnsByTable).contains(use.getColumn())) {
+                if (owner != null) {
+                    return false;
+                }
+                owner = candidate;
+            }
+        }
+        return table.equals(owner);
+    }
+
+    private Set<String> columns(Connection conn, String table,
+                                Map<String, Set<String>> columnsByTable) throws SQLException {
+        Set<String> columns = columnsByTable.get(table);
+        if (columns == null) {
+            columns = new HashSet<String>();
+            SchemaCatalog.Table info = schemaCatalog.table(conn, table);
+            if (info != null) {
+                for (SchemaCatalog.Column column : info.getColumns()) {
+                    columns.add(column.getName());
+                }
+            }
+            columnsByTable.put(table, columns);
+        }
+        return columns;
+    }
+
+    /** True when an existing index, including primary key and unique ones, starts with the columns */
+    private boolean covered(Connection conn, String table, List<String> columns) throws SQLException {
+        SchemaCatalog.Table info = schemaCatalog.table(conn, table);
+        if (info == null) {
+            return false;
+        }
+        for (SchemaCatalog.Index index : info.getIndexes()) {
+            List<String> indexColumns = index.getColumns();
+            if (indexColumns.size() >= columns.size()
+                    && indexColumns.subList(0, columns.size()).equals(columns)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Derby identifiers are at most 128 characters */
+    private static String indexName(String table, List<String> columns) {
+        String name = "IDX_" + table + "_" + String.join("_", columns);
+        if (name.length() > 128) {
+            name = name.substring(0, 119) + "_" + Integer.toHexString(name.hashCode());
+        }
+        return name;
+    }
+}
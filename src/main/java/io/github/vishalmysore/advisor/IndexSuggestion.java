@@ -0,0 +1,42 @@
+package io.github.vishalmysore.advisor;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A CREATE INDEX the advisor recommends, with the workload that motivates it. After the
+ * index is applied {@code afterMillis} holds the average latency of the same queries since.
+ */
+@Getter
+@Setter
+@ToString
+public class IndexSuggestion {
+    private String indexName;
+    private String tableName;
+    private List<String> columns = new ArrayList<String>();
+    private String ddl;
+    /** Executions of the queries that would use the index */
+    private long queries;
+    private double totalMillis;
+    private double beforeMillis;
+    private double afterMillis;
+    private long queriesAfter;
+    private boolean applied;
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder(ddl);
+        if (applied) {
+            sb.append(String.format(Locale.ROOT, " -- applied, avg %.2f ms before, %.2f ms after over %d queries",
+                    beforeMillis, afterMillis, queriesAfter));
+        } else {
+            sb.append(String.format(Locale.ROOT, " -- %d queries, avg %.2f ms", queries,
+                    queries == 0 ? 0 : totalMillis / queries));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package io.github.vishalmysore.advisor;
+
+import io.github.vishalmysore.event.TableChangedEvent;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Best effort extraction of the columns a SELECT filters, joins and sorts on. Qualified
+ * columns are resolved through the table aliases; unqualified columns keep a null table and
+ * are resolved against the catalog by the {@link IndexAdvisor}. Anything that is not a real
+ * column is dropped there as well, so the parser can afford to over-report.
+ */
+@Getter
+@ToString
+public class QueryColumns {
+
+    public enum Usage {
+        /** =, IN: the best index prefix */
+        EQUALITY,
+        /** &lt;, &gt;, BETWEEN, LIKE: usable as the last index column */
+        RANGE,
+        /** column = column */
+        JOIN,
+        /** ORDER BY, an index in that order saves the sort */
+        ORDER
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    public static class ColumnUse {
+        /** Null when the column was not qualified */
+        private final String table;
+        private final String column;
+        private final Usage usage;
+    }
+
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+
+    private static final String REF = "(?:([A-Za-z_][\\w$]*)\\.)?([A-Za-z_][\\w$]*)";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern FROM_CLAUSE = Pattern.compile(
+            "\\bFROM\\s+(.+?)(?=\\bWHERE\\b|\\bGROUP\\b|\\bORDER\\b|\\bHAVING\\b|\\bFETCH\\b|\\bOFFSET\\b"
+                    + "|\\bUNION\\b|\\bEXCEPT\\b|\\bINTERSECT\\b|\\b(?:INNER|LEFT|RIGHT|FULL|CROSS)\\b|\\bJOIN\\b|\\)|$)",
+            FLAGS);
+
+    private static final Pattern JOIN_TABLE = Pattern.compile(
+            "\\bJOIN\\s+([\\w.$]+)(?:\\s+(?:AS\\s+)?([A-Za-z_]\\w*))?", FLAGS);
+
+    private static final Pattern COLUMN_EQUALS_COLUMN = Pattern.compile(
+            REF + "\\s*=\\s*" + REF + "(?![\\w.(])", FLAGS);
+
+    private static final Pattern COMPARISON = Pattern.compile(
+            REF + "\\b\\s*(<>|!=|<=|>=|=|<|>|(?:NOT\\s+)?(?:IN|LIKE|BETWEEN)\\b)", FLAGS);
+
+    private static final Pattern ORDER_BY = Pattern.compile(
+            "\\bORDER\\s+BY\\s+(.+?)(?=\\bFETCH\\b|\\bOFFSET\\b|\\bFOR\\b|\\bWITH\\b|\\)|$)", FLAGS);
+
+    private static final Pattern ORDER_ITEM = Pattern.compile(
+            "^\\s*" + REF + "\\s*(?:ASC|DESC)?\\s*$", FLAGS);
+
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "AND", "OR", "NOT", "WHERE", "ON", "USING", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER",
+            "CROSS", "NATURAL", "GROUP", "ORDER", "BY", "HAVING", "FETCH", "OFFSET", "UNION", "SELECT",
+            "FROM", "AS", "CASE", "WHEN", "THEN", "ELSE", "END", "NULL", "TRUE", "FALSE", "IS", "IN",
+            "LIKE", "BETWEEN", "ASC", "DESC", "CURRENT_DATE", "CURRENT_TIME", "CURRENT_TIMESTAMP"));
+
+    /** Tables in the query, normalized like {@link TableChangedEvent} names */
+    private final List<String> tables = new ArrayList<String>();
+    private final Set<ColumnUse> uses = new LinkedHashSet<ColumnUse>();
+
+    private final Map<String, String> aliases = new HashMap<String, String>();
+
+    public static QueryColumns parse(String sql) {
+        String text = STRING_LITERAL.matcher(sql).replaceAll("?");
+        QueryColumns result = new QueryColumns();
+        result.readTables(text);
+
+        Set<Integer> joinStarts = new HashSet<Integer>();
+        Matcher join = COLUMN_EQUALS_COLUMN.matcher(text);
+        while (join.find()) {
+            if (isKeyword(join.group(2)) || isKeyword(join.group(4))) {
+                continue;
+            }
+            result.add(join.group(1), join.group(2), Usage.JOIN);
+            result.add(join.group(3), join.group(4), Usage.JOIN);
+            joinStarts.add(join.start());
+        }
+
+        Matcher cmp = COMPARISON.matcher(text);
+        while (cmp.find()) {
+            String op = cmp.group(3).toUpperCase(Locale.ROOT);
+            if (joinStarts.contains(cmp.start()) || op.startsWith("NOT")
+                    || op.equals("<>") || op.equals("!=")) {
+                continue;
+            }
+            Usage usage = op.equals("=") || op.equals("IN") ? Usage.EQUALITY : Usage.RANGE;
+            result.add(cmp.group(1), cmp.group(2), usage);
+        }
+
+        Matcher order = ORDER_BY.matcher(text);
+        if (order.find()) {
+            for (String item : order.group(1).split(",")) {
+                Matcher ref = ORDER_ITEM.matcher(item);
+                if (ref.find()) {
+                    result.add(ref.group(1), ref.group(2), Usage.ORDER);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void readTables(String text) {
+        Matcher from = FROM_CLAUSE.matcher(text);
+        while (from.find()) {
+            for (String item : from.group(1).split(",")) {
+                String[] parts = item.trim().split("\\s+");
+                if (parts[0].isEmpty() || parts[0].startsWith("(")) {
+                    continue;
+                }
+                String alias = parts.length > 2 && parts[1].equalsIgnoreCase("AS") ? parts[2]
+                        : parts.length > 1 ? parts[1] : null;
+                addTable(parts[0], alias);
+            }
+        }
+        Matcher join = JOIN_TABLE.matcher(text);
+        while (join.find()) {
+            addTable(join.group(1), join.group(2));
+        }
+    }
+
+    private void addTable(String name, String alias) {
+        String table = TableChangedEvent.normalizeTableName(name);
+        if (!tables.contains(table)) {
+            tables.add(table);
+        }
+        aliases.put(table, table);
+        if (alias != null && !KEYWORDS.contains(alias.toUpperCase(Locale.ROOT))) {
+            aliases.put(alias.toUpperCase(Locale.ROOT), table);
+        }
+    }
+
+    private static boolean isKeyword(String word) {
+        return KEYWORDS.contains(word.toUpperCase(Locale.ROOT));
+    }
+
+    private void add(String qualifier, String column, Usage usage) {
+        if (isKeyword(column)) {
+            return;
+        }
+        String table = null;
+        if (qualifier != null) {
+            table = aliases.get(qualifier.toUpperCase(Locale.ROOT));
+            if (table == null) {
+                return;
+            }
+        } else if (tables.size() == 1) {
+            table = tables.get(0);
+        }
+        uses.add(new ColumnUse(table, column.toUpperCase(Locale.ROOT), usage));
+    }
+}
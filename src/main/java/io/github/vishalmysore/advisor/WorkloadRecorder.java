@@ -0,0 +1,111 @@
+package io.github.vishalmysore.advisor;
+
+import io.github.vishalmysore.service.SqlNormalizer;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records every executed SELECT by database and normalized query shape: how often it ran,
+ * how long it took and which columns it filters, joins and sorts on. The
+ * {@link IndexAdvisor} turns this workload into index suggestions.
+ */
+@Log
+@Component
+public class WorkloadRecorder {
+
+    @Value("${sql.advisor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sql.advisor.max-shapes:1000}")
+    private int maxShapes;
+
+    private final Map<String, QueryShape> shapes = new ConcurrentHashMap<String, QueryShape>();
+
+    private volatile boolean fullLogged;
+
+    /**
+     * Timings of one query shape. The window is restarted when an index is applied for the
+     * shape, so the advisor can compare latency before and after.
+     */
+    @Getter
+    public static class QueryShape {
+        private final String databaseUrl;
+        private final String sql;
+        private final QueryColumns columns;
+        private volatile Window window = new Window();
+
+        QueryShape(String databaseUrl, String sql, QueryColumns columns) {
+            this.databaseUrl = databaseUrl;
+            this.sql = sql;
+            this.columns = columns;
+        }
+
+        /** Starts a new window and returns the finished one */
+        Window restart() {
+            Window finished = window;
+            window = new Window();
+            return finished;
+        }
+    }
+
+    public static class Window {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public double getAverageMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+        }
+    }
+
+    /**
+     * @param databaseUrl JDBC URL of the connection, one workload per database
+     * @param nanos       execute plus fetch time of the query
+     */
+    public void record(String databaseUrl, String sql, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        String key = databaseUrl + '\n' + SqlNormalizer.normalize(sql).getSql();
+        QueryShape shape = shapes.get(key);
+        if (shape == null) {
+            if (shapes.size() >= maxShapes) {
+                if (!fullLogged) {
+                    fullLogged = true;
+                    log.info("Workload recorder holds " + maxShapes + " query shapes, new shapes are ignored");
+                }
+                return;
+            }
+            shape = shapes.computeIfAbsent(key, k -> new QueryShape(databaseUrl, sql, QueryColumns.parse(sql)));
+        }
+        Window window = shape.window;
+        window.count.increment();
+        window.totalNanos.add(nanos);
+    }
+
+    public List<QueryShape> shapes(String databaseUrl) {
+        List<QueryShape> result = new ArrayList<QueryShape>();
+        for (QueryShape shape : shapes.values()) {
+            if (shape.databaseUrl.equals(databaseUrl)) {
+                result.add(shape);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,396 @@
+package io.github.vishalmysore.analytics;
+
+import io.github.vishalmysore.event.TableChangedEvent;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The aggregate shapes the columnar engine answers:
+ * <pre>
+ * SELECT [col, ...] agg(col | *) [[AS] alias], ... FROM table
+ *   [WHERE col op literal [AND ...]] [GROUP BY col, ...]
+ * </pre>
+ * with agg one of COUNT, SUM, AVG, MIN and MAX, op one of =, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=
+ * and IS [NOT] NULL. Anything else, joins, OR, DISTINCT, HAVING, ORDER BY, expressions or
+ * quoted and qualified names, parses to null and stays with Derby.
+ * <p>
+ * {@link #parseSelection} accepts the plain row selections of the same form instead,
+ * {@code SELECT * | col, ... FROM table [WHERE ...]}, for query subscriptions that filter
+ * inserted rows themselves.
+ */
+@Getter
+@ToString
+public class AggregateQuery {
+
+    public enum Function {
+        COUNT,
+        SUM,
+        AVG,
+        MIN,
+        MAX
+    }
+
+    public enum Operator {
+        EQ,
+        NE,
+        LT,
+        LE,
+        GT,
+        GE,
+        IS_NULL,
+        IS_NOT_NULL
+    }
+
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "SELECT", "FROM", "WHERE", "GROUP", "BY", "AND", "OR", "NOT", "IS", "NULL", "AS",
+            "ORDER", "HAVING", "DISTINCT", "ALL", "JOIN", "INNER", "LEFT", "RIGHT", "OUTER",
+            "CROSS", "ON", "UNION", "EXCEPT", "INTERSECT", "FETCH", "OFFSET", "FOR", "WITH",
+            "CASE", "IN", "BETWEEN", "LIKE", "EXISTS"));
+
+    @Getter
+    @ToString
+    public static class Item {
+        /** Null for a plain group column */
+        private final Function function;
+        /** Null for COUNT(*) */
+        private final String column;
+        private final String label;
+
+        Item(Function function, String column, String label) {
+            this.function = function;
+            this.column = column;
+            this.label = label;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Filter {
+        private final String column;
+        private final Operator operator;
+        /** String or BigDecimal, null for IS [NOT] NULL */
+        private final Object literal;
+
+        Filter(String column, Operator operator, Object literal) {
+            this.column = column;
+            this.operator = operator;
+            this.literal = literal;
+        }
+    }
+
+    private String table;
+    /** SELECT *, items is empty then */
+    private boolean star;
+    private final List<Item> items = new ArrayList<Item>();
+    private final List<Filter> filters = new ArrayList<Filter>();
+    private final List<String> groupBy = new ArrayList<String>();
+
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final List<String> tokens;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private int pos;
+
+    private AggregateQuery(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * The query as an aggregate over one table, null when it has any other shape.
+     */
+    public static AggregateQuery parse(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        List<String> tokens = tokenize(sql);
+        if (tokens == null) {
+            return null;
+        }
+        AggregateQuery query = new AggregateQuery(tokens);
+        try {
+            return query.parse(true) ? query : null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The query as a plain selection of rows from one table, null when it has any other
+     * shape, aggregates included.
+     */
+    public static AggregateQuery parseSelection(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        List<String> tokens = tokenize(sql);
+        if (tokens == null) {
+            return null;
+        }
+        AggregateQuery query = new AggregateQuery(tokens);
+        try {
+            return query.parse(false) ? query : null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /** Every column the query reads */
+    public Set<String> columns() {
+        Set<String> columns = new HashSet<String>(groupBy);
+        for (Item item : items) {
+            if (item.column != null) {
+                columns.add(item.column);
+            }
+        }
+        for (Filter filter : filters) {
+            columns.add(filter.column);
+        }
+        return columns;
+    }
+
+    private boolean parse(boolean aggregates) {
+        if (!accept("SELECT")) {
+            return false;
+        }
+        boolean aggregate = false;
+        star = !aggregates && accept("*");
+        while (!star) {
+            Item item = item(items.size() + 1);
+            if (item == null) {
+                return false;
+            }
+            aggregate |= item.function != null;
+            items.add(item);
+            if (!accept(",")) {
+                break;
+            }
+        }
+
+        if (!accept("FROM") || (table = identifier()) == null) {
+            return false;
+        }
+        if (accept("WHERE")) {
+            do {
+                Filter filter = filter();
+                if (filter == null) {
+                    return false;
+                }
+                filters.add(filter);
+            } while (accept("AND"));
+        }
+        if (accept("GROUP")) {
+            if (!accept("BY")) {
+                return false;
+            }
+            do {
+                String column = identifier();
+                if (column == null) {
+                    return false;
+                }
+                groupBy.add(column);
+            } while (accept(","));
+        }
+        while (accept(";")) {
+            // trailing semicolons
+        }
+        if (pos != tokens.size() || aggregate != aggregates || (!aggregates && !groupBy.isEmpty())) {
+            return false;
+        }
+        for (Item item : items) {
+            if (aggregates && item.function == null && !groupBy.contains(item.column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Item item(int position) {
+        String name = identifier();
+        if (name == null) {
+            return null;
+        }
+        Function function = null;
+        String column = name;
+        if ("(".equals(peek())) {
+            try {
+                function = Function.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            pos++;
+            if (accept("*")) {
+                if (function != Function.COUNT) {
+                    return null;
+                }
+                column = null;
+            } else if ((column = identifier()) == null) {
+                return null;
+            }
+            if (!accept(")")) {
+                return null;
+            }
+        }
+        // Derby labels unnamed expressions by their position
+        String label = function == null ? column : String.valueOf(position);
+        if (accept("AS")) {
+            if ((label = identifier()) == null) {
+                return null;
+            }
+        } else if (isIdentifier(peek())) {
+            label = identifier();
+        }
+        return new Item(function, column, label);
+    }
+
+    private Filter filter() {
+        String column = identifier();
+        if (column == null) {
+            return null;
+        }
+        if (accept("IS")) {
+            boolean not = accept("NOT");
+            return accept("NULL")
+                    ? new Filter(column, not ? Operator.IS_NOT_NULL : Operator.IS_NULL, null)
+                    : null;
+        }
+        Operator operator = operator(next());
+        if (operator == null) {
+            return null;
+        }
+        Object literal = literal();
+        return literal == null ? null : new Filter(column, operator, literal);
+    }
+
+    private Object literal() {
+        String token = next();
+        boolean negative = false;
+        if ("-".equals(token) || "+".equals(token)) {
+            negative = "-".equals(token);
+            token = next();
+        }
+        if (token.startsWith("'")) {
+            return negative ? null : token.substring(1, token.length() - 1).replace("''", "'");
+        }
+        if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+            try {
+                BigDecimal value = new BigDecimal(token);
+                return negative ? value.negate() : value;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Operator operator(String token) {
+        switch (token) {
+            case "=":
+                return Operator.EQ;
+            case "<>":
+            case "!=":
+                return Operator.NE;
+            case "<":
+                return Operator.LT;
+            case "<=":
+                return Operator.LE;
+            case ">":
+                return Operator.GT;
+            case ">=":
+                return Operator.GE;
+            default:
+                return null;
+        }
+    }
+
+    private String identifier() {
+        String token = peek();
+        if (!isIdentifier(token)) {
+            return null;
+        }
+        pos++;
+        return TableChangedEvent.normalizeTableName(token);
+    }
+
+    private static boolean isIdentifier(String token) {
+        return token != null && Character.isLetter(token.charAt(0))
+                && !KEYWORDS.contains(token.toUpperCase(Locale.ROOT));
+    }
+
+    private boolean accept(String expected) {
+        String token = peek();
+        if (token != null && token.equalsIgnoreCase(expected)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private String peek() {
+        return pos < tokens.size() ? tokens.get(pos) : null;
+    }
+
+    private String next() {
+        return tokens.get(pos++);
+    }
+
+    /** Words, numbers, quoted strings and operators, null for anything else */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c)) {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i));
+            } else if (Character.isDigit(c) || c == '.') {
+                int start = i;
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i));
+            } else if (c == '\'') {
+                int start = i++;
+                while (true) {
+                    if (i >= n) {
+                        return null;
+                    }
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                tokens.add(sql.substring(start, ++i));
+            } else if ((c == '<' || c == '>' || c == '!') && i + 1 < n
+                    && (sql.charAt(i + 1) == '=' || (c == '<' && sql.charAt(i + 1) == '>'))) {
+                tokens.add(sql.substring(i, i + 2));
+                i += 2;
+            } else if ("(),*=<>;-+".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                return null;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,898 @@
+package io.github.vishalmysore.analytics;
+
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.service.DatabaseRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Answers aggregate questions ("how many ...", "total by ...") from columnar copies of hot
+ * tables instead of Derby's row engine. A table is copied in the background once
+ * sql.columnar.hot-queries aggregates were asked on it; until then, and for every query
+ * the {@link AggregateQuery} parser does not accept, retrieveData runs the query on Derby as
+ * before.
+ * <p>
+ * Scans split the rows into chunks of sql.columnar.chunk-rows that run in parallel on a
+ * fork-join pool and merge their partial groups, so latency grows with rows per core.
+ * <p>
+ * Rows inserted through insertDataInTable are appended to the copy, every other change
+ * drops it. A copy is only taken while no such insert is in flight, which keeps an insert
+ * from being counted both by the copy and by its append.
+ */
+@Log
+@Component
+public class ColumnarEngine {
+
+    @Value("${sql.columnar.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sql.columnar.hot-queries:3}")
+    private int hotQueries;
+
+    @Value("${sql.columnar.max-tables:8}")
+    private int maxTables;
+
+    @Value("${sql.columnar.max-rows:5000000}")
+    private int maxRows;
+
+    @Value("${sql.columnar.chunk-rows:65536}")
+    private int chunkRows;
+
+    /** Fork-join parallelism, 0 for the number of cores */
+    @Value("${sql.columnar.parallelism:0}")
+    private int parallelism;
+
+    @Value("${sql.query.max-rows:10000}")
+    private int maxResultRows;
+
+    @Value("${sql.query.fetch-size:500}")
+    private int fetchSize;
+
+    @Autowired
+    private DatabaseRouter databaseRouter;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private ForkJoinPool pool;
+    private ExecutorService loader;
+    private Timer scans;
+
+    private static class Entry {
+        private final AtomicInteger queries = new AtomicInteger();
+        private volatile ColumnarTable table;
+        private volatile long lastUsed;
+        private long generation;
+        private int pendingWrites;
+        private boolean loading;
+        private boolean tooLarge;
+    }
+
+    @PostConstruct
+    public void init() {
+        scans = meterRegistry.timer("sql.columnar.scan");
+        if (!enabled) {
+            return;
+        }
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        loader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "columnar-loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        entries.clear();
+    }
+
+    /**
+     * The result of an aggregate query from the columnar copy of its table, null when Derby
+     * has to run it: the engine is off, the query has another shape, the table is not hot
+     * or not copied yet, or it uses a column type the copy does not keep.
+     */
+    public QueryResult tryAggregate(String databaseName, String sql) {
+        if (!enabled) {
+            return null;
+        }
+        AggregateQuery query = AggregateQuery.parse(sql);
+        if (query == null) {
+            return null;
+        }
+        String key = key(databaseName, query.getTable());
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+        ColumnarTable table = entry.table;
+        if (table == null) {
+            maybeLoad(databaseName, query.getTable(), entry);
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        long start = System.nanoTime();
+        QueryResult result = execute(table, query);
+        if (result != null) {
+            scans.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Called before insertDataInTable writes, no copy of the table is taken until
+     * {@link #endWrite} and copies in progress are discarded.
+     */
+    public void beginWrite(String databaseName, String tableName) {
+        if (!enabled || tableName == null) {
+            return;
+        }
+        Entry entry = entries.computeIfAbsent(key(databaseName, tableName), k -> new Entry());
+        synchronized (entry) {
+            entry.pendingWrites++;
+            entry.generation++;
+        }
+    }
+
+    public void endWrite(String databaseName, String tableName) {
+        if (!enabled || tableName == null) {
+            return;
+        }
+        Entry entry = entries.get(key(databaseName, tableName));
+        if (entry != null) {
+            synchronized (entry) {
+                entry.pendingWrites--;
+            }
+        }
+    }
+
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = entries.get(key(event.getDatabaseName(), event.getTableName()));
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            ColumnarTable table = entry.table;
+            if (event.getChangeType() == TableChangedEvent.ChangeType.INSERTED
+                    && event.getInsertedRows() != null && table != null
+                    && table.append(event.getInsertedRows(), maxRows)) {
+                return;
+            }
+            entry.table = null;
+            entry.generation++;
+            if (event.getChangeType() != TableChangedEvent.ChangeType.INSERTED) {
+                entry.tooLarge = false;
+            }
+        }
+    }
+
+    private String key(String databaseName, String tableName) {
+        String database = databaseRouter.isDefault(databaseName) ? "" : databaseName.trim().toUpperCase(Locale.ROOT);
+        return database + '\n' + TableChangedEvent.normalizeTableName(tableName);
+    }
+
+    private void maybeLoad(String databaseName, String tableName, Entry entry) {
+        final long generation;
+        synchronized (entry) {
+            if (entry.loading || entry.tooLarge || entry.pendingWrites > 0
+                    || entry.queries.incrementAndGet() < hotQueries) {
+                return;
+            }
+            entry.loading = true;
+            generation = entry.generation;
+        }
+        loader.execute(() -> load(databaseName, tableName, entry, generation));
+    }
+
+    private void load(String databaseName, String tableName, Entry entry, long generation) {
+        ColumnarTable table = null;
+        boolean missing = false;
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+            SchemaCatalog.Table meta = schemaCatalog.table(conn, tableName);
+            if (meta == null) {
+                missing = true;
+            } else {
+                table = ColumnarTable.load(conn, meta, maxRows, fetchSize);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.log(Level.WARNING, "Could not copy table " + tableName + " into the columnar cache", e);
+            synchronized (entry) {
+                entry.loading = false;
+            }
+            return;
+        }
+        synchronized (entry) {
+            entry.loading = false;
+            if (missing) {
+                entries.remove(key(databaseName, tableName), entry);
+                return;
+            }
+            if (table == null) {
+                entry.tooLarge = true;
+                log.info("Table " + tableName + " has more than " + maxRows + " rows, not copied");
+                return;
+            }
+            if (entry.generation != generation || entry.pendingWrites > 0) {
+                return;
+            }
+            entry.lastUsed = System.currentTimeMillis();
+            entry.table = table;
+        }
+        log.info("Copied " + table.getRowCount() + " rows of " + tableName + " into the columnar cache");
+        evictOverflow();
+    }
+
+    /** Keeps at most sql.columnar.max-tables copies, the least recently queried goes first */
+    private void evictOverflow() {
+        List<Entry> loaded = new ArrayList<Entry>();
+        for (Entry entry : entries.values()) {
+            if (entry.table != null) {
+                loaded.add(entry);
+            }
+        }
+        loaded.sort(Comparator.comparingLong(e -> e.lastUsed));
+        for (int i = 0; i < loaded.size() - maxTables; i++) {
+            Entry entry = loaded.get(i);
+            synchronized (entry) {
+                entry.table = null;
+                entry.generation++;
+                entry.queries.set(0);
+            }
+        }
+    }
+
+    /* =================================================
+       EXECUTION
+     ================================================= */
+
+    private QueryResult execute(ColumnarTable table, AggregateQuery query) {
+        table.lock.readLock().lock();
+        try {
+            Plan plan = Plan.of(table, query, chunkRows);
+            if (plan == null) {
+                return null;
+            }
+            Groups groups = pool.invoke(new Scan(plan, 0, table.getRowCount()));
+            return plan.result(groups, maxResultRows);
+        } catch (ArithmeticException e) {
+            // overflow in an INTEGER or SMALLINT result, Derby reports it properly
+            return null;
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    private abstract static class Predicate {
+        abstract boolean test(int row);
+    }
+
+    /** One aggregate of the select list, bound to its column */
+    private static final class Aggregate {
+        private final AggregateQuery.Function function;
+        /** Null for COUNT(*) */
+        private final ColumnarTable.Column column;
+        /** Sort rank of each dictionary code, for MIN and MAX of strings */
+        private final int[] ranks;
+
+        Aggregate(AggregateQuery.Function function, ColumnarTable.Column column) {
+            this.function = function;
+            this.column = column;
+            this.ranks = column != null && column.kind == ColumnarTable.Kind.STRING ? ranks(column) : null;
+        }
+
+        void add(Acc acc, int row) {
+            if (column == null) {
+                acc.count++;
+                return;
+            }
+            if (column.nulls[row]) {
+                return;
+            }
+            acc.count++;
+            switch (column.kind) {
+                case LONG:
+                    long l = column.longs[row];
+                    acc.longSum = Math.addExact(acc.longSum, l);
+                    acc.longMin = Math.min(acc.longMin, l);
+                    acc.longMax = Math.max(acc.longMax, l);
+                    break;
+                case DOUBLE:
+                    double d = column.doubles[row];
+                    acc.doubleSum += d;
+                    acc.doubleMin = Math.min(acc.doubleMin, d);
+                    acc.doubleMax = Math.max(acc.doubleMax, d);
+                    break;
+                default:
+                    int code = column.codes[row];
+                    if (acc.codeMin < 0 || ranks[code] < ranks[acc.codeMin]) {
+                        acc.codeMin = code;
+                    }
+                    if (acc.codeMax < 0 || ranks[code] > ranks[acc.codeMax]) {
+                        acc.codeMax = code;
+                    }
+            }
+        }
+
+        void merge(Acc into, Acc from) {
+            into.count += from.count;
+            into.longSum = Math.addExact(into.longSum, from.longSum);
+            into.doubleSum += from.doubleSum;
+            into.longMin = Math.min(into.longMin, from.longMin);
+            into.longMax = Math.max(into.longMax, from.longMax);
+            into.doubleMin = Math.min(into.doubleMin, from.doubleMin);
+            into.doubleMax = Math.max(into.doubleMax, from.doubleMax);
+            if (from.codeMin >= 0 && (into.codeMin < 0 || ranks[from.codeMin] < ranks[into.codeMin])) {
+                into.codeMin = from.codeMin;
+            }
+            if (from.codeMax >= 0 && (into.codeMax < 0 || ranks[from.codeMax] > ranks[into.codeMax])) {
+                into.codeMax = from.codeMax;
+            }
+        }
+
+        Object value(Acc acc) {
+            if (function == AggregateQuery.Function.COUNT) {
+                return Math.toIntExact(acc == null ? 0 : acc.count);
+            }
+            if (acc == null || acc.count == 0) {
+                return null;
+            }
+            switch (column.kind) {
+                case LONG:
+                    switch (function) {
+                        case SUM:
+                            return longValue(column, acc.longSum);
+                        case AVG:
+                            // Derby keeps the integer type for AVG and truncates
+                            return longValue(column, acc.longSum / acc.count);
+                        case MIN:
+                            return longValue(column, acc.longMin);
+                        default:
+                            return longValue(column, acc.longMax);
+                    }
+                case DOUBLE:
+                    switch (function) {
+                        case SUM:
+                            return doubleValue(column, acc.doubleSum);
+                        case AVG:
+                            return doubleValue(column, acc.doubleSum / acc.count);
+                        case MIN:
+                            return doubleValue(column, acc.doubleMin);
+                        default:
+                            return doubleValue(column, acc.doubleMax);
+                    }
+                default:
+                    return column.dictionary.get(function == AggregateQuery.Function.MIN ? acc.codeMin : acc.codeMax);
+            }
+        }
+    }
+
+    /** Running state of one aggregate in one group */
+    private static final class Acc {
+        private long count;
+        private long longSum;
+        private double doubleSum;
+        private long longMin = Long.MAX_VALUE;
+        private long longMax = Long.MIN_VALUE;
+        private double doubleMin = Double.POSITIVE_INFINITY;
+        private double doubleMax = Double.NEGATIVE_INFINITY;
+        private int codeMin = -1;
+        private int codeMax = -1;
+    }
+
+    /** Values of the group columns, doubles as their bits and strings as their codes */
+    private static final class Key {
+        private final long[] values;
+        private final boolean[] nulls;
+
+        Key(int size) {
+            this.values = new long[size];
+            this.nulls = new boolean[size];
+        }
+
+        Key copy() {
+            Key key = new Key(values.length);
+            System.arraycopy(values, 0, key.values, 0, values.length);
+            System.arraycopy(nulls, 0, key.nulls, 0, nulls.length);
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(values, ((Key) o).values)
+                    && Arrays.equals(nulls, ((Key) o).nulls);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(values) + Arrays.hashCode(nulls);
+        }
+    }
+
+    /**
+     * Partial result of a scan. Without GROUP BY, or grouped by one character column, the
+     * groups are a dense array indexed by dictionary code; otherwise a hash map.
+     */
+    private static final class Groups {
+        private final Acc[][] dense;
+        private final Map<Key, Acc[]> map;
+
+        Groups(Acc[][] dense, Map<Key, Acc[]> map) {
+            this.dense = dense;
+            this.map = map;
+        }
+    }
+
+    private static final class Plan {
+        private final ColumnarTable.Column[] groupColumns;
+        private final int[][] groupRanks;
+        private final Aggregate[] aggregates;
+        private final Predicate[] filters;
+        private final String[] labels;
+        /** Per select item, the group column index or -1 - the aggregate index */
+        private final int[] outputs;
+        private final boolean dense;
+        private final int chunkRows;
+
+        private Plan(ColumnarTable.Column[] groupColumns, Aggregate[] aggregates, Predicate[] filters,
+                     String[] labels, int[] outputs, int chunkRows) {
+            this.groupColumns = groupColumns;
+            this.aggregates = aggregates;
+            this.filters = filters;
+            this.labels = labels;
+            this.outputs = outputs;
+            this.chunkRows = Math.max(1024, chunkRows);
+            this.dense = groupColumns.length == 0
+                    || (groupColumns.length == 1 && groupColumns[0].kind == ColumnarTable.Kind.STRING);
+            this.groupRanks = new int[groupColumns.length][];
+            for (int i = 0; i < groupColumns.length; i++) {
+                if (groupColumns[i].kind == ColumnarTable.Kind.STRING) {
+                    groupRanks[i] = ranks(groupColumns[i]);
+                }
+            }
+        }
+
+        /** Binds the query to the table, null when a column is missing or has the wrong type */
+        static Plan of(ColumnarTable table, AggregateQuery query, int chunkRows) {
+            ColumnarTable.Column[] groupColumns = new ColumnarTable.Column[query.getGroupBy().size()];
+            for (int i = 0; i < groupColumns.length; i++) {
+                if ((groupColumns[i] = table.column(query.getGroupBy().get(i))) == null) {
+                    return null;
+                }
+                // Derby puts 'a' and 'a ' in one group and returns either spelling, leave it to Derby
+                if (groupColumns[i].paddedDuplicates) {
+                    return null;
+                }
+            }
+            List<Aggregate> aggregates = new ArrayList<Aggregate>();
+            String[] labels = new String[query.getItems().size()];
+            int[] outputs = new int[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                AggregateQuery.Item item = query.getItems().get(i);
+                labels[i] = item.getLabel();
+                if (item.getFunction() == null) {
+                    outputs[i] = query.getGroupBy().indexOf(item.getColumn());
+                    continue;
+                }
+                ColumnarTable.Column column = null;
+                if (item.getColumn() != null) {
+                    column = table.column(item.getColumn());
+                    if (column == null) {
+                        return null;
+                    }
+                    boolean numeric = item.getFunction() == AggregateQuery.Function.SUM
+                            || item.getFunction() == AggregateQuery.Function.AVG;
+                    if (numeric && column.kind == ColumnarTable.Kind.STRING) {
+                        return null;
+                    }
+                }
+                outputs[i] = -1 - aggregates.size();
+                aggregates.add(new Aggregate(item.getFunction(), column));
+            }
+            Predicate[] filters = new Predicate[query.getFilters().size()];
+            for (int i = 0; i < filters.length; i++) {
+                AggregateQuery.Filter filter = query.getFilters().get(i);
+                ColumnarTable.Column column = table.column(filter.getColumn());
+                if (column == null || (filters[i] = predicate(column, filter)) == null) {
+                    return null;
+                }
+            }
+            return new Plan(groupColumns, aggregates.toArray(new Aggregate[0]), filters, labels,
+                    outputs, chunkRows);
+        }
+
+        boolean matches(int row) {
+            for (Predicate filter : filters) {
+                if (!filter.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Groups newGroups() {
+            if (!dense) {
+                return new Groups(null, new HashMap<Key, Acc[]>());
+            }
+            int size = groupColumns.length == 0 ? 1 : groupColumns[0].dictionary.size() + 1;
+            return new Groups(new Acc[size][], null);
+        }
+
+        Acc[] newAccs() {
+            Acc[] accs = new Acc[aggregates.length];
+            for (int i = 0; i < accs.length; i++) {
+                accs[i] = new Acc();
+            }
+            return accs;
+        }
+
+        /** Dense slot of a row: 0 without GROUP BY or for NULL, code + 1 otherwise */
+        int slot(int row) {
+            if (groupColumns.length == 0) {
+                return 0;
+            }
+            ColumnarTable.Column column = groupColumns[0];
+            return column.nulls[row] ? 0 : column.codes[row] + 1;
+        }
+
+        void keyOf(int row, Key key) {
+            for (int i = 0; i < groupColumns.length; i++) {
+                ColumnarTable.Column column = groupColumns[i];
+                key.nulls[i] = column.nulls[row];
+                if (key.nulls[i]) {
+                    key.values[i] = 0;
+                    continue;
+                }
+                switch (column.kind) {
+                    case LONG:
+                        key.values[i] = column.longs[row];
+                        break;
+                    case DOUBLE:
+                        key.values[i] = Double.doubleToLongBits(column.doubles[row]);
+                        break;
+                    default:
+                        key.values[i] = column.codes[row];
+                }
+            }
+        }
+
+        Groups merge(Groups a, Groups b) {
+            if (dense) {
+                for (int i = 0; i < a.dense.length; i++) {
+                    if (b.dense[i] == null) {
+                        continue;
+                    }
+                    if (a.dense[i] == null) {
+                        a.dense[i] = b.dense[i];
+                    } else {
+                        mergeAccs(a.dense[i], b.dense[i]);
+                    }
+                }
+                return a;
+            }
+            for (Map.Entry<Key, Acc[]> group : b.map.entrySet()) {
+                Acc[] into = a.map.get(group.getKey());
+                if (into == null) {
+                    a.map.put(group.getKey(), group.getValue());
+                } else {
+                    mergeAccs(into, group.getValue());
+                }
+            }
+            return a;
+        }
+
+        private void mergeAccs(Acc[] into, Acc[] from) {
+            for (int i = 0; i < aggregates.length; i++) {
+                aggregates[i].merge(into[i], from[i]);
+            }
+        }
+
+        QueryResult result(Groups groups, int maxResultRows) {
+            List<Key> keys = new ArrayList<Key>();
+            List<Acc[]> accs = new ArrayList<Acc[]>();
+            if (dense) {
+                for (int slot = 0; slot < groups.dense.length; slot++) {
+                    if (groups.dense[slot] == null && groupColumns.length > 0) {
+                        continue;
+                    }
+                    Key key = new Key(groupColumns.length);
+                    if (groupColumns.length == 1) {
+                        key.nulls[0] = slot == 0;
+                        key.values[0] = slot - 1;
+                    }
+                    keys.add(key);
+                    accs.add(groups.dense[slot]);
+                }
+            } else {
+                keys.addAll(groups.map.keySet());
+                for (Key key : keys) {
+                    accs.add(groups.map.get(key));
+                }
+            }
+
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            // Derby groups by sorting, so its groups come out in ascending order, NULL last
+            Arrays.sort(order, (x, y) -> compare(keys.get(x), keys.get(y)));
+
+            QueryResult result = new QueryResult();
+            result.setColumns(labels);
+            List<Object[]> rows = new ArrayList<Object[]>();
+            for (Integer index : order) {
+                if (rows.size() == maxResultRows) {
+                    result.setTruncated(true);
+                    break;
+                }
+                Key key = keys.get(index);
+                Acc[] groupAccs = accs.get(index);
+                Object[] row = new Object[labels.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = outputs[i] >= 0
+                            ? groupValue(outputs[i], key)
+                            : aggregates[-1 - outputs[i]].value(groupAccs == null ? null : groupAccs[-1 - outputs[i]]);
+                }
+                rows.add(row);
+            }
+            result.setRows(rows);
+            result.setRowCount(rows.size());
+            return result;
+        }
+
+        private int compare(Key a, Key b) {
+            for (int i = 0; i < groupColumns.length; i++) {
+                if (a.nulls[i] || b.nulls[i]) {
+                    if (a.nulls[i] != b.nulls[i]) {
+                        return a.nulls[i] ? 1 : -1;
+                    }
+                    continue;
+                }
+                int c;
+                switch (groupColumns[i].kind) {
+                    case LONG:
+                        c = Long.compare(a.values[i], b.values[i]);
+                        break;
+                    case DOUBLE:
+                        c = Double.compare(Double.longBitsToDouble(a.values[i]), Double.longBitsToDouble(b.values[i]));
+                        break;
+                    default:
+                        c = Integer.compare(groupRanks[i][(int) a.values[i]], groupRanks[i][(int) b.values[i]]);
+                }
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        private Object groupValue(int index, Key key) {
+            if (key.nulls[index]) {
+                return null;
+            }
+            ColumnarTable.Column column = groupColumns[index];
+            switch (column.kind) {
+                case LONG:
+                    return longValue(column, key.values[index]);
+                case DOUBLE:
+                    return doubleValue(column, Double.longBitsToDouble(key.values[index]));
+                default:
+                    return column.dictionary.get((int) key.values[index]);
+            }
+        }
+    }
+
+    private static final class Scan extends RecursiveTask<Groups> {
+        private final Plan plan;
+        private final int from;
+        private final int to;
+
+        Scan(Plan plan, int from, int to) {
+            this.plan = plan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Groups compute() {
+            if (to - from > plan.chunkRows) {
+                int mid = (from + to) >>> 1;
+                Scan left = new Scan(plan, from, mid);
+                left.fork();
+                Groups right = new Scan(plan, mid, to).compute();
+                return plan.merge(left.join(), right);
+            }
+            Groups groups = plan.newGroups();
+            Key probe = plan.dense ? null : new Key(plan.groupColumns.length);
+            for (int row = from; row < to; row++) {
+                if (!plan.matches(row)) {
+                    continue;
+                }
+                Acc[] accs;
+                if (plan.dense) {
+                    int slot = plan.slot(row);
+                    accs = groups.dense[slot];
+                    if (accs == null) {
+                        accs = plan.newAccs();
+                        groups.dense[slot] = accs;
+                    }
+                } else {
+                    plan.keyOf(row, probe);
+                    accs = groups.map.get(probe);
+                    if (accs == null) {
+                        accs = plan.newAccs();
+                        groups.map.put(probe.copy(), accs);
+                    }
+                }
+                for (int i = 0; i < accs.length; i++) {
+                    plan.aggregates[i].add(accs[i], row);
+                }
+            }
+            return groups;
+        }
+    }
+
+    private static Predicate predicate(ColumnarTable.Column column, AggregateQuery.Filter filter) {
+        final boolean[] nulls = column.nulls;
+        final AggregateQuery.Operator op = filter.getOperator();
+        if (op == AggregateQuery.Operator.IS_NULL || op == AggregateQuery.Operator.IS_NOT_NULL) {
+            final boolean wanted = op == AggregateQuery.Operator.IS_NULL;
+            return new Predicate() {
+                @Override
+                boolean test(int row) {
+                    return column.nulls[row] == wanted;
+                }
+            };
+        }
+        Object literal = filter.getLiteral();
+        switch (column.kind) {
+            case STRING: {
+                if (!(literal instanceof String)
+                        || (op != AggregateQuery.Operator.EQ && op != AggregateQuery.Operator.NE)) {
+                    return null;
+                }
+                // Derby compares character values as if padded with spaces
+                String wanted = ColumnarTable.stripTrailingSpaces((String) literal);
+                final boolean[] matches = new boolean[column.dictionary.size()];
+                for (int code = 0; code < matches.length; code++) {
+                    boolean equal = ColumnarTable.stripTrailingSpaces(column.dictionary.get(code)).equals(wanted);
+                    matches[code] = op == AggregateQuery.Operator.EQ ? equal : !equal;
+                }
+                return new Predicate() {
+                    @Override
+                    boolean test(int row) {
+                        return !column.nulls[row] && matches[column.codes[row]];
+                    }
+                };
+            }
+            case LONG: {
+                if (!(literal instanceof BigDecimal)) {
+                    return null;
+                }
+                BigDecimal value = (BigDecimal) literal;
+                final long exact;
+                try {
+                    exact = value.longValueExact();
+                } catch (ArithmeticException e) {
+                    final double d = value.doubleValue();
+                    return new Predicate() {
+                        @Override
+                        boolean test(int row) {
+                            return !column.nulls[row] && holds(op, Double.compare(column.longs[row], d));
+                        }
+                    };
+                }
+                return new Predicate() {
+                    @Override
+                    boolean test(int row) {
+                        return !column.nulls[row] && holds(op, Long.compare(column.longs[row], exact));
+                    }
+                };
+            }
+            default: {
+                if (!(literal instanceof BigDecimal)) {
+                    return null;
+                }
+                final double d = ((BigDecimal) literal).doubleValue();
+                return new Predicate() {
+                    @Override
+                    boolean test(int row) {
+                        return !nulls[row] && holds(op, Double.compare(column.doubles[row], d));
+                    }
+                };
+            }
+        }
+    }
+
+    private static boolean holds(AggregateQuery.Operator op, int comparison) {
+        switch (op) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            case GT:
+                return comparison > 0;
+            default:
+                return comparison >= 0;
+        }
+    }
+
+    /** Sort rank of every dictionary code */
+    private static int[] ranks(ColumnarTable.Column column) {
+        List<String> dictionary = column.dictionary;
+        Integer[] codes = new Integer[dictionary.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = i;
+        }
+        Arrays.sort(codes, (a, b) -> ColumnarTable.stripTrailingSpaces(dictionary.get(a))
+                .compareTo(ColumnarTable.stripTrailingSpaces(dictionary.get(b))));
+        int[] ranks = new int[codes.length];
+        for (int rank = 0; rank < codes.length; rank++) {
+            ranks[codes[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /** The value as Derby's getObject returns it for the column type */
+    private static Object longValue(ColumnarTable.Column column, long value) {
+        switch (column.jdbcType) {
+            case Types.SMALLINT:
+                if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                    throw new ArithmeticException("SMALLINT overflow");
+                }
+                return (int) value;
+            case Types.INTEGER:
+                return Math.toIntExact(value);
+            default:
+                return value;
+        }
+    }
+
+    private static Object doubleValue(ColumnarTable.Column column, double value) {
+        return column.jdbcType == Types.REAL ? (Object) (float) value : (Object) value;
+    }
+}
@@ -0,0 +1,291 @@
+package io.github.vishalmysore.analytics;
+
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.RowData;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.service.BulkLoader;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Column-wise copy of one table. Integer columns are kept in a long[], floating point
+ * columns in a double[] and character columns as int codes into a dictionary, each with a
+ * null flag per row, so scans run over primitive arrays without boxing. Columns of other
+ * types (DECIMAL, dates, BOOLEAN, LOBs) are not copied, queries on them stay with Derby.
+ * <p>
+ * Scans hold the read lock, appends the write lock.
+ */
+class ColumnarTable {
+
+    enum Kind {
+        LONG,
+        DOUBLE,
+        STRING
+    }
+
+    static final class Column {
+        final String name;
+        final int jdbcType;
+        final Kind kind;
+
+        long[] longs;
+        double[] doubles;
+        int[] codes;
+        boolean[] nulls;
+
+        final List<String> dictionary = new ArrayList<String>();
+        final Map<String, Integer> codesByValue = new HashMap<String, Integer>();
+        /** Dictionary values without their trailing spaces */
+        private final Set<String> stripped = new HashSet<String>();
+        /**
+         * Two dictionary values differ only in trailing spaces. Derby compares them as equal,
+         * so they are one group to it and two codes here.
+         */
+        boolean paddedDuplicates;
+
+        Column(String name, int jdbcType, Kind kind, int capacity) {
+            this.name = name;
+            this.jdbcType = jdbcType;
+            this.kind = kind;
+            switch (kind) {
+                case LONG:
+                    longs = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubles = new double[capacity];
+                    break;
+                default:
+                    codes = new int[capacity];
+            }
+            nulls = new boolean[capacity];
+        }
+
+        void set(int row, Object value) {
+            if (value == null) {
+                nulls[row] = true;
+                return;
+            }
+            nulls[row] = false;
+            switch (kind) {
+                case LONG:
+                    longs[row] = ((Number) value).longValue();
+                    break;
+                case DOUBLE:
+                    doubles[row] = ((Number) value).doubleValue();
+                    break;
+                default:
+                    String s = value.toString();
+                    Integer code = codesByValue.get(s);
+                    if (code == null) {
+                        code = dictionary.size();
+                        dictionary.add(s);
+                        codesByValue.put(s, code);
+                        paddedDuplicates |= !stripped.add(stripTrailingSpaces(s));
+                    }
+                    codes[row] = code;
+            }
+        }
+
+        void grow(int capacity) {
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, capacity);
+            }
+            if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, capacity);
+            }
+            if (codes != null) {
+                codes = Arrays.copyOf(codes, capacity);
+            }
+            nulls = Arrays.copyOf(nulls, capacity);
+        }
+    }
+
+    private final String name;
+    private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+    /** Every column of the table, copied or not, an append has to cover all of them */
+    private final Set<String> tableColumns = new HashSet<String>();
+    private boolean hasPaddedColumns;
+    private int rowCount;
+    private int capacity;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private ColumnarTable(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    Column column(String columnName) {
+        return columns.get(columnName);
+    }
+
+    static Kind kindOf(int jdbcType) {
+        switch (jdbcType) {
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return Kind.LONG;
+            case Types.REAL:
+            case Types.DOUBLE:
+                return Kind.DOUBLE;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return Kind.STRING;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads the whole table, null when it has more than maxRows rows.
+     */
+    static ColumnarTable load(Connection conn, SchemaCatalog.Table meta, int maxRows, int fetchSize)
+            throws SQLException {
+        ColumnarTable table = new ColumnarTable(meta.getName());
+        table.capacity = 1024;
+        StringBuilder select = new StringBuilder();
+        for (SchemaCatalog.Column c : meta.getColumns()) {
+            table.tableColumns.add(c.getName());
+            table.hasPaddedColumns |= c.getJdbcType() == Types.CHAR;
+            Kind kind = kindOf(c.getJdbcType());
+            if (kind != null) {
+                table.columns.put(c.getName(), new Column(c.getName(), c.getJdbcType(), kind, table.capacity));
+                select.append(select.length() == 0 ? "SELECT " : ", ")
+                        .append('"').append(c.getName().replace("\"", "\"\"")).append('"');
+            }
+        }
+        if (select.length() == 0) {
+            select.append("SELECT 1");
+        }
+        select.append(" FROM \"").append(meta.getName().replace("\"", "\"\"")).append('"');
+
+        Column[] loaded = table.columns.values().toArray(new Column[0]);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery(select.toString())) {
+                while (rs.next()) {
+                    if (table.rowCount == maxRows) {
+                        return null;
+                    }
+                    table.ensureCapacity(table.rowCount + 1);
+                    for (int i = 0; i < loaded.length; i++) {
+                        Object value;
+                        switch (loaded[i].kind) {
+                            case LONG:
+                                value = rs.getLong(i + 1);
+                                break;
+                            case DOUBLE:
+                                value = rs.getDouble(i + 1);
+                                break;
+                            default:
+                                value = rs.getString(i + 1);
+                        }
+                        loaded[i].set(table.rowCount, rs.wasNull() ? null : value);
+                    }
+                    table.rowCount++;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Appends rows that were just committed to the table. False when they cannot be
+     * represented exactly, e.g. a row leaves a column to its default or a CHAR value would
+     * need Derby's padding; the caller then drops the copy.
+     */
+    boolean append(TableData tableData, int maxRows) {
+        if (hasPaddedColumns || tableData.getRowDataList() == null) {
+            return false;
+        }
+        List<Object[]> rows = new ArrayList<Object[]>(tableData.getRowDataList().size());
+        Column[] loaded = columns.values().toArray(new Column[0]);
+        for (RowData row : tableData.getRowDataList()) {
+            List<ColumnData> cells = row.getColumnDataList();
+            if (cells == null || cells.isEmpty()) {
+                continue;
+            }
+            Map<String, String> values = new HashMap<String, String>();
+            for (ColumnData cell : cells) {
+                if (cell.getColumnName() == null) {
+                    return false;
+                }
+                values.put(TableChangedEvent.normalizeTableName(cell.getColumnName()), cell.getColumnValue());
+            }
+            if (!values.keySet().equals(tableColumns)) {
+                return false;
+            }
+            Object[] converted = new Object[loaded.length];
+            for (int i = 0; i < loaded.length; i++) {
+                try {
+                    converted[i] = BulkLoader.convert(values.get(loaded[i].name), loaded[i].jdbcType, loaded[i].name);
+                } catch (SQLException e) {
+                    return false;
+                }
+            }
+            rows.add(converted);
+        }
+        if (rowCount + rows.size() > maxRows) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(rowCount + rows.size());
+            for (Object[] row : rows) {
+                for (int i = 0; i < loaded.length; i++) {
+                    loaded[i].set(rowCount, row[i]);
+                }
+                rowCount++;
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static String stripTrailingSpaces(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return s.substring(0, end);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+        int grown = capacity;
+        while (grown < rows) {
+            grown = grown * 2;
+        }
+        for (Column column : columns.values()) {
+            column.grow(grown);
+        }
+        capacity = grown;
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.vishalmysore.cache;
+
+import lombok.Getter;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Per-request record of what the agent actions touched. DerbyService reports the
+ * tables it read and whether it wrote anything; the controller uses that to decide
+ * whether an answer may be cached and which tables it depends on.
+ */
+@Getter
+public class ActionTrace {
+
+    private static final ThreadLocal<ActionTrace> CURRENT = new ThreadLocal<ActionTrace>();
+
+    private final Set<String> readTables = new LinkedHashSet<String>();
+    private boolean read;
+    private boolean wrote;
+    private boolean staleRead;
+    /** A query read tables that could not be told, no table change would invalidate it */
+    private boolean untracedRead;
+    private String action;
+
+    public static ActionTrace begin() {
+        ActionTrace trace = new ActionTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    public static void recordAction(String name) {
+        ActionTrace trace = CURRENT.get();
+        if (trace != null && trace.action == null) {
+            trace.action = name;
+        }
+    }
+
+    public static void recordRead(Set<String> tables) {
+        ActionTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.read = true;
+            trace.untracedRead |= tables.isEmpty();
+            trace.readTables.addAll(tables);
+        }
+    }
+
+    public static void recordWrite() {
+        ActionTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.wrote = true;
+        }
+    }
+
+    /** A read was served from a replica that is behind the primary */
+    public static void recordStaleRead() {
+        ActionTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.staleRead = true;
+        }
+    }
+
+    /**
+     * Only pure reads are safe to replay, anything that wrote must run again. A stale read
+     * would outlive the invalidation of the write it missed, so it is not replayed either,
+     * and neither is a read whose tables are unknown.
+     */
+    public boolean isCacheable() {
+        return read && !wrote && !staleRead && !untracedRead;
+    }
+}
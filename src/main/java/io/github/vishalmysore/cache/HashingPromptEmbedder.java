@@ -0,0 +1,35 @@
+package io.github.vishalmysore.cache;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Local stand-in for an embedding model: hashes character trigrams of the normalized
+ * prompt into a fixed size vector. Catches rephrasings that mostly share wording
+ * ("how many users" / "how many users are there") without any network call.
+ */
+@Component
+public class HashingPromptEmbedder implements PromptEmbedder {
+
+    private static final int DIMENSIONS = 256;
+
+    @Override
+    public float[] embed(String prompt) {
+        float[] vector = new float[DIMENSIONS];
+        String text = " " + PromptResponseCache.normalize(prompt) + " ";
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int hash = text.substring(i, i + 3).hashCode();
+            vector[Math.floorMod(hash, DIMENSIONS)] += 1f;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.vishalmysore.cache;
+
+/**
+ * Maps a prompt to a unit-length vector for similarity lookups in the prompt cache.
+ * Provide a @Primary bean backed by a real embedding model to replace the local stand-in.
+ */
+public interface PromptEmbedder {
+
+    float[] embed(String prompt);
+}
@@ -0,0 +1,242 @@
+package io.github.vishalmysore.cache;
+
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prompt to answer cache in front of the LLM round trips of the controller.
+ * <p>
+ * Lookup is by exact prompt, by normalized prompt (case and whitespace folded)
+ * or additionally by embedding similarity, selected with prompt.cache.key-mode. A similar
+ * prompt only counts when it has the same numbers and quoted values, in the same order, since
+ * those decide which rows the answer is about. Entries expire
+ * after a TTL, the least recently used entry is evicted when the cache is full, and every
+ * entry is dropped as soon as one of the tables it was computed from changes.
+ * Keys are scoped by the caller's roles so an answer is never served to a weaker role.
+ */
+@Log
+@Component
+public class PromptResponseCache {
+
+    /** Numbers, signs and decimals included, and single or double quoted values */
+    private static final Pattern LITERAL = Pattern.compile("-?\\d+(?:\\.\\d+)?|'[^']*'|\"[^\"]*\"");
+
+    public enum KeyMode {
+        EXACT,
+        NORMALIZED,
+        SIMILARITY
+    }
+
+    @Value("${prompt.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${prompt.cache.max-size:1000}")
+    private int maxSize;
+
+    @Value("${prompt.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${prompt.cache.key-mode:NORMALIZED}")
+    private KeyMode keyMode;
+
+    @Value("${prompt.cache.similarity-threshold:0.92}")
+    private double similarityThreshold;
+
+    @Autowired
+    private PromptEmbedder embedder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private LinkedHashMap<String, Entry> entries;
+
+    /** Epoch of the last change per table, used to reject answers computed across a write; guarded by lock */
+    private final Map<String, Long> tableEpochs = new HashMap<String, Long>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter invalidationCounter;
+
+    @PostConstruct
+    public void init() {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        hitCounter = meterRegistry.counter("prompt.cache", "result", "hit");
+        missCounter = meterRegistry.counter("prompt.cache", "result", "miss");
+        invalidationCounter = meterRegistry.counter("prompt.cache.invalidations");
+        meterRegistry.gaugeMapSize("prompt.cache.size", Tags.empty(), entries);
+    }
+
+    /** Marks the point after which writes make a computed answer stale, see {@link #put} */
+    public long currentEpoch() {
+        return epoch.get();
+    }
+
+    public String get(String prompt) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(prompt);
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry == null && keyMode == KeyMode.SIMILARITY) {
+                entry = mostSimilar(scope() + '|', embedder.embed(prompt), literals(prompt), now);
+            }
+            if (entry != null && entry.expiresAt > now) {
+                hitCounter.increment();
+                return entry.answer;
+            }
+            if (entry != null) {
+                entries.remove(entry.key);
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * Stores an answer unless one of its tables changed after {@code startEpoch}.
+     */
+    public void put(String prompt, String answer, Set<String> tables, long startEpoch) {
+        if (!enabled || answer == null) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.key = key(prompt);
+        entry.answer = answer;
+        entry.tables = new HashSet<String>(tables);
+        entry.expiresAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        if (keyMode == KeyMode.SIMILARITY) {
+            entry.embedding = embedder.embed(prompt);
+            entry.literals = literals(prompt);
+        }
+        // checked and stored under the lock that onTableChanged bumps the epochs under,
+        // so a change either rejects this answer or removes it again
+        synchronized (lock) {
+            for (String table : tables) {
+                Long changed = tableEpochs.get(table);
+                if (changed != null && changed > startEpoch) {
+                    log.fine("Not caching answer, table " + table + " changed while answering");
+                    return;
+                }
+            }
+            entries.put(entry.key, entry);
+        }
+    }
+
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        String table = event.getTableName();
+        int removed = 0;
+        synchronized (lock) {
+            tableEpochs.put(table, epoch.incrementAndGet());
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().tables.contains(table)) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            invalidationCounter.increment(removed);
+            log.fine("Invalidated " + removed + " cached answers for table " + table);
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            entries.clear();
+        }
+    }
+
+    private Entry mostSimilar(String scopePrefix, float[] embedding, List<String> literals, long now) {
+        Entry best = null;
+        double bestScore = similarityThreshold;
+        for (Entry candidate : entries.values()) {
+            if (candidate.embedding == null || candidate.expiresAt <= now
+                    || !candidate.key.startsWith(scopePrefix) || !literals.equals(candidate.literals)) {
+                continue;
+            }
+            double score = 0;
+            for (int i = 0; i < embedding.length; i++) {
+                score += embedding[i] * candidate.embedding[i];
+            }
+            if (score >= bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private String key(String prompt) {
+        String text = keyMode == KeyMode.EXACT ? prompt : normalize(prompt);
+        return scope() + '|' + text;
+    }
+
+    private static String scope() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null) {
+            return "";
+        }
+        List<String> roles = new ArrayList<String>();
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        Collections.sort(roles);
+        return String.join(",", roles);
+    }
+
+    /**
+     * Folds case and whitespace only. Operators, signs and decimal points change what a
+     * prompt asks for ("total > 5" vs "total < 5", "-5" vs "5", "1.5" vs "15"), so they stay.
+     */
+    static String normalize(String prompt) {
+        return prompt.toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    /** "sales in 2023 over 500" and "sales in 2024 over 600" embed alike but ask for other rows */
+    static List<String> literals(String prompt) {
+        List<String> literals = new ArrayList<String>();
+        Matcher m = LITERAL.matcher(prompt.toLowerCase(Locale.ROOT));
+        while (m.find()) {
+            literals.add(m.group());
+        }
+        return literals;
+    }
+
+    private static class Entry {
+        private String key;
+        private String answer;
+        private Set<String> tables;
+        private float[] embedding;
+        private List<String> literals;
+        private long expiresAt;
+    }
+}
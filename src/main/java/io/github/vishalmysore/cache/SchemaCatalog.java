@@ -0,0 +1,340 @@
+package io.github.vishalmysore.cache;
+
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.service.DatabaseRouter;
+import io.github.vishalmysore.service.ReadReplicas;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process copy of the catalog of the current schema of every database: tables, columns
+ * with their types and indexes. It is read from Derby's SYS tables in three queries per
+ * database and dropped again when a table is created, altered or dropped, so actions look
+ * up column types without a metadata round trip and the prompt can carry a compact
+ * schema summary for the LLM.
+ * <p>
+ * Tables the application creates publish a {@link TableChangedEvent} and show up at once.
+ * Only tables created behind its back need a reload on a miss, and those reloads happen at
+ * most once per schema.catalog.miss-reload-ms, so lookups of a table that does not exist
+ * cannot reload the catalog on every call.
+ */
+@Log
+@Component
+public class SchemaCatalog {
+
+    private static final String COLUMNS_SQL =
+            "SELECT t.TABLENAME, c.COLUMNNAME, c.COLUMNDATATYPE, c.COLUMNNUMBER"
+                    + " FROM SYS.SYSTABLES t"
+                    + " JOIN SYS.SYSSCHEMAS s ON t.SCHEMAID = s.SCHEMAID"
+                    + " JOIN SYS.SYSCOLUMNS c ON c.REFERENCEID = t.TABLEID"
+                    + " WHERE s.SCHEMANAME = ? AND t.TABLETYPE = 'T'"
+                    + " ORDER BY t.TABLENAME, c.COLUMNNUMBER";
+
+    private static final String INDEXES_SQL =
+            "SELECT t.TABLENAME, g.CONGLOMERATENAME, g.DESCRIPTOR"
+                    + " FROM SYS.SYSCONGLOMERATES g"
+                    + " JOIN SYS.SYSTABLES t ON g.TABLEID = t.TABLEID"
+                    + " JOIN SYS.SYSSCHEMAS s ON t.SCHEMAID = s.SCHEMAID"
+                    + " WHERE s.SCHEMANAME = ? AND t.TABLETYPE = 'T' AND g.ISINDEX = TRUE";
+
+    private static final String PRIMARY_KEYS_SQL =
+            "SELECT t.TABLENAME, g.CONGLOMERATENAME"
+                    + " FROM SYS.SYSCONSTRAINTS k"
+                    + " JOIN SYS.SYSKEYS y ON y.CONSTRAINTID = k.CONSTRAINTID"
+                    + " JOIN SYS.SYSCONGLOMERATES g ON g.CONGLOMERATEID = y.CONGLOMERATEID"
+                    + " JOIN SYS.SYSTABLES t ON k.TABLEID = t.TABLEID"
+                    + " JOIN SYS.SYSSCHEMAS s ON t.SCHEMAID = s.SCHEMAID"
+                    + " WHERE s.SCHEMANAME = ? AND k.TYPE = 'P'";
+
+    /** Column positions in an index descriptor such as "UNIQUE BTREE (2, 1 DESC)" */
+    private static final Pattern INDEX_COLUMNS = Pattern.compile("\\(([^)]*)\\)");
+
+    private static final Map<String, Integer> TYPES = new HashMap<String, Integer>();
+
+    static {
+        TYPES.put("SMALLINT", Types.SMALLINT);
+        TYPES.put("INTEGER", Types.INTEGER);
+        TYPES.put("BIGINT", Types.BIGINT);
+        TYPES.put("DECIMAL", Types.DECIMAL);
+        TYPES.put("NUMERIC", Types.NUMERIC);
+        TYPES.put("REAL", Types.REAL);
+        TYPES.put("FLOAT", Types.DOUBLE);
+        TYPES.put("DOUBLE", Types.DOUBLE);
+        TYPES.put("DOUBLE PRECISION", Types.DOUBLE);
+        TYPES.put("BOOLEAN", Types.BOOLEAN);
+        TYPES.put("CHAR", Types.CHAR);
+        TYPES.put("VARCHAR", Types.VARCHAR);
+        TYPES.put("LONG VARCHAR", Types.LONGVARCHAR);
+        TYPES.put("CLOB", Types.CLOB);
+        TYPES.put("CHAR FOR BIT DATA", Types.BINARY);
+        TYPES.put("VARCHAR FOR BIT DATA", Types.VARBINARY);
+        TYPES.put("LONG VARCHAR FOR BIT DATA", Types.LONGVARBINARY);
+        TYPES.put("BLOB", Types.BLOB);
+        TYPES.put("DATE", Types.DATE);
+        TYPES.put("TIME", Types.TIME);
+        TYPES.put("TIMESTAMP", Types.TIMESTAMP);
+        TYPES.put("XML", Types.SQLXML);
+    }
+
+    @Autowired
+    private DatabaseRouter databaseRouter;
+
+    @Autowired
+    private ReadReplicas readReplicas;
+
+    @Value("${prompt.schema-summary.max-chars:2000}")
+    private int summaryMaxChars;
+
+    @Value("${schema.catalog.miss-reload-ms:5000}")
+    private long missReloadMs;
+
+    /** Schemas by database URL and schema name */
+    private final Map<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+
+    @Getter
+    @ToString
+    public static class Column {
+        private final String name;
+        /** Type as declared, e.g. VARCHAR(64) */
+        private final String typeName;
+        private final int jdbcType;
+        private final boolean nullable;
+
+        Column(String name, String typeName, int jdbcType, boolean nullable) {
+            this.name = name;
+            this.typeName = typeName;
+            this.jdbcType = jdbcType;
+            this.nullable = nullable;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Index {
+        private final String name;
+        private final List<String> columns;
+        private final boolean unique;
+        private boolean primaryKey;
+
+        Index(String name, List<String> columns, boolean unique) {
+            this.name = name;
+            this.columns = columns;
+            this.unique = unique;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Table {
+        private final String name;
+        private final List<Column> columns = new ArrayList<Column>();
+        private final List<Index> indexes = new ArrayList<Index>();
+
+        Table(String name) {
+            this.name = name;
+        }
+
+        public Column column(String columnName) {
+            String wanted = TableChangedEvent.normalizeTableName(columnName);
+            for (Column column : columns) {
+                if (column.name.equals(wanted)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Schema {
+        private final Map<String, Table> tables;
+        private final long loadedAt = System.nanoTime();
+        private volatile String summary;
+
+        Schema(Map<String, Table> tables) {
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * The table in the connection's current schema, null when it does not exist. A miss
+     * reloads the catalog when it is older than schema.catalog.miss-reload-ms, the table
+     * may have been created outside the application.
+     */
+    public Table table(Connection conn, String tableName) throws SQLException {
+        String name = TableChangedEvent.normalizeTableName(tableName);
+        Schema schema = schema(conn);
+        Table table = schema.tables.get(name);
+        if (table == null && System.nanoTime() - schema.loadedAt > TimeUnit.MILLISECONDS.toNanos(missReloadMs)) {
+            // keeps a copy another caller reloaded in the meantime
+            schemas.remove(key(conn), schema);
+            table = schema(conn).tables.get(name);
+        }
+        return table;
+    }
+
+    /** Drops the cached schema of the connection's database, the next lookup reads it again */
+    public void invalidate(Connection conn) throws SQLException {
+        schemas.remove(key(conn));
+    }
+
+    public Collection<Table> tables(Connection conn) throws SQLException {
+        return schema(conn).tables.values();
+    }
+
+    /**
+     * One line per table with its columns and types, e.g. {@code ORDERS(ID INTEGER, TOTAL DECIMAL(10,2))},
+     * cut off after prompt.schema-summary.max-chars.
+     */
+    public String summary(String databaseName) throws SQLException {
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+            Schema schema = schema(conn);
+            String summary = schema.summary;
+            if (summary == null) {
+                summary = summarize(schema.tables.values(), summaryMaxChars);
+                schema.summary = summary;
+            }
+            return summary;
+        }
+    }
+
+    /** Tables created, altered or dropped change the catalog; inserts do not */
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        if (event.getChangeType() != TableChangedEvent.ChangeType.INSERTED) {
+            schemas.clear();
+        }
+    }
+
+    private Schema schema(Connection conn) throws SQLException {
+        String key = key(conn);
+        Schema schema = schemas.get(key);
+        if (schema == null) {
+            schema = load(conn);
+            schemas.put(key, schema);
+        }
+        return schema;
+    }
+
+    /** Replicas share the entry of their primary, each refresh creates replicas under new names */
+    private String key(Connection conn) throws SQLException {
+        return readReplicas.primaryUrl(conn.getMetaData().getURL()) + '\n' + conn.getSchema();
+    }
+
+    private static Schema load(Connection conn) throws SQLException {
+        String schemaName = conn.getSchema();
+        Map<String, Table> tables = new TreeMap<String, Table>();
+        Map<String, Map<Integer, String>> positions = new HashMap<String, Map<Integer, String>>();
+
+        try (PreparedStatement ps = conn.prepareStatement(COLUMNS_SQL)) {
+            ps.setString(1, schemaName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString(1);
+                    Table table = tables.get(tableName);
+                    if (table == null) {
+                        table = new Table(tableName);
+                        tables.put(tableName, table);
+                        positions.put(tableName, new HashMap<Integer, String>());
+                    }
+                    String declared = rs.getString(3).trim();
+                    boolean nullable = !declared.toUpperCase(Locale.ROOT).endsWith("NOT NULL");
+                    String typeName = nullable ? declared
+                            : declared.substring(0, declared.length() - "NOT NULL".length()).trim();
+                    table.columns.add(new Column(rs.getString(2), typeName, jdbcType(typeName), nullable));
+                    positions.get(tableName).put(rs.getInt(4), rs.getString(2));
+                }
+            }
+        }
+
+        Map<String, Index> byName = new HashMap<String, Index>();
+        try (PreparedStatement ps = conn.prepareStatement(INDEXES_SQL)) {
+            ps.setString(1, schemaName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Table table = tables.get(rs.getString(1));
+                    String descriptor = rs.getString(3);
+                    Matcher m = descriptor == null ? null : INDEX_COLUMNS.matcher(descriptor);
+                    if (table == null || m == null || !m.find()) {
+                        continue;
+                    }
+                    List<String> columns = new ArrayList<String>();
+                    for (String position : m.group(1).split(",")) {
+                        String digits = position.replaceAll("\\D", "");
+                        if (!digits.isEmpty()) {
+                            columns.add(positions.get(table.name).get(Integer.valueOf(digits)));
+                        }
+                    }
+                    Index index = new Index(rs.getString(2), columns, descriptor.startsWith("UNIQUE"));
+                    table.indexes.add(index);
+                    byName.put(index.name, index);
+                }
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(PRIMARY_KEYS_SQL)) {
+            ps.setString(1, schemaName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Index index = byName.get(rs.getString(2));
+                    if (index != null) {
+                        index.primaryKey = true;
+                    }
+                }
+            }
+        }
+        log.fine("Loaded catalog of schema " + schemaName + ": " + tables.size() + " tables");
+        return new Schema(tables);
+    }
+
+    static int jdbcType(String typeName) {
+        String base = typeName.toUpperCase(Locale.ROOT).replaceAll("\\s*\\([^)]*\\)", "").trim();
+        Integer type = TYPES.get(base);
+        return type != null ? type : Types.OTHER;
+    }
+
+    static String summarize(Collection<Table> tables, int maxChars) {
+        StringBuilder sb = new StringBuilder();
+        for (Table table : tables) {
+            StringBuilder line = new StringBuilder(table.name).append('(');
+            Set<String> keyColumns = new HashSet<String>();
+            for (Index index : table.indexes) {
+                if (index.primaryKey) {
+                    keyColumns.addAll(index.columns);
+                }
+            }
+            for (int i = 0; i < table.columns.size(); i++) {
+                Column column = table.columns.get(i);
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(column.name).append(' ').append(column.typeName);
+                if (keyColumns.contains(column.name)) {
+                    line.append(" PK");
+                }
+            }
+            line.append(")\n");
+            if (sb.length() + line.length() > maxChars) {
+                sb.append("...\n");
+                break;
+            }
+            sb.append(line);
+        }
+        return sb.toString().trim();
+    }
+}
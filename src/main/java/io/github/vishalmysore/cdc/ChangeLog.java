@@ -0,0 +1,172 @@
+package io.github.vishalmysore.cdc;
+
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.service.DatabaseRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * In-process change log. Every {@link TableChangedEvent} of the write paths becomes a
+ * {@link ChangeRecord} with the next sequence number; the last cdc.log.capacity records are
+ * kept for readers that poll, listeners get each record as it is appended. Inserted rows are
+ * only retained for the newest cdc.log.max-rows rows, older records keep their metadata, so
+ * memory does not grow with the size of bulk inserts.
+ * <p>
+ * Writes whose rows end up in a record also bracket themselves with
+ * {@link #beginWrite}/{@link #endWrite}. A reader that runs a query while such a write is
+ * in flight cannot tell whether the query saw its rows, so it must not apply the record
+ * as a delta on top of that query's result.
+ */
+@Component
+public class ChangeLog {
+
+    @Value("${cdc.log.capacity:10000}")
+    private int capacity;
+
+    @Value("${cdc.log.max-rows:100000}")
+    private long maxRows;
+
+    @Autowired
+    private DatabaseRouter databaseRouter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ArrayDeque<ChangeRecord> records = new ArrayDeque<ChangeRecord>();
+    private long lastSequence;
+    /** Records that may still hold rows, oldest first, and the rows they hold */
+    private final ArrayDeque<ChangeRecord> withRows = new ArrayDeque<ChangeRecord>();
+    private long retainedRows;
+
+    private final List<Consumer<ChangeRecord>> listeners = new CopyOnWriteArrayList<Consumer<ChangeRecord>>();
+
+    private final Map<String, AtomicInteger> pendingWrites = new ConcurrentHashMap<String, AtomicInteger>();
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("cdc.log.size", this, log -> log.size());
+        meterRegistry.gauge("cdc.log.rows", this, log -> log.retainedRows());
+    }
+
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        ChangeRecord record;
+        synchronized (this) {
+            record = new ChangeRecord(++lastSequence, database(event.getDatabaseName()), event);
+            records.addLast(record);
+            if (record.getRows() != null) {
+                withRows.addLast(record);
+                retainedRows += record.getRowCount();
+            }
+            while (records.size() > capacity) {
+                ChangeRecord evicted = records.removeFirst();
+                retainedRows -= evicted.dropRows();
+                if (withRows.peekFirst() == evicted) {
+                    withRows.removeFirst();
+                }
+            }
+            while (retainedRows > maxRows && !withRows.isEmpty()) {
+                retainedRows -= withRows.removeFirst().dropRows();
+            }
+            // under the lock, so listeners see the records in sequence order
+            for (Consumer<ChangeRecord> listener : listeners) {
+                listener.accept(record);
+            }
+        }
+        meterRegistry.counter("cdc.log.records", "type", record.getChangeType().name()).increment();
+    }
+
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /** Sequence of the oldest record still kept, lastSequence() + 1 while the log is empty */
+    public synchronized long firstSequence() {
+        return records.isEmpty() ? lastSequence + 1 : records.peekFirst().getSequence();
+    }
+
+    /**
+     * Up to max records after the given sequence number, oldest first. Records older than
+     * {@link #firstSequence()} are gone, a reader that fell that far behind has to start over.
+     */
+    public synchronized List<ChangeRecord> since(long sequence, int max) {
+        List<ChangeRecord> result = new ArrayList<ChangeRecord>();
+        for (ChangeRecord record : records) {
+            if (result.size() == max) {
+                break;
+            }
+            if (record.getSequence() > sequence) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public synchronized long retainedRows() {
+        return retainedRows;
+    }
+
+    /**
+     * Listeners run on the writer's thread while the log is locked, they must only hand
+     * the record over.
+     */
+    public void addListener(Consumer<ChangeRecord> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<ChangeRecord> listener) {
+        listeners.remove(listener);
+    }
+
+    public void beginWrite(String databaseName, String tableName) {
+        pendingWrites.computeIfAbsent(key(database(databaseName), tableName), k -> new AtomicInteger())
+                .incrementAndGet();
+    }
+
+    public void endWrite(String databaseName, String tableName) {
+        AtomicInteger pending = pendingWrites.get(key(database(databaseName), tableName));
+        if (pending != null) {
+            pending.decrementAndGet();
+        }
+    }
+
+    /** Whether a bracketed write to any of the tables has not published its record yet */
+    public boolean isWritePending(String databaseName, Collection<String> tableNames) {
+        String database = database(databaseName);
+        for (String tableName : tableNames) {
+            AtomicInteger pending = pendingWrites.get(key(database, tableName));
+            if (pending != null && pending.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The database as records name it, null for the default database */
+    public String database(String databaseName) {
+        return databaseRouter.isDefault(databaseName) ? null : databaseName.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static String key(String database, String tableName) {
+        return (database == null ? "" : database) + '\n' + TableChangedEvent.normalizeTableName(tableName);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.vishalmysore.cdc;
+
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.event.TableChangedEvent;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * One entry of the {@link ChangeLog}. Sequence numbers grow by one per change, so a reader
+ * can tell whether it missed entries. The log lets go of the rows of older records to bound
+ * its memory, rowCount still says how many there were.
+ */
+@Getter
+@ToString
+public class ChangeRecord {
+
+    private final long sequence;
+    private final long timestamp;
+    /** Null for the default database */
+    private final String databaseName;
+    private final String tableName;
+    private final TableChangedEvent.ChangeType changeType;
+    /** The rows an INSERTED change wrote, while they are known and retained; null otherwise */
+    @ToString.Exclude
+    private volatile TableData rows;
+    /** Number of rows the change wrote, 0 when not known */
+    private final int rowCount;
+
+    ChangeRecord(long sequence, String databaseName, TableChangedEvent event) {
+        this.sequence = sequence;
+        this.timestamp = event.getTimestamp();
+        this.databaseName = databaseName;
+        this.tableName = event.getTableName();
+        this.changeType = event.getChangeType();
+        this.rows = event.getInsertedRows();
+        this.rowCount = rows != null && rows.getRowDataList() != null ? rows.getRowDataList().size() : 0;
+    }
+
+    private ChangeRecord(ChangeRecord record) {
+        this.sequence = record.sequence;
+        this.timestamp = record.timestamp;
+        this.databaseName = record.databaseName;
+        this.tableName = record.tableName;
+        this.changeType = record.changeType;
+        this.rowCount = record.rowCount;
+    }
+
+    /** A copy without the row payload, for readers that only want to know what changed */
+    public ChangeRecord withoutRows() {
+        return rows == null ? this : new ChangeRecord(this);
+    }
+
+    /** Releases the rows, returns how many were held */
+    int dropRows() {
+        if (rows == null) {
+            return 0;
+        }
+        rows = null;
+        return rowCount;
+    }
+}
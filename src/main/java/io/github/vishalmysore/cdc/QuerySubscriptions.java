@@ -0,0 +1,347 @@
+package io.github.vishalmysore.cdc;
+
+import io.github.vishalmysore.analytics.AggregateQuery;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.limit.RateLimitedException;
+import io.github.vishalmysore.service.DatabaseRouter;
+import io.github.vishalmysore.service.ResultStreamer;
+import io.github.vishalmysore.service.SqlTables;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Standing queries. A subscriber gets the query's result once and from then on only what
+ * the {@link ChangeLog} says changed, instead of polling the same SELECT.
+ * <p>
+ * For a plain selection from one table ({@link AggregateQuery#parseSelection}) the rows of
+ * an insert are filtered and projected here and sent as a delta, no query runs. Any other
+ * change, and any query of another shape, makes the subscription run its query again and
+ * send a fresh snapshot; those re-runs are coalesced and at most one per
+ * cdc.subscriptions.min-resync-ms, so the work follows the changes, not the subscribers'
+ * polling rate. Queries run on the primary, a replica may not have the change yet.
+ * <p>
+ * The re-runs happen on the subscription workers, outside the request limiter's query gate,
+ * so what bounds them is the number of subscriptions: cdc.subscriptions.max overall and
+ * cdc.subscriptions.max-per-principal for each user.
+ */
+@Log
+@Service
+public class QuerySubscriptions {
+
+    @Value("${cdc.subscriptions.max:256}")
+    private int maxSubscriptions;
+
+    @Value("${cdc.subscriptions.max-per-principal:4}")
+    private int maxPerPrincipal;
+
+    @Value("${cdc.subscriptions.min-resync-ms:500}")
+    private long minResyncMs;
+
+    @Value("${cdc.subscriptions.threads:2}")
+    private int threads;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private DatabaseRouter databaseRouter;
+
+    @Autowired
+    private ResultStreamer resultStreamer;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+    private final Map<String, AtomicInteger> perPrincipal = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final Consumer<ChangeRecord> listener = this::onChange;
+
+    private ScheduledExecutorService workers;
+
+    private Counter snapshots;
+    private Counter deltas;
+
+    /**
+     * Receives the results of one subscription, always from one thread at a time. An
+     * IOException ends the subscription, the client is gone.
+     */
+    public interface DeltaListener {
+
+        /** The whole result, as of the given change log sequence number */
+        void onSnapshot(long sequence, QueryResult result) throws IOException;
+
+        /** Rows that now belong to the result too, shaped like the snapshot's rows */
+        void onRows(long sequence, List<Object[]> rows) throws IOException;
+
+        /** The query failed, the subscription is over */
+        void onError(String message) throws IOException;
+    }
+
+    public final class Subscription {
+        @Getter
+        private final String id = UUID.randomUUID().toString();
+        private final String sql;
+        private final String principal;
+        /** Null for the default database, as in the change records */
+        private final String databaseName;
+        private final Set<String> tables;
+        private final AggregateQuery selection;
+        private final DeltaListener deltaListener;
+
+        private final ArrayDeque<ChangeRecord> pending = new ArrayDeque<ChangeRecord>();
+        /** A run is queued or running, guarded by this */
+        private boolean scheduled;
+
+        // only touched by the one running run
+        private boolean resync = true;
+        /** A write was in flight around the last snapshot, its record may or may not be in it */
+        private boolean resyncOnNext;
+        private long sequence;
+        /** Records up to here arrived while the last snapshot ran */
+        private long windowEnd;
+        private long lastSnapshotAt;
+        private SelectionDelta delta;
+
+        private volatile boolean cancelled;
+
+        Subscription(String sql, String principal, String databaseName, DeltaListener deltaListener) {
+            this.sql = sql;
+            this.principal = principal;
+            this.databaseName = databaseName;
+            this.tables = SqlTables.tablesIn(sql);
+            this.selection = AggregateQuery.parseSelection(sql);
+            this.deltaListener = deltaListener;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (subscriptions.remove(id) != null) {
+                perPrincipal.get(principal).decrementAndGet();
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        snapshots = meterRegistry.counter("cdc.subscription.updates", "kind", "snapshot");
+        deltas = meterRegistry.counter("cdc.subscription.updates", "kind", "delta");
+        meterRegistry.gauge("cdc.subscriptions", subscriptions, Map::size);
+        workers = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "cdc-subscription");
+            t.setDaemon(true);
+            return t;
+        });
+        changeLog.addListener(listener);
+    }
+
+    @PreDestroy
+    public void stop() {
+        changeLog.removeListener(listener);
+        workers.shutdownNow();
+        subscriptions.clear();
+        perPrincipal.clear();
+    }
+
+    /**
+     * Starts a subscription, the first snapshot follows shortly on the listener. Throws
+     * TaskRejectedException when all subscriptions are taken and RateLimitedException when
+     * the caller holds as many as it may.
+     */
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public Subscription subscribe(String sqlQuery, String databaseName, DeltaListener deltaListener) {
+        if (sqlQuery == null || !sqlQuery.trim().toLowerCase(Locale.ROOT).startsWith("select")) {
+            throw new IllegalArgumentException("Only SELECT queries are allowed.");
+        }
+        if (subscriptions.size() >= maxSubscriptions) {
+            throw new TaskRejectedException("Too many query subscriptions");
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String principal = auth == null ? "anonymous" : auth.getName();
+        Subscription subscription = new Subscription(sqlQuery, principal, changeLog.database(databaseName), deltaListener);
+        if (subscription.tables.isEmpty()) {
+            throw new IllegalArgumentException("The tables the query reads could not be determined.");
+        }
+        AtomicInteger mine = perPrincipal.computeIfAbsent(principal, k -> new AtomicInteger());
+        if (mine.incrementAndGet() > maxPerPrincipal) {
+            mine.decrementAndGet();
+            throw new RateLimitedException("subscriptions", "principal", 1,
+                    "Too many query subscriptions for " + principal);
+        }
+        subscriptions.put(subscription.id, subscription);
+        schedule(subscription, 0);
+        return subscription;
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+
+    /** Runs on the writer's thread, only queues the record */
+    private void onChange(ChangeRecord record) {
+        for (Subscription subscription : subscriptions.values()) {
+            if (Objects.equals(subscription.databaseName, record.getDatabaseName())
+                    && subscription.tables.contains(record.getTableName())) {
+                synchronized (subscription) {
+                    subscription.pending.addLast(record);
+                }
+                schedule(subscription, 0);
+            }
+        }
+    }
+
+    private void schedule(Subscription subscription, long delayMs) {
+        synchronized (subscription) {
+            if (subscription.scheduled || subscription.cancelled) {
+                return;
+            }
+            subscription.scheduled = true;
+        }
+        submit(subscription, delayMs);
+    }
+
+    private void submit(Subscription subscription, long delayMs) {
+        try {
+            workers.schedule(() -> run(subscription), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            subscription.cancel();
+        }
+    }
+
+    private void run(Subscription subscription) {
+        long delay = -1;
+        try {
+            if (subscription.cancelled) {
+                return;
+            }
+            List<ChangeRecord> batch;
+            synchronized (subscription) {
+                batch = new ArrayList<ChangeRecord>(subscription.pending);
+                subscription.pending.clear();
+            }
+            if (!subscription.resync && applyDeltas(subscription, batch)) {
+                return;
+            }
+            long wait = subscription.lastSnapshotAt + minResyncMs - System.currentTimeMillis();
+            if (wait > 0) {
+                delay = wait;
+                return;
+            }
+            snapshot(subscription);
+        } catch (IOException e) {
+            subscription.cancel();
+        } catch (SQLException | RuntimeException e) {
+            log.warning("Query subscription " + subscription.id + " failed: " + e.getMessage());
+            try {
+                subscription.deltaListener.onError(e.getMessage());
+            } catch (IOException ignored) {
+                // the client is gone as well
+            }
+            subscription.cancel();
+        } finally {
+            if (delay >= 0) {
+                submit(subscription, delay);
+            } else {
+                boolean again;
+                synchronized (subscription) {
+                    subscription.scheduled = false;
+                    again = !subscription.pending.isEmpty();
+                }
+                if (again) {
+                    schedule(subscription, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the rows the batch adds to the result. False, with nothing sent, when a record
+     * cannot be applied as a delta and the query has to run again.
+     */
+    private boolean applyDeltas(Subscription subscription, List<ChangeRecord> batch) throws IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        long applied = subscription.sequence;
+        for (ChangeRecord record : batch) {
+            if (record.getSequence() <= subscription.sequence) {
+                // already in the snapshot
+                continue;
+            }
+            if (subscription.resyncOnNext || record.getSequence() <= subscription.windowEnd
+                    || subscription.delta == null
+                    || record.getChangeType() != TableChangedEvent.ChangeType.INSERTED
+                    || !subscription.delta.select(record.getRows(), rows)) {
+                subscription.resync = true;
+                return false;
+            }
+            applied = record.getSequence();
+        }
+        if (!rows.isEmpty()) {
+            subscription.deltaListener.onRows(applied, rows);
+            deltas.increment();
+        }
+        subscription.sequence = applied;
+        return true;
+    }
+
+    private void snapshot(Subscription subscription) throws SQLException, IOException {
+        long sequence = changeLog.lastSequence();
+        boolean pending = changeLog.isWritePending(subscription.databaseName, subscription.tables);
+        QueryResult result;
+        SchemaCatalog.Table meta = null;
+        try (Connection conn = databaseRouter.getConnection(subscription.databaseName)) {
+            result = resultStreamer.collect(conn, subscription.sql);
+            if (subscription.selection != null) {
+                meta = schemaCatalog.table(conn, subscription.selection.getTable());
+            }
+        }
+        pending |= changeLog.isWritePending(subscription.databaseName, subscription.tables);
+
+        subscription.sequence = sequence;
+        subscription.windowEnd = changeLog.lastSequence();
+        subscription.resyncOnNext = pending;
+        subscription.resync = false;
+        subscription.lastSnapshotAt = System.currentTimeMillis();
+        // a truncated result cannot take more rows
+        subscription.delta = meta == null || result.isTruncated()
+                ? null : SelectionDelta.of(subscription.selection, meta, result.getColumns());
+
+        subscription.deltaListener.onSnapshot(sequence, result);
+        snapshots.increment();
+    }
+}
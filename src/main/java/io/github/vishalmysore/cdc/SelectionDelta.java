@@ -0,0 +1,223 @@
+package io.github.vishalmysore.cdc;
+
+import io.github.vishalmysore.analytics.AggregateQuery;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.RowData;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.service.BulkLoader;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a plain selection to inserted rows the way Derby would have returned them: the
+ * WHERE filters are evaluated on the converted values and the selected columns come out as
+ * the objects getObject returns. Only covers what is exact without Derby, integer, floating
+ * point and VARCHAR columns, and string filters only with = and &lt;&gt;; a query outside of
+ * that gets no delta and is run again on every change.
+ */
+final class SelectionDelta {
+
+    private final Set<String> tableColumns = new HashSet<String>();
+    private final SchemaCatalog.Column[] output;
+    private final AggregateQuery.Filter[] filters;
+    private final SchemaCatalog.Column[] filterColumns;
+
+    private SelectionDelta(SchemaCatalog.Column[] output, AggregateQuery.Filter[] filters,
+                           SchemaCatalog.Column[] filterColumns) {
+        this.output = output;
+        this.filters = filters;
+        this.filterColumns = filterColumns;
+    }
+
+    /**
+     * The delta for the selection, null when it cannot be evaluated exactly or its columns
+     * do not line up with the labels Derby returned.
+     */
+    static SelectionDelta of(AggregateQuery selection, SchemaCatalog.Table meta, String[] resultColumns) {
+        if (selection == null || !selection.getTable().equals(meta.getName())) {
+            return null;
+        }
+        SchemaCatalog.Column[] output;
+        String[] labels;
+        if (selection.isStar()) {
+            output = meta.getColumns().toArray(new SchemaCatalog.Column[0]);
+            labels = new String[output.length];
+            for (int i = 0; i < output.length; i++) {
+                labels[i] = output[i].getName();
+            }
+        } else {
+            List<AggregateQuery.Item> items = selection.getItems();
+            output = new SchemaCatalog.Column[items.size()];
+            labels = new String[items.size()];
+            for (int i = 0; i < output.length; i++) {
+                output[i] = meta.column(items.get(i).getColumn());
+                labels[i] = items.get(i).getLabel();
+            }
+        }
+        if (resultColumns == null || resultColumns.length != output.length) {
+            return null;
+        }
+        for (int i = 0; i < output.length; i++) {
+            if (output[i] == null || !supported(output[i].getJdbcType()) || !labels[i].equals(resultColumns[i])) {
+                return null;
+            }
+        }
+
+        List<AggregateQuery.Filter> filters = selection.getFilters();
+        SchemaCatalog.Column[] filterColumns = new SchemaCatalog.Column[filters.size()];
+        for (int i = 0; i < filterColumns.length; i++) {
+            AggregateQuery.Filter filter = filters.get(i);
+            filterColumns[i] = meta.column(filter.getColumn());
+            if (filterColumns[i] == null || !supported(filterColumns[i].getJdbcType())
+                    || !comparable(filterColumns[i].getJdbcType(), filter)) {
+                return null;
+            }
+        }
+
+        SelectionDelta delta = new SelectionDelta(output, filters.toArray(new AggregateQuery.Filter[0]), filterColumns);
+        for (SchemaCatalog.Column column : meta.getColumns()) {
+            delta.tableColumns.add(column.getName());
+        }
+        return delta;
+    }
+
+    /**
+     * Adds the inserted rows the query selects to out. False when the rows are not known
+     * completely, e.g. a column was left to its default, and the query has to run again.
+     */
+    boolean select(TableData inserted, List<Object[]> out) {
+        if (inserted == null || inserted.getRowDataList() == null) {
+            return false;
+        }
+        int added = out.size();
+        for (RowData row : inserted.getRowDataList()) {
+            List<ColumnData> cells = row.getColumnDataList();
+            if (cells == null || cells.isEmpty()) {
+                continue;
+            }
+            Map<String, String> values = new HashMap<String, String>();
+            for (ColumnData cell : cells) {
+                if (cell.getColumnName() == null) {
+                    return rollback(out, added);
+                }
+                values.put(TableChangedEvent.normalizeTableName(cell.getColumnName()), cell.getColumnValue());
+            }
+            if (!values.keySet().equals(tableColumns)) {
+                return rollback(out, added);
+            }
+            try {
+                if (!matches(values)) {
+                    continue;
+                }
+                Object[] projected = new Object[output.length];
+                for (int i = 0; i < output.length; i++) {
+                    projected[i] = convert(values, output[i]);
+                }
+                out.add(projected);
+            } catch (SQLException e) {
+                return rollback(out, added);
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(Map<String, String> values) throws SQLException {
+        for (int i = 0; i < filters.length; i++) {
+            Object value = convert(values, filterColumns[i]);
+            AggregateQuery.Operator op = filters[i].getOperator();
+            if (op == AggregateQuery.Operator.IS_NULL || op == AggregateQuery.Operator.IS_NOT_NULL) {
+                if ((value == null) != (op == AggregateQuery.Operator.IS_NULL)) {
+                    return false;
+                }
+                continue;
+            }
+            if (value == null || !holds(op, compare(value, filters[i].getLiteral()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object convert(Map<String, String> values, SchemaCatalog.Column column) throws SQLException {
+        return BulkLoader.convert(values.get(column.getName()), column.getJdbcType(), column.getName());
+    }
+
+    /** Derby's comparison of the column value with the literal */
+    private static int compare(Object value, Object literal) {
+        if (value instanceof String) {
+            // Derby compares character values as if padded with spaces
+            return stripTrailingSpaces((String) value).equals(stripTrailingSpaces((String) literal)) ? 0 : 1;
+        }
+        BigDecimal wanted = (BigDecimal) literal;
+        if (value instanceof Float || value instanceof Double) {
+            return Double.compare(((Number) value).doubleValue(), wanted.doubleValue());
+        }
+        return BigDecimal.valueOf(((Number) value).longValue()).compareTo(wanted);
+    }
+
+    private static boolean holds(AggregateQuery.Operator op, int comparison) {
+        switch (op) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            case GT:
+                return comparison > 0;
+            default:
+                return comparison >= 0;
+        }
+    }
+
+    private static boolean supported(int jdbcType) {
+        switch (jdbcType) {
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.DOUBLE:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean comparable(int jdbcType, AggregateQuery.Filter filter) {
+        AggregateQuery.Operator op = filter.getOperator();
+        if (op == AggregateQuery.Operator.IS_NULL || op == AggregateQuery.Operator.IS_NOT_NULL) {
+            return true;
+        }
+        if (jdbcType == Types.VARCHAR || jdbcType == Types.LONGVARCHAR) {
+            return filter.getLiteral() instanceof String
+                    && (op == AggregateQuery.Operator.EQ || op == AggregateQuery.Operator.NE);
+        }
+        return filter.getLiteral() instanceof BigDecimal;
+    }
+
+    private static boolean rollback(List<Object[]> out, int size) {
+        out.subList(size, out.size()).clear();
+        return false;
+    }
+
+    private static String stripTrailingSpaces(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return s.substring(0, end);
+    }
+}
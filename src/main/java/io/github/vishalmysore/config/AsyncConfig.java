@@ -0,0 +1,64 @@
+package io.github.vishalmysore.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    @Value("${sql.stream.threads:8}")
+    private int streamThreads;
+
+    @Value("${sql.stream.queue-capacity:64}")
+    private int streamQueueCapacity;
+
+    @Value("${agent.async.threads:200}")
+    private int agentThreads;
+
+    @Value("${agent.async.queue-capacity:1000}")
+    private int agentQueueCapacity;
+
+    /**
+     * Declaring our own executors switches off Boot's default one, keep it as the primary
+     * executor so MVC async requests and anything injecting a plain Executor still get it.
+     */
+    @Primary
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * Runs prompts of the async endpoint. The LLM calls block, so this pool is sized for
+     * the number of prompts in flight while Tomcat threads return immediately.
+     */
+    @Bean(name = "agentExecutor")
+    public ThreadPoolTaskExecutor agentExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(agentThreads);
+        executor.setMaxPoolSize(agentThreads);
+        executor.setQueueCapacity(agentQueueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("agent-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded pool that feeds SSE result streams, so long scans never run on Tomcat threads
+     */
+    @Bean(name = "streamExecutor")
+    public ThreadPoolTaskExecutor streamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamThreads);
+        executor.setMaxPoolSize(streamThreads);
+        executor.setQueueCapacity(streamQueueCapacity);
+        executor.setThreadNamePrefix("sql-stream-");
+        executor.initialize();
+        return executor;
+    }
+}
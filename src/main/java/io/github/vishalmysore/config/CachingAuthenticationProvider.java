@@ -0,0 +1,185 @@
+package io.github.vishalmysore.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP Basic sends the password with every request and BCrypt is slow on purpose, so
+ * successful logins are remembered for security.auth-cache.ttl-seconds. The cache key is an
+ * HMAC of user name and password under a key that only lives in this process, no password
+ * or reversible hash is kept. Failed logins are never cached and always pay for BCrypt.
+ * <p>
+ * A hit still loads the user from the {@link UserDetailsService}, which is a map lookup,
+ * and only counts while the user is enabled, unlocked and has the same encoded password,
+ * so disabling a user or changing their password revokes cached logins at once. The
+ * returned authentication carries the user's current roles for the @PreAuthorize checks.
+ */
+@Log
+@Component
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    @Value("${security.auth-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.auth-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${security.auth-cache.max-size:10000}")
+    private int maxSize;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private DaoAuthenticationProvider delegate;
+
+    private Map<String, Entry> entries;
+
+    private byte[] hmacKey;
+
+    private Counter hits;
+    private Counter misses;
+
+    private static class Entry {
+        private final String username;
+        private final String encodedPassword;
+        private final long expiresAt;
+
+        Entry(String username, String encodedPassword, long expiresAt) {
+            this.username = username;
+            this.encodedPassword = encodedPassword;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        delegate = new DaoAuthenticationProvider();
+        delegate.setUserDetailsService(userDetailsService);
+        delegate.setPasswordEncoder(passwordEncoder);
+
+        entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        });
+        hmacKey = new byte[32];
+        new SecureRandom().nextBytes(hmacKey);
+
+        hits = meterRegistry.counter("security.auth.cache", "result", "hit");
+        misses = meterRegistry.counter("security.auth.cache", "result", "miss");
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!enabled || authentication.getCredentials() == null) {
+            return delegate.authenticate(authentication);
+        }
+        String username = authentication.getName();
+        String key = key(username, authentication.getCredentials().toString());
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            UserDetails user = current(entry);
+            if (user != null) {
+                hits.increment();
+                UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken
+                        .authenticated(user, null, user.getAuthorities());
+                result.setDetails(authentication.getDetails());
+                return result;
+            }
+            entries.remove(key);
+        }
+
+        misses.increment();
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof UserDetails) {
+            // read before the ProviderManager erases the credentials of the result
+            String encoded = ((UserDetails) result.getPrincipal()).getPassword();
+            if (encoded != null) {
+                entries.put(key, new Entry(username, encoded,
+                        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    /**
+     * Drops the cached logins of one user, for changes the user store cannot show, e.g. a
+     * revoked session.
+     */
+    public void evict(String username) {
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.username.equals(username));
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /** The user as it is now, null when the cached login no longer counts */
+    private UserDetails current(Entry entry) {
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            return null;
+        }
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(entry.username);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        boolean valid = user.isEnabled() && user.isAccountNonLocked() && user.isAccountNonExpired()
+                && user.isCredentialsNonExpired() && entry.encodedPassword.equals(user.getPassword());
+        return valid ? user : null;
+    }
+
+    private String key(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(hmacKey, "HmacSHA256"));
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.vishalmysore.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Builds the Derby connection pool for the configured storage mode. Pool sizing, validation
+ * and leak detection still come from spring.datasource.hikari.*.
+ */
+@Log
+@Configuration
+public class DataSourceConfig {
+
+    @Autowired
+    private DerbyStorageProperties storage;
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource dataSource() {
+        storage.applySystemProperties();
+        log.info("Derby storage " + storage);
+
+        HikariDataSource dataSource = new DerbyPoolDataSource(storage);
+        dataSource.setDriverClassName(storage.driverClassName());
+        dataSource.setJdbcUrl(storage.jdbcUrl(storage.getDatabase()));
+        dataSource.setUsername(storage.getUser());
+        dataSource.setPassword(storage.getPassword());
+        return dataSource;
+    }
+
+    /**
+     * Shuts the embedded engine down cleanly after the pool is closed, so an on-disk
+     * database starts without crash recovery on the next boot.
+     */
+    static class DerbyPoolDataSource extends HikariDataSource {
+
+        private final DerbyStorageProperties storage;
+
+        DerbyPoolDataSource(DerbyStorageProperties storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (storage.getMode() == DerbyStorageProperties.Mode.EMBEDDED) {
+                try {
+                    DriverManager.getConnection("jdbc:derby:;shutdown=true");
+                } catch (SQLException e) {
+                    // XJ015 is the expected "Derby system shutdown" signal
+                    if (!"XJ015".equals(e.getSQLState())) {
+                        log.warning("Derby shutdown failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.vishalmysore.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Where and how Derby keeps its data, bound from sql.storage.* in application.properties.
+ * <ul>
+ *     <li>MEMORY - in-memory database, lost on restart, limited by heap</li>
+ *     <li>EMBEDDED - on-disk database under {@code home}, reopened on restart</li>
+ *     <li>NETWORK - remote Derby network server through derbyclient</li>
+ * </ul>
+ * The page cache, page size and log settings are engine wide Derby system properties and
+ * only apply to MEMORY and EMBEDDED, a network server is tuned on the server side.
+ */
+@Getter
+@Setter
+@ToString(exclude = "password")
+@Component
+@ConfigurationProperties(prefix = "sql.storage")
+public class DerbyStorageProperties {
+
+    public enum Mode {
+        MEMORY,
+        EMBEDDED,
+        NETWORK
+    }
+
+    private Mode mode = Mode.MEMORY;
+    private String database = "myDB";
+
+    /** derby.system.home, the directory embedded databases are created in */
+    private String home = "./derby-data";
+
+    private String host = "localhost";
+    private int port = 1527;
+    private String user;
+    private String password;
+
+    /** derby.storage.pageCacheSize, number of pages kept in the buffer cache */
+    private int pageCacheSize = 1000;
+    /** derby.storage.pageSize in bytes, 4096, 8192, 16384 or 32768, applies to new tables */
+    private int pageSize = 4096;
+    /** derby.storage.logBufferSize in bytes */
+    private int logBufferSize = 32768;
+    /** derby.storage.checkpointInterval, bytes of log written between Derby's own checkpoints */
+    private long checkpointInterval = 10485760;
+    /** Optional separate directory for the transaction log of newly created databases */
+    private String logDevice;
+
+    /** Period of the background SYSCS_CHECKPOINT_DATABASE call for EMBEDDED, 0 disables it */
+    private long checkpointSeconds = 300;
+
+    public boolean isEmbeddedEngine() {
+        return mode != Mode.NETWORK;
+    }
+
+    public String driverClassName() {
+        return isEmbeddedEngine()
+                ? "org.apache.derby.jdbc.EmbeddedDriver"
+                : "org.apache.derby.jdbc.ClientDriver";
+    }
+
+    public String jdbcUrl(String databaseName) {
+        switch (mode) {
+            case EMBEDDED:
+                return "jdbc:derby:" + databaseName + ";create=true"
+                        + (logDevice == null || logDevice.trim().isEmpty()
+                        ? "" : ";logDevice=" + logDevice.trim());
+            case NETWORK:
+                return "jdbc:derby://" + host + ":" + port + "/" + databaseName + ";create=true";
+            default:
+                return "jdbc:derby:memory:" + databaseName + ";create=true";
+        }
+    }
+
+    /**
+     * Engine wide settings, they must be in place before the embedded engine boots.
+     */
+    public void applySystemProperties() {
+        if (!isEmbeddedEngine()) {
+            return;
+        }
+        System.setProperty("derby.system.home", home);
+        System.setProperty("derby.storage.pageCacheSize", String.valueOf(pageCacheSize));
+        System.setProperty("derby.storage.pageSize", String.valueOf(pageSize));
+        System.setProperty("derby.storage.logBufferSize", String.valueOf(logBufferSize));
+        System.setProperty("derby.storage.checkpointInterval", String.valueOf(checkpointInterval));
+    }
+}
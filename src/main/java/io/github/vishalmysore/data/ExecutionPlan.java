@@ -0,0 +1,24 @@
+package io.github.vishalmysore.data;
+
+import com.t4a.annotations.ListType;
+import com.t4a.annotations.Prompt;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Ordered steps of a compound request, produced by the LLM in one round trip and run in
+ * one transaction.
+ */
+@Getter
+@Setter
+@ToString
+public class ExecutionPlan {
+    @Prompt(describe = "Name of the target database, leave empty unless the user names a database")
+    private String databaseName;
+    @Prompt(describe = "Steps in the order the user asked for them")
+    @ListType(PlanStep.class)
+    private List<PlanStep> steps;
+}
@@ -0,0 +1,38 @@
+package io.github.vishalmysore.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Live state of a file import, polled by clients while multi-GB files load.
+ */
+@Getter
+@Setter
+@ToString
+public class ImportProgress {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String id;
+    private String tableName;
+    private String fileName;
+    private volatile State state = State.RUNNING;
+    private volatile long bytesRead;
+    /** Size of the file as uploaded (compressed for gzip), -1 when unknown */
+    private long totalBytes = -1;
+    private volatile long rowsCommitted;
+    private boolean tableCreated;
+    private volatile String message;
+
+    public int getPercent() {
+        if (totalBytes <= 0) {
+            return state == State.COMPLETED ? 100 : -1;
+        }
+        return (int) Math.min(100, bytesRead * 100 / totalBytes);
+    }
+}
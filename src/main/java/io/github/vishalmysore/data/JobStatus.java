@@ -0,0 +1,47 @@
+package io.github.vishalmysore.data;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * State of a background job as seen by clients polling or streaming its progress.
+ * The result is fetched separately once the job has completed.
+ */
+@Getter
+@Setter
+@ToString(exclude = "result")
+public class JobStatus {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private String id;
+    /** "prompt" or the name of the action */
+    private String type;
+    private String description;
+    private String owner;
+    /** Queue the job runs in, ADMIN or USER */
+    private String lane;
+    private String priority;
+    private volatile State state = State.QUEUED;
+    private long submittedAt = System.currentTimeMillis();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long rowsRead;
+    private volatile long rowsWritten;
+    private volatile String message;
+
+    @JsonIgnore
+    private volatile Object result;
+}
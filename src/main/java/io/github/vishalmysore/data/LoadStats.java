@@ -0,0 +1,29 @@
+package io.github.vishalmysore.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Progress of a bulk load. Rows are counted once their chunk is committed, so after a
+ * failure {@link #getRowsCommitted()} is exactly what made it into the table.
+ */
+@Getter
+@Setter
+@ToString
+public class LoadStats {
+    private long rowsCommitted;
+    private long chunksCommitted;
+    private long startedAt = System.currentTimeMillis();
+    private long elapsedMs;
+
+    public long getRowsPerSecond() {
+        return elapsedMs == 0 ? rowsCommitted : rowsCommitted * 1000 / elapsedMs;
+    }
+
+    public String summary(String tableName) {
+        return rowsCommitted + " rows inserted into table '" + tableName + "' in "
+                + elapsedMs + " ms (" + getRowsPerSecond() + " rows/s, "
+                + chunksCommitted + " commits).";
+    }
+}
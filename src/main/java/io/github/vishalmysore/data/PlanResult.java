@@ -0,0 +1,20 @@
+package io.github.vishalmysore.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of an {@link ExecutionPlan}: one line per step and the result of the last
+ * retrieve step, if any.
+ */
+@Getter
+@Setter
+@ToString
+public class PlanResult {
+    private List<String> steps = new ArrayList<String>();
+    private QueryResult result;
+}
@@ -0,0 +1,22 @@
+package io.github.vishalmysore.data;
+
+import com.t4a.annotations.Prompt;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One step of an {@link ExecutionPlan}. Create and insert steps use tableData, retrieve
+ * steps use sqlQuery.
+ */
+@Getter
+@Setter
+@ToString
+public class PlanStep {
+    @Prompt(describe = "One of createTables, insertDataInTable or retrieveData")
+    private String action;
+    @Prompt(describe = "Table name with columns for createTables, table name with rows for insertDataInTable, leave empty for retrieveData")
+    private TableData tableData;
+    @Prompt(describe = "SELECT query for retrieveData, leave empty for the other actions")
+    private String sqlQuery;
+}
@@ -0,0 +1,22 @@
+package io.github.vishalmysore.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded, materialized query result. Column names are stored once and every
+ * row is a positional array instead of a map per row.
+ */
+@Getter
+@Setter
+@ToString
+public class QueryResult {
+    private String[] columns;
+    private List<Object[]> rows = new ArrayList<Object[]>();
+    private long rowCount;
+    private boolean truncated;
+}
@@ -0,0 +1,32 @@
+package io.github.vishalmysore.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a query result. The tokens are opaque, null when there is no such page,
+ * and are handed back to fetch the neighbouring pages.
+ */
+@Getter
+@Setter
+@ToString
+public class ResultPage {
+    private String[] columns;
+    private List<Object[]> rows = new ArrayList<Object[]>();
+    private int pageNumber;
+    private int pageSize;
+    /** 1-based position of the first row of this page in the whole result */
+    private long firstRow;
+    private String nextToken;
+    private String previousToken;
+    /** More rows follow that cannot be paged to, there is no next page */
+    private boolean truncated;
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
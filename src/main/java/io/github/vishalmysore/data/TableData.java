@@ -1,6 +1,7 @@
 package io.github.vishalmysore.data;
 
 import com.t4a.annotations.ListType;
+import com.t4a.annotations.Prompt;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -12,6 +13,8 @@ import java.util.List;
 @Setter
 @ToString
 public class TableData {
+    @Prompt(describe = "Name of the target database, leave empty unless the user names a database")
+    private String databaseName;
     private String tableName;
     @ListType(ColumnData.class)
     private List<ColumnData> headerList;
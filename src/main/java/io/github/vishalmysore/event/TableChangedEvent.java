@@ -0,0 +1,62 @@
+package io.github.vishalmysore.event;
+
+import io.github.vishalmysore.data.TableData;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Locale;
+
+/**
+ * Published by the write paths of DerbyService after a table was created, altered or written to.
+ * Caches that hold data derived from a table listen for it to drop stale entries.
+ */
+@Getter
+@ToString
+public class TableChangedEvent extends ApplicationEvent {
+
+    public enum ChangeType {
+        CREATED,
+        INSERTED,
+        ALTERED,
+        DROPPED
+    }
+
+    /** Null for the default database */
+    private final String databaseName;
+    private final String tableName;
+    private final ChangeType changeType;
+    /** The rows an INSERTED change wrote, when they are known; null otherwise */
+    @ToString.Exclude
+    private final TableData insertedRows;
+
+    public TableChangedEvent(Object source, String databaseName, String tableName, ChangeType changeType) {
+        this(source, databaseName, tableName, changeType, null);
+    }
+
+    public TableChangedEvent(Object source, String databaseName, String tableName, ChangeType changeType,
+                             TableData insertedRows) {
+        super(source);
+        this.databaseName = databaseName == null || databaseName.trim().isEmpty()
+                ? null : databaseName.trim().toUpperCase(Locale.ROOT);
+        this.tableName = normalizeTableName(tableName);
+        this.changeType = changeType;
+        this.insertedRows = insertedRows;
+    }
+
+    /**
+     * Derby folds unquoted identifiers to upper case, schema prefixes are dropped so
+     * "app.orders" and "ORDERS" refer to the same entry.
+     */
+    public static String normalizeTableName(String tableName) {
+        String name = tableName.trim();
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+        if (name.startsWith("\"") && name.endsWith("\"") && name.length() > 1) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.vishalmysore.export;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact columnar binary encoding in the spirit of Parquet row groups. Rows are buffered
+ * for at most {@code rowGroupSize} rows, then every column of the group is written as one
+ * contiguous chunk, so memory stays bounded by the row group whatever the result size.
+ * <pre>
+ * file      := "SQLCOL1" int:columnCount utf:name* group* int:0
+ * group     := int:rowCount chunk{columnCount}
+ * chunk     := byte:type nulls values
+ * nulls     := bytes[ceil(rowCount / 8)]       bit set = null
+ * values    := per non null row: long (L), double (D), utf8 length-prefixed bytes (S)
+ * </pre>
+ */
+public class ColumnarExportWriter implements ExportWriter {
+
+    static final byte[] MAGIC = "SQLCOL1".getBytes(StandardCharsets.US_ASCII);
+    static final byte LONG = 'L';
+    static final byte DOUBLE = 'D';
+    static final byte STRING = 'S';
+
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private Object[][] columns;
+    private int rows;
+
+    public ColumnarExportWriter(OutputStream out, int rowGroupSize) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    @Override
+    public void onColumns(String[] columnNames) throws IOException {
+        out.write(MAGIC);
+        out.writeInt(columnNames.length);
+        for (String name : columnNames) {
+            out.writeUTF(name);
+        }
+        columns = new Object[columnNames.length][rowGroupSize];
+    }
+
+    @Override
+    public void onRow(Object[] values) throws IOException {
+        for (int c = 0; c < values.length; c++) {
+            columns[c][rows] = values[c];
+        }
+        if (++rows == rowGroupSize) {
+            writeGroup();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (rows > 0) {
+            writeGroup();
+        }
+        out.writeInt(0);
+        out.flush();
+    }
+
+    private void writeGroup() throws IOException {
+        out.writeInt(rows);
+        byte[] nulls = new byte[(rows + 7) / 8];
+        for (Object[] column : columns) {
+            byte type = typeOf(column, rows);
+            out.writeByte(type);
+            Arrays.fill(nulls, (byte) 0);
+            for (int r = 0; r < rows; r++) {
+                if (column[r] == null) {
+                    nulls[r >> 3] |= (byte) (1 << (r & 7));
+                }
+            }
+            out.write(nulls);
+            for (int r = 0; r < rows; r++) {
+                Object value = column[r];
+                if (value == null) {
+                    continue;
+                }
+                if (type == LONG) {
+                    out.writeLong(((Number) value).longValue());
+                } else if (type == DOUBLE) {
+                    out.writeDouble(((Number) value).doubleValue());
+                } else {
+                    byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                column[r] = null;
+            }
+        }
+        rows = 0;
+    }
+
+    private static byte typeOf(Object[] column, int rows) {
+        byte type = 0;
+        for (int r = 0; r < rows; r++) {
+            Object v = column[r];
+            if (v == null) {
+                continue;
+            }
+            byte t;
+            if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+                t = LONG;
+            } else if (v instanceof Double || v instanceof Float) {
+                t = DOUBLE;
+            } else {
+                return STRING;
+            }
+            if (type != 0 && type != t) {
+                return STRING;
+            }
+            type = t;
+        }
+        return type == 0 ? STRING : type;
+    }
+}
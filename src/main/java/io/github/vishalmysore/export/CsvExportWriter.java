@@ -0,0 +1,43 @@
+package io.github.vishalmysore.export;
+
+import com.opencsv.CSVWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a header line and one CSV line per row straight to the stream.
+ */
+public class CsvExportWriter implements ExportWriter {
+
+    private final CSVWriter writer;
+    private String[] line;
+
+    public CsvExportWriter(OutputStream out) {
+        this.writer = new CSVWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024));
+    }
+
+    @Override
+    public void onColumns(String[] columnNames) {
+        line = new String[columnNames.length];
+        writer.writeNext(columnNames, false);
+    }
+
+    @Override
+    public void onRow(Object[] values) {
+        // the line array is reused, CSVWriter copies it into its buffer
+        for (int i = 0; i < values.length; i++) {
+            line[i] = values[i] == null ? "" : values[i].toString();
+        }
+        writer.writeNext(line, false);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.vishalmysore.export;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.nio.file.Path;
+
+@Getter
+@Setter
+@ToString
+public class ExportFile {
+    private String id;
+    private String fileName;
+    private Path path;
+    private ExportFormat format;
+    private long rowCount;
+    private long sizeBytes;
+    private boolean truncated;
+
+    public String getDownloadPath() {
+        return "/export/" + id;
+    }
+}
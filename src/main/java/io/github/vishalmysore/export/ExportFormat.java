@@ -0,0 +1,36 @@
+package io.github.vishalmysore.export;
+
+import java.util.Locale;
+
+public enum ExportFormat {
+    CSV("text/csv", ".csv"),
+    /** Row groups of column chunks, see {@link ColumnarExportWriter} */
+    COLUMNAR("application/vnd.sqlagent.columnar", ".col");
+
+    private final String mimeType;
+    private final String extension;
+
+    ExportFormat(String mimeType, String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ExportFormat of(String format) {
+        if (format == null || format.trim().isEmpty()) {
+            return CSV;
+        }
+        String f = format.trim().toUpperCase(Locale.ROOT);
+        if (f.startsWith("COL") || f.startsWith("BIN") || f.startsWith("PARQUET")) {
+            return COLUMNAR;
+        }
+        return CSV;
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.vishalmysore.export;
+
+import io.github.vishalmysore.service.ResultStreamer;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Streams a SELECT from the ResultSet into a CSV or columnar file without buffering the
+ * result. Export files live in sql.export.dir and are removed after sql.export.ttl-minutes.
+ */
+@Log
+@Component
+public class ExportService {
+
+    private static final Pattern EXPORT_ID = Pattern.compile("[0-9a-f\\-]{36}");
+
+    @Value("${sql.export.dir:}")
+    private String exportDir;
+
+    @Value("${sql.export.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${sql.export.row-group-size:8192}")
+    private int rowGroupSize;
+
+    @Autowired
+    private ResultStreamer resultStreamer;
+
+    public ResultStreamer.StreamStats write(Connection conn, String sql, ExportFormat format,
+                                            OutputStream out) throws SQLException, IOException {
+        ExportWriter writer = format == ExportFormat.COLUMNAR
+                ? new ColumnarExportWriter(out, rowGroupSize)
+                : new CsvExportWriter(out);
+        ResultStreamer.StreamStats stats = resultStreamer.stream(conn, sql,
+                resultStreamer.getStreamMaxRows(), resultStreamer.getStreamMaxBytes(), writer);
+        writer.finish();
+        return stats;
+    }
+
+    public ExportFile exportToFile(Connection conn, String sql, ExportFormat format)
+            throws SQLException, IOException {
+        purgeExpired();
+        ExportFile file = new ExportFile();
+        file.setId(UUID.randomUUID().toString());
+        file.setFormat(format);
+        file.setFileName("export-" + file.getId() + format.getExtension());
+        file.setPath(directory().resolve(file.getFileName()));
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.getPath()))) {
+            ResultStreamer.StreamStats stats = write(conn, sql, format, out);
+            file.setRowCount(stats.getRowCount());
+            file.setTruncated(stats.isTruncated());
+        } catch (SQLException | IOException | RuntimeException e) {
+            Files.deleteIfExists(file.getPath());
+            throw e;
+        }
+        file.setSizeBytes(Files.size(file.getPath()));
+        return file;
+    }
+
+    /**
+     * Looks up a finished export by id, returns null for unknown or expired ids.
+     */
+    public ExportFile find(String id) throws IOException {
+        if (id == null || !EXPORT_ID.matcher(id).matches()) {
+            return null;
+        }
+        for (ExportFormat format : ExportFormat.values()) {
+            Path path = directory().resolve("export-" + id + format.getExtension());
+            if (Files.isRegularFile(path)) {
+                ExportFile file = new ExportFile();
+                file.setId(id);
+                file.setFormat(format);
+                file.setFileName(path.getFileName().toString());
+                file.setPath(path);
+                file.setSizeBytes(Files.size(path));
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private Path directory() throws IOException {
+        Path dir = exportDir == null || exportDir.trim().isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "sql-agent-exports")
+                : Paths.get(exportDir.trim());
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMinutes * 60 * 1000;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory(), "export-*")) {
+            for (Path path : files) {
+                File f = path.toFile();
+                if (f.lastModified() < cutoff && !f.delete()) {
+                    log.fine("Could not delete expired export " + path);
+                }
+            }
+        } catch (IOException e) {
+            log.warning("Could not purge exports: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.vishalmysore.export;
+
+import io.github.vishalmysore.service.RowHandler;
+
+import java.io.IOException;
+
+/**
+ * Row handler that encodes rows into an output stream. {@link #finish()} writes any
+ * buffered tail and flushes, it does not close the underlying stream.
+ */
+public interface ExportWriter extends RowHandler {
+
+    void finish() throws IOException;
+}
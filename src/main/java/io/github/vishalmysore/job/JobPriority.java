@@ -0,0 +1,19 @@
+package io.github.vishalmysore.job;
+
+import java.util.Locale;
+
+/**
+ * Order of queued jobs within their lane, jobs of the same priority run first come first served.
+ */
+public enum JobPriority {
+    HIGH,
+    NORMAL,
+    LOW;
+
+    public static JobPriority of(String priority) {
+        if (priority == null || priority.trim().isEmpty()) {
+            return NORMAL;
+        }
+        return valueOf(priority.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,378 @@
+package io.github.vishalmysore.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.t4a.annotations.Action;
+import io.github.vishalmysore.data.JobStatus;
+import io.github.vishalmysore.metrics.ActionScope;
+import io.github.vishalmysore.service.DerbyService;
+import io.github.vishalmysore.service.PromptService;
+import io.github.vishalmysore.service.QueryCancellation;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs prompts and actions in the background so long inserts, imports and exports outlive
+ * the HTTP request that started them. Clients get a job id back and poll or stream the
+ * {@link JobStatus} until the result is ready.
+ * <p>
+ * Jobs of ADMIN users and of everybody else run in separate lanes, each with its own
+ * thread limit and bounded priority queue, so a burst of reads cannot hold back admin DDL
+ * and a long admin load cannot take all threads from readers. Jobs run with the security
+ * context of the submitter, and cancelling a running job cancels its current query.
+ */
+@Log
+@Service
+public class JobService {
+
+    private static final String ADMIN = "ADMIN";
+    private static final String USER = "USER";
+
+    @Autowired
+    private PromptService promptService;
+
+    @Autowired
+    private DerbyService derbyService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${agent.jobs.admin-threads:2}")
+    private int adminThreads;
+
+    @Value("${agent.jobs.user-threads:4}")
+    private int userThreads;
+
+    /** Queued jobs per lane before submissions are rejected */
+    @Value("${agent.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${agent.jobs.max-retained:200}")
+    private int maxRetained;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** In submission order, guarded by itself */
+    private final Map<String, Job> jobs = new LinkedHashMap<String, Job>();
+
+    private final Map<String, ThreadPoolExecutor> lanes = new HashMap<String, ThreadPoolExecutor>();
+
+    private ScheduledExecutorService progressTicker;
+
+    /** Work of a job, prompts and actions alike */
+    private interface Work {
+        Object run() throws Exception;
+    }
+
+    private class Job implements Runnable, Comparable<Job> {
+        private final JobStatus status;
+        private final JobPriority priority;
+        private final long order = sequence.incrementAndGet();
+        private final Work work;
+        private final SecurityContext context;
+        private final QueryCancellation cancellation = new QueryCancellation();
+        private volatile ActionScope scope;
+
+        Job(JobStatus status, JobPriority priority, Work work, SecurityContext context) {
+            this.status = status;
+            this.priority = priority;
+            this.work = work;
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (status.getState() != JobStatus.State.QUEUED) {
+                    return;
+                }
+                status.setState(JobStatus.State.RUNNING);
+                status.setStartedAt(System.currentTimeMillis());
+            }
+            SecurityContextHolder.setContext(context);
+            cancellation.enter();
+            scope = ActionScope.open("job");
+            try {
+                Object result = work.run();
+                status.setResult(result);
+                status.setMessage(abbreviate(String.valueOf(result)));
+                // actions report a failed query in their result, a cancelled one included
+                status.setState(cancellation.isCancelled() ? JobStatus.State.CANCELLED : JobStatus.State.COMPLETED);
+            } catch (Exception e) {
+                status.setMessage(e.getMessage());
+                status.setState(cancellation.isCancelled() ? JobStatus.State.CANCELLED : JobStatus.State.FAILED);
+                log.info("Job " + status.getId() + " " + status.getState() + ": " + e.getMessage());
+            } finally {
+                scope.close();
+                refresh(this);
+                status.setFinishedAt(System.currentTimeMillis());
+                cancellation.exit();
+                SecurityContextHolder.clearContext();
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        lanes.put(ADMIN, lane("job-admin-", adminThreads));
+        lanes.put(USER, lane("job-user-", userThreads));
+        progressTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-progress");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (ThreadPoolExecutor lane : lanes.values()) {
+            lane.shutdownNow();
+        }
+        progressTicker.shutdownNow();
+    }
+
+    private static ThreadPoolExecutor lane(final String prefix, int threads) {
+        final AtomicLong count = new AtomicLong();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), r -> new Thread(r, prefix + count.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public JobStatus submitPrompt(final String prompt, String priority) {
+        return submit("prompt", prompt, priority, () -> promptService.answer(prompt));
+    }
+
+    /**
+     * Runs an agent action directly, the parameters are bound by name to the action's
+     * parameters. Authorization is the same as when the agent calls the action.
+     *
+     * @throws IllegalArgumentException for an unknown action or parameters that do not bind
+     */
+    public JobStatus submitAction(String actionName, Map<String, Object> params, String priority) {
+        final Method method = actionMethod(actionName);
+        final Object[] args = bind(method, params == null ? Collections.<String, Object>emptyMap() : params);
+        return submit(method.getName(), method.getName() + " " + (params == null ? "{}" : params.keySet()),
+                priority, () -> invoke(method, args));
+    }
+
+    private JobStatus submit(String type, String description, String priority, Work work) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        JobStatus status = new JobStatus();
+        status.setId(UUID.randomUUID().toString());
+        status.setType(type);
+        status.setDescription(abbreviate(description));
+        status.setOwner(auth == null ? "" : auth.getName());
+        status.setLane(isAdmin(auth) ? ADMIN : USER);
+        JobPriority jobPriority = JobPriority.of(priority);
+        status.setPriority(jobPriority.name());
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(auth);
+        Job job = new Job(status, jobPriority, work, context);
+
+        ThreadPoolExecutor lane = lanes.get(status.getLane());
+        synchronized (lane) {
+            if (lane.getQueue().size() >= queueCapacity) {
+                throw new TaskRejectedException("Job queue of lane " + status.getLane() + " is full");
+            }
+            synchronized (jobs) {
+                jobs.put(status.getId(), job);
+                evictFinished();
+            }
+            lane.execute(job);
+        }
+        return status;
+    }
+
+    /**
+     * Drops the oldest finished jobs beyond the retained count. Queued and running jobs
+     * stay whatever their age, they are bounded by the lanes' threads and queues.
+     */
+    private void evictFinished() {
+        Iterator<Job> oldestFirst = jobs.values().iterator();
+        while (jobs.size() > maxRetained && oldestFirst.hasNext()) {
+            if (oldestFirst.next().status.getState().isFinished()) {
+                oldestFirst.remove();
+            }
+        }
+    }
+
+    /**
+     * Status of the job, null when it does not exist or belongs to another user and the
+     * caller is not an admin.
+     */
+    public JobStatus get(String id) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(id);
+        }
+        if (job == null || !visible(job)) {
+            return null;
+        }
+        refresh(job);
+        return job.status;
+    }
+
+    public List<JobStatus> list() {
+        List<Job> all;
+        synchronized (jobs) {
+            all = new ArrayList<Job>(jobs.values());
+        }
+        List<JobStatus> result = new ArrayList<JobStatus>();
+        for (Job job : all) {
+            if (visible(job)) {
+                refresh(job);
+                result.add(job.status);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes a queued job from its lane or cancels the query of a running one.
+     */
+    public JobStatus cancel(String id) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(id);
+        }
+        if (job == null || !visible(job)) {
+            return null;
+        }
+        synchronized (job) {
+            if (job.status.getState() == JobStatus.State.QUEUED) {
+                lanes.get(job.status.getLane()).remove(job);
+                job.status.setState(JobStatus.State.CANCELLED);
+                job.status.setFinishedAt(System.currentTimeMillis());
+                return job.status;
+            }
+        }
+        if (job.status.getState() == JobStatus.State.RUNNING) {
+            job.cancellation.cancel();
+        }
+        return job.status;
+    }
+
+    /**
+     * Sends the status every second as a "progress" event and a final "end" event once the
+     * job has finished.
+     */
+    public void stream(final String id, final SseEmitter emitter) {
+        final AtomicReference<ScheduledFuture<?>> task = new AtomicReference<ScheduledFuture<?>>();
+        final SecurityContext context = SecurityContextHolder.getContext();
+        task.set(progressTicker.scheduleAtFixedRate(() -> {
+            SecurityContextHolder.setContext(context);
+            try {
+                JobStatus status = get(id);
+                if (status == null) {
+                    emitter.complete();
+                    task.get().cancel(false);
+                } else if (status.getState().isFinished()) {
+                    emitter.send(SseEmitter.event().name("end").data(status));
+                    emitter.complete();
+                    task.get().cancel(false);
+                } else {
+                    emitter.send(SseEmitter.event().name("progress").data(status));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // client went away
+                task.get().cancel(false);
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+        }, 0, 1, TimeUnit.SECONDS));
+        emitter.onCompletion(() -> {
+            ScheduledFuture<?> future = task.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+        });
+    }
+
+    private void refresh(Job job) {
+        ActionScope scope = job.scope;
+        if (scope != null) {
+            job.status.setRowsRead(scope.getRowsRead());
+            job.status.setRowsWritten(scope.getRowsWritten());
+        }
+    }
+
+    private static boolean visible(Job job) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return isAdmin(auth) || (auth != null && auth.getName().equals(job.status.getOwner()));
+    }
+
+    private static boolean isAdmin(Authentication auth) {
+        if (auth == null) {
+            return false;
+        }
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            if ("ROLE_ADMIN".equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Method actionMethod(String actionName) {
+        if (actionName != null) {
+            for (Method method : DerbyService.class.getMethods()) {
+                if (method.isAnnotationPresent(Action.class) && method.getName().equalsIgnoreCase(actionName.trim())) {
+                    return method;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown action " + actionName);
+    }
+
+    private Object[] bind(Method method, Map<String, Object> params) {
+        Parameter[] parameters = method.getParameters();
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Object value = params.get(parameters[i].getName());
+            args[i] = value == null ? null : objectMapper.convertValue(value, parameters[i].getType());
+        }
+        return args;
+    }
+
+    private Object invoke(Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(derbyService, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static String abbreviate(String text) {
+        return text != null && text.length() > 500 ? text.substring(0, 500) + "..." : text;
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.vishalmysore.limit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admits every @Action invocation through the {@link RequestLimiter}, whichever way it was
+ * called: a prompt, A2A, MCP or a background job. Runs inside the metrics aspect so
+ * rejected calls are counted with their outcome.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class ActionLimitAspect {
+
+    @Autowired
+    private RequestLimiter requestLimiter;
+
+    @Around("@annotation(com.t4a.annotations.Action)")
+    public Object admit(ProceedingJoinPoint joinPoint) throws Throwable {
+        try (RequestLimiter.Permit permit = requestLimiter.acquireAction(joinPoint.getSignature().getName())) {
+            return joinPoint.proceed();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.vishalmysore.limit;
+
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A request the {@link RequestLimiter} turned away. Answers 429 with a Retry-After header
+ * when it reaches Spring MVC.
+ */
+@Getter
+public class RateLimitedException extends ResponseStatusException {
+
+    private final String gate;
+    private final String kind;
+    private final long retryAfterSeconds;
+
+    public RateLimitedException(String gate, String kind, long retryAfterSeconds, String message) {
+        super(HttpStatus.TOO_MANY_REQUESTS, message);
+        this.gate = gate;
+        this.kind = kind;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
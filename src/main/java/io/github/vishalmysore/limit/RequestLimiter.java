@@ -0,0 +1,285 @@
+package io.github.vishalmysore.limit;
+
+import io.github.vishalmysore.metrics.Roles;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control per principal. Every prompt and every action first takes a token from
+ * a bucket of its own for (principal, prompt or action), refilled at the rate configured
+ * for the caller's role under agent.limits.admin.* or agent.limits.user.*. Prompts then
+ * take a slot of the "llm" gate and the scanning actions one of the "query" gate; both
+ * bound the work in flight overall and per principal.
+ * <p>
+ * A caller that cannot go at once waits, but never past agent.limits.queue-timeout-ms and
+ * never behind more than agent.limits.max-queued other waiters; otherwise it is turned away
+ * with a {@link RateLimitedException} (HTTP 429) right away instead of holding a thread.
+ */
+@Log
+@Component
+public class RequestLimiter {
+
+    static final String PROMPT = "prompt";
+
+    /** Bucket count at which idle, full buckets are dropped */
+    private static final int MAX_BUCKETS = 10000;
+
+    @Value("${agent.limits.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.limits.admin.prompts-per-minute:120}")
+    private double adminPromptsPerMinute;
+
+    @Value("${agent.limits.admin.actions-per-minute:600}")
+    private double adminActionsPerMinute;
+
+    @Value("${agent.limits.user.prompts-per-minute:30}")
+    private double userPromptsPerMinute;
+
+    @Value("${agent.limits.user.actions-per-minute:120}")
+    private double userActionsPerMinute;
+
+    @Value("${agent.limits.burst-seconds:10}")
+    private double burstSeconds;
+
+    @Value("${agent.limits.llm.max-concurrent:8}")
+    private int llmMaxConcurrent;
+
+    @Value("${agent.limits.query.max-concurrent:8}")
+    private int queryMaxConcurrent;
+
+    @Value("${agent.limits.query.actions:retrieveData,showResultPage,executePlan,streamQuery,exportData,exportQuery}")
+    private String[] queryActions;
+
+    @Value("${agent.limits.max-concurrent-per-principal:2}")
+    private int maxPerPrincipal;
+
+    @Value("${agent.limits.queue-timeout-ms:2000}")
+    private long queueTimeoutMs;
+
+    @Value("${agent.limits.max-queued:64}")
+    private int maxQueued;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+    /** Callers sleeping on a reserved token */
+    private final AtomicInteger rateQueued = new AtomicInteger();
+
+    private Set<String> scanningActions;
+    private Gate llmGate;
+    private Gate queryGate;
+
+    /**
+     * Held while admitted work runs, closing it frees the gate slot. Closing twice is harmless.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private static final Permit NONE = new Permit(null, null);
+
+        private final Gate gate;
+        private final AtomicInteger principalInFlight;
+        private boolean closed;
+
+        private Permit(Gate gate, AtomicInteger principalInFlight) {
+            this.gate = gate;
+            this.principalInFlight = principalInFlight;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed || gate == null) {
+                return;
+            }
+            closed = true;
+            principalInFlight.decrementAndGet();
+            gate.slots.release();
+        }
+    }
+
+    /** A bounded number of slots, overall and per principal, with a bounded wait for one */
+    private final class Gate {
+        private final String name;
+        private final int size;
+        private final Semaphore slots;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+
+        Gate(String name, int size) {
+            this.name = name;
+            this.size = size;
+            this.slots = new Semaphore(size, true);
+        }
+
+        Permit enter(String principal, String role, long deadline) {
+            AtomicInteger mine = inFlight.computeIfAbsent(principal, k -> new AtomicInteger());
+            if (mine.incrementAndGet() > maxPerPrincipal) {
+                mine.decrementAndGet();
+                throw reject(name, "principal", role, 1,
+                        "Too many " + name + " requests in flight for " + principal);
+            }
+            boolean admitted = false;
+            try {
+                admitted = slots.tryAcquire();
+                if (!admitted) {
+                    if (queued.incrementAndGet() > maxQueued) {
+                        queued.decrementAndGet();
+                        throw reject(name, "queue-full", role, 1, "Too many " + name + " requests waiting");
+                    }
+                    try {
+                        admitted = slots.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw reject(name, "interrupted", role, 1, "Interrupted while waiting for " + name);
+                    } finally {
+                        queued.decrementAndGet();
+                    }
+                    if (!admitted) {
+                        throw reject(name, "timeout", role, 1, "Timed out waiting for " + name);
+                    }
+                }
+                return new Permit(this, mine);
+            } finally {
+                if (!admitted) {
+                    mine.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        scanningActions = new HashSet<String>(Arrays.asList(queryActions));
+        llmGate = gauged(new Gate("llm", llmMaxConcurrent));
+        queryGate = gauged(new Gate("query", queryMaxConcurrent));
+        Gauge.builder("agent.admission.queued", rateQueued, AtomicInteger::get)
+                .tag("gate", "rate")
+                .register(meterRegistry);
+    }
+
+    private Gate gauged(Gate gate) {
+        Gauge.builder("agent.admission.queued", gate, g -> g.queued.get())
+                .tag("gate", gate.name)
+                .register(meterRegistry);
+        Gauge.builder("agent.admission.in-flight", gate, g -> g.size - g.slots.availablePermits())
+                .tag("gate", gate.name)
+                .register(meterRegistry);
+        return gate;
+    }
+
+    /** Admits one prompt, i.e. one round of LLM calls */
+    public Permit acquirePrompt() {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        Caller caller = Caller.current();
+        take(caller, PROMPT, caller.admin ? adminPromptsPerMinute : userPromptsPerMinute, deadline);
+        return llmGate.enter(caller.name, caller.role, deadline);
+    }
+
+    /** Admits one action call, scanning actions also take a slot of the query gate */
+    public Permit acquireAction(String action) {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        Caller caller = Caller.current();
+        take(caller, action, caller.admin ? adminActionsPerMinute : userActionsPerMinute, deadline);
+        if (!scanningActions.contains(action)) {
+            return Permit.NONE;
+        }
+        return queryGate.enter(caller.name, caller.role, deadline);
+    }
+
+    private void take(Caller caller, String key, double perMinute, long deadline) {
+        if (perMinute <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (buckets.size() > MAX_BUCKETS) {
+            buckets.values().removeIf(b -> b.isFull(now));
+        }
+        double capacity = Math.max(1, perMinute * burstSeconds / 60);
+        TokenBucket bucket = buckets.computeIfAbsent(caller.admin + ":" + caller.name + ":" + key,
+                k -> new TokenBucket(perMinute, capacity, now));
+
+        long wait = bucket.reserve(now, deadline - now);
+        if (wait < 0) {
+            throw reject("rate", key, caller.role, seconds(bucket.nanosUntilAvailable(now)),
+                    "Rate limit for " + key + " exceeded");
+        }
+        if (wait == 0) {
+            return;
+        }
+        if (rateQueued.incrementAndGet() > maxQueued) {
+            rateQueued.decrementAndGet();
+            bucket.refund();
+            throw reject("rate", "queue-full", caller.role, seconds(wait), "Too many requests waiting");
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bucket.refund();
+            throw reject("rate", "interrupted", caller.role, 1, "Interrupted while waiting for " + key);
+        } finally {
+            rateQueued.decrementAndGet();
+        }
+    }
+
+    private RateLimitedException reject(String gate, String kind, String role, long retryAfterSeconds,
+                                        String message) {
+        meterRegistry.counter("agent.admission.rejected", "gate", gate, "reason", kind, "role", role).increment();
+        log.fine("Rejected: " + message);
+        return new RateLimitedException(gate, kind, retryAfterSeconds, message);
+    }
+
+    private static long seconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + 999_999_999L));
+    }
+
+    /** The authenticated caller, anything without ROLE_ADMIN gets the USER limits */
+    private static final class Caller {
+        private final String name;
+        private final boolean admin;
+        private final String role;
+
+        private Caller(String name, boolean admin, String role) {
+            this.name = name;
+            this.admin = admin;
+            this.role = role;
+        }
+
+        static Caller current() {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            if (auth == null) {
+                return new Caller("anonymous", false, Roles.current());
+            }
+            boolean admin = false;
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                admin |= "ROLE_ADMIN".equals(authority.getAuthority());
+            }
+            return new Caller(auth.getName(), admin, Roles.current());
+        }
+    }
+}
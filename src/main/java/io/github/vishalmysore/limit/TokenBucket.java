@@ -0,0 +1,66 @@
+package io.github.vishalmysore.limit;
+
+/**
+ * Classic token bucket on System.nanoTime(). A caller may reserve a token that only becomes
+ * available later, the bucket then goes negative and later callers wait behind it, which is
+ * how requests queue in arrival order without a separate queue.
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long updatedAt;
+
+    TokenBucket(double perMinute, double capacity, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = perMinute / 60e9;
+        this.tokens = capacity;
+        this.updatedAt = now;
+    }
+
+    /**
+     * Takes one token and returns how many nanoseconds the caller has to wait before using
+     * it, 0 when it is available now. Returns -1 and takes nothing when the wait would be
+     * longer than maxWaitNanos.
+     */
+    synchronized long reserve(long now, long maxWaitNanos) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long wait = waitFor(1);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /** Gives back a reserved token the caller did not use */
+    synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    synchronized long nanosUntilAvailable(long now) {
+        refill(now);
+        return tokens >= 1 ? 0 : waitFor(1);
+    }
+
+    synchronized boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private long waitFor(double needed) {
+        return (long) Math.ceil((needed - tokens) / tokensPerNano);
+    }
+
+    private void refill(long now) {
+        if (now > updatedAt) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+            updatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.vishalmysore.metrics;
+
+import io.github.vishalmysore.cache.ActionTrace;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every @Action invocation and records the rows and bytes it moved, tagged with the
+ * action name, the caller's roles and the outcome (exception type on failure). Runs outside
+ * the admission aspect so calls the limiter turns away are timed as well.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ActionMetricsAspect {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Around("@annotation(com.t4a.annotations.Action)")
+    public Object timeAction(ProceedingJoinPoint joinPoint) throws Throwable {
+        String action = joinPoint.getSignature().getName();
+        ActionTrace.recordAction(action);
+        ActionScope scope = ActionScope.open(action);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable t) {
+            outcome = t.getClass().getSimpleName();
+            throw t;
+        } finally {
+            scope.close();
+            String role = Roles.current();
+            sample.stop(Timer.builder("agent.action")
+                    .tag("action", action)
+                    .tag("role", role)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            record("agent.action.rows.read", action, role, scope.getRowsRead());
+            record("agent.action.rows.written", action, role, scope.getRowsWritten());
+            record("agent.action.result.bytes", action, role, scope.getResultBytes());
+        }
+    }
+
+    private void record(String name, String action, String role, long amount) {
+        DistributionSummary.builder(name)
+                .tag("action", action)
+                .tag("role", role)
+                .register(meterRegistry)
+                .record(amount);
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.vishalmysore.metrics;
+
+import lombok.Getter;
+
+/**
+ * Rows and bytes touched by the action running on the current thread. Scopes nest, rows
+ * counted in an inner scope are added to the enclosing ones as well, so a background job
+ * sees the totals of every action it ran. Counters are written by the owning thread only
+ * and may be read from others.
+ */
+@Getter
+public class ActionScope {
+
+    private static final ThreadLocal<ActionScope> CURRENT = new ThreadLocal<ActionScope>();
+
+    private final String action;
+    private final ActionScope parent;
+    private volatile long rowsRead;
+    private volatile long rowsWritten;
+    private volatile long resultBytes;
+
+    private ActionScope(String action, ActionScope parent) {
+        this.action = action;
+        this.parent = parent;
+    }
+
+    public static ActionScope open(String action) {
+        ActionScope scope = new ActionScope(action, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public void close() {
+        if (parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(parent);
+        }
+    }
+
+    public static ActionScope current() {
+        return CURRENT.get();
+    }
+
+    void addRead(long rows, long bytes) {
+        for (ActionScope scope = this; scope != null; scope = scope.parent) {
+            scope.rowsRead += rows;
+            scope.resultBytes += bytes;
+        }
+    }
+
+    void addWritten(long rows) {
+        for (ActionScope scope = this; scope != null; scope = scope.parent) {
+            scope.rowsWritten += rows;
+        }
+    }
+}
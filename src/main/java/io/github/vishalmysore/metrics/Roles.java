@@ -0,0 +1,31 @@
+package io.github.vishalmysore.metrics;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Role set of the current caller as a low cardinality metric tag, e.g. "ROLE_ADMIN".
+ */
+public final class Roles {
+
+    private Roles() {
+    }
+
+    public static String current() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getAuthorities().isEmpty()) {
+            return "none";
+        }
+        List<String> roles = new ArrayList<String>();
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        Collections.sort(roles);
+        return String.join(",", roles);
+    }
+}
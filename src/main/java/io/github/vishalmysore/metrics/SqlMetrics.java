@@ -0,0 +1,69 @@
+package io.github.vishalmysore.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database side meters. Besides the global meters, rows and bytes are added to the
+ * {@link ActionScope} of the action that is currently running on the thread, so the
+ * action aspect can report them per action.
+ */
+@Component
+public class SqlMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer executeTimer;
+    private Timer fetchTimer;
+    private Counter rowsRead;
+    private Counter rowsWritten;
+    private DistributionSummary resultBytes;
+
+    @PostConstruct
+    public void init() {
+        executeTimer = Timer.builder("sql.execute")
+                .description("executeQuery until the first rows are available")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        fetchTimer = Timer.builder("sql.fetch")
+                .description("Reading the result set, including handing rows to the consumer")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        rowsRead = meterRegistry.counter("sql.rows", "direction", "read");
+        rowsWritten = meterRegistry.counter("sql.rows", "direction", "written");
+        resultBytes = DistributionSummary.builder("sql.result.bytes")
+                .baseUnit("bytes")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public void executed(long nanos) {
+        executeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fetched(long nanos, long rows, long bytes) {
+        fetchTimer.record(nanos, TimeUnit.NANOSECONDS);
+        rowsRead.increment(rows);
+        resultBytes.record(bytes);
+        ActionScope scope = ActionScope.current();
+        if (scope != null) {
+            scope.addRead(rows, bytes);
+        }
+    }
+
+    public void written(long rows) {
+        rowsWritten.increment(rows);
+        ActionScope scope = ActionScope.current();
+        if (scope != null) {
+            scope.addWritten(rows);
+        }
+    }
+}
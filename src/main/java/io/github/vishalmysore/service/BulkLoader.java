@@ -0,0 +1,301 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.LoadStats;
+import io.github.vishalmysore.data.RowData;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.metrics.SqlMetrics;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.sql.Date;
+import java.util.*;
+
+/**
+ * Fast path for inserts: values are converted to the column's SQL type before binding,
+ * rows go through JDBC batches of sql.insert.batch-size and every chunk is committed in
+ * its own transaction, so large loads neither coerce every value inside Derby nor hold
+ * one huge transaction log.
+ */
+@Log
+@Component
+public class BulkLoader {
+
+    @Value("${sql.insert.batch-size:1000}")
+    private int batchSize;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    /**
+     * Inserts the rows of the table data. Rows are grouped by their column list, so rows
+     * that carry different columns each get a matching INSERT statement.
+     */
+    public LoadStats load(Connection conn, TableData tableData) throws SQLException {
+        return load(conn, tableData, true);
+    }
+
+    /**
+     * Like {@link #load(Connection, TableData)}, but the batches run in the caller's
+     * transaction: nothing is committed or rolled back here.
+     */
+    public LoadStats loadInTransaction(Connection conn, TableData tableData) throws SQLException {
+        return load(conn, tableData, false);
+    }
+
+    private LoadStats load(Connection conn, TableData tableData, boolean commitChunks) throws SQLException {
+        Map<List<String>, List<String[]>> groups = new LinkedHashMap<List<String>, List<String[]>>();
+        for (RowData row : tableData.getRowDataList()) {
+            List<ColumnData> cells = row.getColumnDataList();
+            if (cells == null || cells.isEmpty()) {
+                continue;
+            }
+            List<String> columns = new ArrayList<String>(cells.size());
+            String[] values = new String[cells.size()];
+            for (int i = 0; i < cells.size(); i++) {
+                columns.add(cells.get(i).getColumnName());
+                values[i] = cells.get(i).getColumnValue();
+            }
+            List<String[]> rows = groups.get(columns);
+            if (rows == null) {
+                rows = new ArrayList<String[]>();
+                groups.put(columns, rows);
+            }
+            rows.add(values);
+        }
+
+        LoadStats stats = new LoadStats();
+        for (Map.Entry<List<String>, List<String[]>> group : groups.entrySet()) {
+            int[] types = columnTypes(conn, tableData.getTableName(), group.getKey(),
+                    tableData.getHeaderList());
+            if (commitChunks) {
+                load(conn, tableData.getTableName(), group.getKey(), types,
+                        group.getValue().iterator(), stats);
+            } else {
+                insert(conn, tableData.getTableName(), group.getKey(), types,
+                        group.getValue().iterator(), stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Streams rows into the table, committing every batch. {@code stats} is updated after
+     * each commit so callers can report progress and, on failure, how much was loaded.
+     */
+    public void load(Connection conn, String tableName, List<String> columns, int[] types,
+                     Iterator<String[]> rows, LoadStats stats) throws SQLException {
+
+        String sql = SqlBuilder.insert(tableName, columns);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int pending = 0;
+            while (rows.hasNext()) {
+                String[] values = rows.next();
+                for (int i = 0; i < types.length; i++) {
+                    String value = i < values.length ? values[i] : null;
+                    bind(ps, i + 1, value, types[i], columns.get(i));
+                }
+                ps.addBatch();
+                if (++pending == batchSize) {
+                    commit(conn, ps, pending, stats);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                commit(conn, ps, pending, stats);
+            }
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            stats.setElapsedMs(System.currentTimeMillis() - stats.getStartedAt());
+        }
+    }
+
+    private void insert(Connection conn, String tableName, List<String> columns, int[] types,
+                        Iterator<String[]> rows, LoadStats stats) throws SQLException {
+
+        try (PreparedStatement ps = conn.prepareStatement(SqlBuilder.insert(tableName, columns))) {
+            int pending = 0;
+            while (rows.hasNext()) {
+                String[] values = rows.next();
+                for (int i = 0; i < types.length; i++) {
+                    String value = i < values.length ? values[i] : null;
+                    bind(ps, i + 1, value, types[i], columns.get(i));
+                }
+                ps.addBatch();
+                if (++pending == batchSize || !rows.hasNext()) {
+                    long start = System.nanoTime();
+                    ps.executeBatch();
+                    sqlMetrics.executed(System.nanoTime() - start);
+                    sqlMetrics.written(pending);
+                    stats.setRowsCommitted(stats.getRowsCommitted() + pending);
+                    pending = 0;
+                }
+            }
+        } finally {
+            stats.setElapsedMs(System.currentTimeMillis() - stats.getStartedAt());
+        }
+    }
+
+    private void commit(Connection conn, PreparedStatement ps, int rows, LoadStats stats)
+            throws SQLException {
+        long start = System.nanoTime();
+        ps.executeBatch();
+        conn.commit();
+        sqlMetrics.executed(System.nanoTime() - start);
+        sqlMetrics.written(rows);
+        stats.setRowsCommitted(stats.getRowsCommitted() + rows);
+        stats.setChunksCommitted(stats.getChunksCommitted() + 1);
+        stats.setElapsedMs(System.currentTimeMillis() - stats.getStartedAt());
+    }
+
+    /**
+     * Resolves the JDBC types of the target columns from the schema catalog, or by describing
+     * the table when the catalog does not know all of them. When the table cannot be described
+     * the types declared in the header list are used instead.
+     */
+    public int[] columnTypes(Connection conn, String tableName, List<String> columns,
+                             List<ColumnData> declared) throws SQLException {
+        SchemaCatalog.Table table = schemaCatalog.table(conn, tableName);
+        if (table != null) {
+            int[] types = new int[columns.size()];
+            boolean complete = true;
+            for (int i = 0; i < types.length && complete; i++) {
+                SchemaCatalog.Column column = table.column(columns.get(i));
+                complete = column != null && column.getJdbcType() != Types.OTHER;
+                types[i] = complete ? column.getJdbcType() : Types.OTHER;
+            }
+            if (complete) {
+                return types;
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (String column : columns) {
+            sql.append(column).append(", ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(" FROM ").append(tableName).append(" WHERE 1 = 0");
+
+        int[] types = new int[columns.size()];
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql.toString())) {
+            ResultSetMetaData md = rs.getMetaData();
+            for (int i = 0; i < types.length; i++) {
+                types[i] = md.getColumnType(i + 1);
+            }
+            return types;
+        } catch (SQLException e) {
+            if (declared == null) {
+                throw e;
+            }
+            log.fine("Falling back to declared column types: " + e.getMessage());
+        }
+        for (int i = 0; i < types.length; i++) {
+            types[i] = Types.VARCHAR;
+            for (ColumnData header : declared) {
+                if (columns.get(i).equalsIgnoreCase(header.getColumnName())) {
+                    types[i] = declaredType(header.getSqlColumnType());
+                }
+            }
+        }
+        return types;
+    }
+
+    static int declaredType(String sqlColumnType) {
+        if (sqlColumnType == null) {
+            return Types.VARCHAR;
+        }
+        String type = sqlColumnType.trim().toUpperCase(Locale.ROOT);
+        if (type.startsWith("INT") || type.startsWith("SMALLINT")) return Types.INTEGER;
+        if (type.startsWith("BIGINT")) return Types.BIGINT;
+        if (type.startsWith("DECIMAL") || type.startsWith("NUMERIC")) return Types.DECIMAL;
+        if (type.startsWith("DOUBLE") || type.startsWith("FLOAT")) return Types.DOUBLE;
+        if (type.startsWith("REAL")) return Types.REAL;
+        if (type.startsWith("BOOLEAN")) return Types.BOOLEAN;
+        if (type.startsWith("DATE")) return Types.DATE;
+        if (type.startsWith("TIMESTAMP")) return Types.TIMESTAMP;
+        if (type.startsWith("TIME")) return Types.TIME;
+        return Types.VARCHAR;
+    }
+
+    static void bind(PreparedStatement ps, int index, String value, int type, String column)
+            throws SQLException {
+        Object converted = convert(value, type, column);
+        if (converted == null) {
+            ps.setNull(index, type);
+        } else {
+            ps.setObject(index, converted, type);
+        }
+    }
+
+    public static Object convert(String value, int type, String column) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        boolean text = type == Types.CHAR || type == Types.VARCHAR
+                || type == Types.LONGVARCHAR || type == Types.CLOB;
+        if (text) {
+            return value;
+        }
+        String v = value.trim();
+        if (v.isEmpty() || "null".equalsIgnoreCase(v)) {
+            return null;
+        }
+        try {
+            switch (type) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                    return Integer.valueOf(v);
+                case Types.BIGINT:
+                    return Long.valueOf(v);
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    return new BigDecimal(v);
+                case Types.DOUBLE:
+                case Types.FLOAT:
+                    return Double.valueOf(v);
+                case Types.REAL:
+                    return Float.valueOf(v);
+                case Types.BOOLEAN:
+                case Types.BIT:
+                    return toBoolean(v);
+                case Types.DATE:
+                    return Date.valueOf(v);
+                case Types.TIME:
+                    return Time.valueOf(v);
+                case Types.TIMESTAMP:
+                    return Timestamp.valueOf(v);
+                default:
+                    return value;
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            throw new SQLException("Invalid value '" + value + "' for column " + column, "22018", e);
+        }
+    }
+
+    /** true/false in any case and 1/0, anything else is not a boolean */
+    private static Boolean toBoolean(String v) {
+        if ("true".equalsIgnoreCase(v) || "1".equals(v)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(v) || "0".equals(v)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + v);
+    }
+}
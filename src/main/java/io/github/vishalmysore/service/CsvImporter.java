@@ -0,0 +1,353 @@
+package io.github.vishalmysore.service;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.ImportProgress;
+import io.github.vishalmysore.data.LoadStats;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.event.TableChangedEvent;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams a CSV (optionally gzip compressed) into a table. The first line is the header,
+ * a sampled prefix of sql.import.sample-rows rows is used to infer the schema when the
+ * table does not exist yet, and the rest of the file is read lazily and loaded through
+ * the {@link BulkLoader}, so memory use does not depend on the file size.
+ */
+@Log
+@Component
+public class CsvImporter {
+
+    private static final int PROGRESS_EVERY = 10000;
+    private static final int MAX_VARCHAR = 32672;
+
+    @Value("${sql.import.sample-rows:1000}")
+    private int sampleRows;
+
+    @Value("${sql.import.native:true}")
+    private boolean nativeImport;
+
+    /** Server side files are only imported from below this directory */
+    @Value("${sql.import.dir:}")
+    private String importDir;
+
+    @Autowired
+    private BulkLoader bulkLoader;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    public LoadStats importCsv(Connection conn, String tableName, InputStream raw,
+                               final ImportProgress progress) throws SQLException, IOException {
+
+        final CountingInputStream counting = new CountingInputStream(raw);
+        InputStream in = decompress(new BufferedInputStream(counting, 64 * 1024));
+        try (CSVReader reader = new CSVReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String[] header = readNext(reader);
+            if (header == null) {
+                throw new IOException("CSV file is empty");
+            }
+            List<String> columns = columnNames(header);
+
+            List<String[]> sample = new ArrayList<String[]>();
+            String[] line;
+            while (sample.size() < sampleRows && (line = readNext(reader)) != null) {
+                sample.add(line);
+            }
+
+            if (!tableExists(conn, tableName)) {
+                TableData schema = inferSchema(tableName, columns, sample);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(SqlBuilder.createTable(schema));
+                }
+                progress.setTableCreated(true);
+                log.info("Created table " + tableName + " from CSV header: " + schema.getHeaderList());
+            }
+
+            int[] types = bulkLoader.columnTypes(conn, tableName, columns, null);
+            final LoadStats stats = new LoadStats();
+            final Iterator<String[]> rows = rows(sample.iterator(), reader);
+            Iterator<String[]> tracked = new Iterator<String[]>() {
+                private long read;
+
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public String[] next() {
+                    if (++read % PROGRESS_EVERY == 0) {
+                        progress.setBytesRead(counting.getCount());
+                        progress.setRowsCommitted(stats.getRowsCommitted());
+                        log.fine("Import " + progress.getId() + ": " + read + " rows read, "
+                                + progress.getPercent() + "%");
+                    }
+                    return rows.next();
+                }
+            };
+            try {
+                bulkLoader.load(conn, tableName, columns, types, tracked, stats);
+            } finally {
+                progress.setBytesRead(counting.getCount());
+                progress.setRowsCommitted(stats.getRowsCommitted());
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * The server side file a prompt named, resolved against sql.import.dir (a temp directory
+     * by default). Paths that leave the directory, also through symbolic links, are rejected,
+     * otherwise any file the JVM can read could be loaded into a table and read back.
+     */
+    public File resolveImportFile(String filePath) throws IOException {
+        Path dir = importDirectory().toRealPath();
+        Path requested = dir.resolve(filePath.trim()).normalize();
+        if (!requested.startsWith(dir)) {
+            throw new IOException("File '" + filePath + "' is outside the import directory");
+        }
+        if (!Files.isRegularFile(requested)) {
+            throw new IOException("File '" + filePath + "' not found in the import directory");
+        }
+        Path real = requested.toRealPath();
+        if (!real.startsWith(dir)) {
+            throw new IOException("File '" + filePath + "' is outside the import directory");
+        }
+        return real.toFile();
+    }
+
+    private Path importDirectory() throws IOException {
+        Path dir = importDir == null || importDir.trim().isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "sql-agent-imports")
+                : Paths.get(importDir.trim());
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * Hands an uncompressed server side file to Derby's own import procedure, which is the
+     * fastest path but needs an existing table whose columns are in file order.
+     * Returns null when the file is not eligible and should be streamed instead, which is
+     * also the case when its header does not name exactly the table's columns in order.
+     */
+    public LoadStats importNative(Connection conn, String tableName, String filePath) throws SQLException {
+        if (!nativeImport || filePath.toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            return null;
+        }
+        SchemaCatalog.Table table = schemaCatalog.table(conn, tableName);
+        if (table == null || !headerMatches(filePath, table)) {
+            return null;
+        }
+        LoadStats stats = new LoadStats();
+        long before = count(conn, tableName);
+        try (CallableStatement cs = conn.prepareCall(
+                "CALL SYSCS_UTIL.SYSCS_IMPORT_TABLE_BULK(?, ?, ?, ?, ?, ?, ?, ?)")) {
+            cs.setNull(1, Types.VARCHAR);
+            cs.setString(2, TableChangedEvent.normalizeTableName(tableName));
+            cs.setString(3, filePath);
+            cs.setString(4, ",");
+            cs.setString(5, "\"");
+            cs.setString(6, "UTF-8");
+            cs.setShort(7, (short) 0);
+            // skip the header line
+            cs.setShort(8, (short) 1);
+            cs.execute();
+        }
+        stats.setRowsCommitted(count(conn, tableName) - before);
+        stats.setChunksCommitted(1);
+        stats.setElapsedMs(System.currentTimeMillis() - stats.getStartedAt());
+        return stats;
+    }
+
+    /** Whether the file's header names the table's columns, all of them and in order */
+    private static boolean headerMatches(String filePath, SchemaCatalog.Table table) {
+        String[] header;
+        try (CSVReader reader = new CSVReader(new InputStreamReader(
+                Files.newInputStream(Paths.get(filePath)), StandardCharsets.UTF_8))) {
+            header = readNext(reader);
+        } catch (IOException e) {
+            return false;
+        }
+        if (header == null || header.length != table.getColumns().size()) {
+            return false;
+        }
+        List<String> names = columnNames(header);
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (!name.substring(1, name.length() - 1).equals(table.getColumns().get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long count(Connection conn, String tableName) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private boolean tableExists(Connection conn, String tableName) throws SQLException {
+        return schemaCatalog.table(conn, tableName) != null;
+    }
+
+    private static InputStream decompress(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        return in;
+    }
+
+    private static String[] readNext(CSVReader reader) throws IOException {
+        try {
+            return reader.readNext();
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid CSV at line " + reader.getLinesRead() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Iterator<String[]> rows(final Iterator<String[]> sample, final CSVReader reader) {
+        return new Iterator<String[]>() {
+            private String[] next;
+
+            @Override
+            public boolean hasNext() {
+                if (sample.hasNext() || next != null) {
+                    return true;
+                }
+                try {
+                    next = readNext(reader);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                return next != null;
+            }
+
+            @Override
+            public String[] next() {
+                if (sample.hasNext()) {
+                    return sample.next();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String[] row = next;
+                next = null;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Turns header cells into quoted upper case identifiers, so headers like "order" or
+     * "first name" remain valid column names.
+     */
+    static List<String> columnNames(String[] header) {
+        List<String> names = new ArrayList<String>(header.length);
+        Set<String> seen = new HashSet<String>();
+        for (int i = 0; i < header.length; i++) {
+            String cell = header[i] == null ? "" : header[i].replace("\uFEFF", "").trim();
+            String name = cell.replaceAll("[^A-Za-z0-9_]", "_").toUpperCase(Locale.ROOT);
+            if (name.isEmpty() || !Character.isLetter(name.charAt(0))) {
+                name = "C_" + (name.isEmpty() ? String.valueOf(i + 1) : name);
+            }
+            String unique = name;
+            for (int n = 2; !seen.add(unique); n++) {
+                unique = name + "_" + n;
+            }
+            names.add("\"" + unique + "\"");
+        }
+        return names;
+    }
+
+    static TableData inferSchema(String tableName, List<String> columns, List<String[]> sample) {
+        List<ColumnData> headers = new ArrayList<ColumnData>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnData column = new ColumnData();
+            column.setColumnName(columns.get(i));
+            column.setSqlColumnType(inferType(sample, i));
+            headers.add(column);
+        }
+        TableData tableData = new TableData();
+        tableData.setTableName(tableName);
+        tableData.setHeaderList(headers);
+        return tableData;
+    }
+
+    static String inferType(List<String[]> sample, int col) {
+        boolean isInt = true, isLong = true, isDecimal = true, isDouble = true;
+        boolean isBoolean = true, isDate = true, isTimestamp = true;
+        boolean any = false;
+        int maxLength = 0;
+        int maxScale = 0;
+
+        for (String[] row : sample) {
+            if (col >= row.length || row[col] == null || row[col].trim().isEmpty()) {
+                continue;
+            }
+            any = true;
+            String v = row[col].trim();
+            maxLength = Math.max(maxLength, row[col].length());
+            if (isInt) isInt = parses(v, Types.INTEGER);
+            if (isLong) isLong = parses(v, Types.BIGINT);
+            if (isDecimal) {
+                isDecimal = v.indexOf('e') < 0 && v.indexOf('E') < 0 && parses(v, Types.DECIMAL);
+                if (isDecimal) {
+                    maxScale = Math.max(maxScale, Math.max(0, new BigDecimal(v).scale()));
+                }
+            }
+            if (isDouble) isDouble = parses(v, Types.DOUBLE);
+            if (isBoolean) isBoolean = "true".equalsIgnoreCase(v) || "false".equalsIgnoreCase(v);
+            if (isDate) isDate = v.length() == 10 && parses(v, Types.DATE);
+            if (isTimestamp) isTimestamp = parses(v, Types.TIMESTAMP);
+        }
+
+        if (any && isInt) return "INTEGER";
+        if (any && isLong) return "BIGINT";
+        if (any && isDecimal && maxScale <= 10) return "DECIMAL(31, " + maxScale + ")";
+        if (any && isDouble) return "DOUBLE";
+        if (any && isBoolean) return "BOOLEAN";
+        if (any && isDate) return "DATE";
+        if (any && isTimestamp) return "TIMESTAMP";
+        // leave head room for longer values further down the file
+        int width = 255;
+        while (width < maxLength * 2 && width < MAX_VARCHAR) {
+            width *= 2;
+        }
+        return "VARCHAR(" + Math.min(width, MAX_VARCHAR) + ")";
+    }
+
+    private static boolean parses(String value, int type) {
+        try {
+            return BulkLoader.convert(value, type, null) != null;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
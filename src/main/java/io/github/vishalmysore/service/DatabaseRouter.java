@@ -0,0 +1,192 @@
+package io.github.vishalmysore.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.github.vishalmysore.config.DerbyStorageProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Routes every action to its target database. The default database uses the primary pool
+ * from DataSourceConfig; every other named database gets its own pool, created on first use
+ * with the primary pool's timeouts and validation, and closed again after
+ * sql.database.idle-evict-minutes without use. Separate pools keep one tenant's long writes
+ * from exhausting the connections another tenant reads with.
+ */
+@Log
+@Component
+public class DatabaseRouter {
+
+    private static final Pattern DATABASE_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_]{0,127}");
+
+    @Autowired
+    private HikariDataSource primary;
+
+    @Autowired
+    private DerbyStorageProperties storage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ReadReplicas readReplicas;
+
+    @Value("${sql.database.max-pool-size:5}")
+    private int maxPoolSize;
+
+    @Value("${sql.database.idle-evict-minutes:10}")
+    private long idleEvictMinutes;
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+
+    private ScheduledExecutorService evictor;
+
+    private static class Pool {
+        private final HikariDataSource dataSource;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Pool(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (idleEvictMinutes <= 0) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (Pool pool : pools.values()) {
+            pool.dataSource.close();
+        }
+        pools.clear();
+    }
+
+    public String defaultDatabase() {
+        return storage.getDatabase();
+    }
+
+    public boolean isDefault(String databaseName) {
+        return databaseName == null || databaseName.trim().isEmpty()
+                || databaseName.trim().equalsIgnoreCase(storage.getDatabase());
+    }
+
+    /**
+     * Makes sure the named database exists and has a pool.
+     */
+    public void create(String databaseName) throws SQLException {
+        try (Connection conn = getConnection(databaseName)) {
+            log.info("Database " + conn.getMetaData().getURL() + " ready");
+        }
+    }
+
+    public Connection getConnection(String databaseName) throws SQLException {
+        if (isDefault(databaseName)) {
+            return primary.getConnection();
+        }
+        String name = validate(databaseName);
+        for (int attempt = 0; ; attempt++) {
+            Pool pool = pools.computeIfAbsent(name, this::newPool);
+            pool.lastUsed = System.currentTimeMillis();
+            try {
+                return pool.dataSource.getConnection();
+            } catch (SQLException e) {
+                // the evictor may have closed the pool between lookup and checkout
+                if (!pool.dataSource.isClosed() || attempt > 0) {
+                    throw e;
+                }
+                pools.remove(name, pool);
+            }
+        }
+    }
+
+    /**
+     * Connection for a SELECT: the default database reads from a replica when
+     * sql.replica.count is set, named databases read from their own pool.
+     */
+    public Connection getReadConnection(String databaseName) throws SQLException {
+        if (isDefault(databaseName) && readReplicas.isEnabled()) {
+            return readReplicas.getConnection();
+        }
+        return getConnection(databaseName);
+    }
+
+    /** Every open pool including the primary, keyed by database name */
+    public Map<String, HikariDataSource> openPools() {
+        Map<String, HikariDataSource> open = new LinkedHashMap<String, HikariDataSource>();
+        open.put(storage.getDatabase(), primary);
+        for (Map.Entry<String, Pool> entry : pools.entrySet()) {
+            open.put(entry.getKey(), entry.getValue().dataSource);
+        }
+        return open;
+    }
+
+    static String validate(String databaseName) throws SQLException {
+        String name = databaseName.trim();
+        if (!DATABASE_NAME.matcher(name).matches()) {
+            throw new SQLException("Invalid database name '" + databaseName
+                    + "', use letters, digits and underscore", "42602");
+        }
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    private Pool newPool(String name) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("derby-" + name);
+        config.setDriverClassName(storage.driverClassName());
+        config.setJdbcUrl(storage.jdbcUrl(name));
+        config.setUsername(storage.getUser());
+        config.setPassword(storage.getPassword());
+        config.setMaximumPoolSize(Math.min(maxPoolSize, primary.getMaximumPoolSize()));
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(primary.getConnectionTimeout());
+        config.setIdleTimeout(primary.getIdleTimeout());
+        config.setMaxLifetime(primary.getMaxLifetime());
+        config.setValidationTimeout(primary.getValidationTimeout());
+        config.setConnectionTestQuery(primary.getConnectionTestQuery());
+        config.setLeakDetectionThreshold(primary.getLeakDetectionThreshold());
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        log.info("Opening pool for database " + name);
+        return new Pool(new HikariDataSource(config));
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleEvictMinutes);
+        for (Map.Entry<String, Pool> entry : pools.entrySet()) {
+            Pool pool = entry.getValue();
+            if (pool.lastUsed < cutoff
+                    && pool.dataSource.getHikariPoolMXBean().getActiveConnections() == 0
+                    && pools.remove(entry.getKey(), pool)) {
+                log.info("Closing idle pool for database " + entry.getKey());
+                pool.dataSource.close();
+            }
+        }
+    }
+}
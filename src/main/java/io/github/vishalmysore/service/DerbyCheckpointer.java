@@ -0,0 +1,69 @@
+package io.github.vishalmysore.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.vishalmysore.config.DerbyStorageProperties;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checkpoints every open on-disk database in the background, which bounds the
+ * transaction log and keeps restart recovery short and predictable.
+ */
+@Log
+@Component
+public class DerbyCheckpointer {
+
+    @Autowired
+    private DerbyStorageProperties storage;
+
+    @Autowired
+    private DatabaseRouter databaseRouter;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (storage.getMode() != DerbyStorageProperties.Mode.EMBEDDED || storage.getCheckpointSeconds() <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "derby-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpoint,
+                storage.getCheckpointSeconds(), storage.getCheckpointSeconds(), TimeUnit.SECONDS);
+    }
+
+    public void checkpoint() {
+        for (Map.Entry<String, HikariDataSource> pool : databaseRouter.openPools().entrySet()) {
+            long start = System.currentTimeMillis();
+            try (Connection conn = pool.getValue().getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CALL SYSCS_UTIL.SYSCS_CHECKPOINT_DATABASE()");
+                log.fine("Checkpoint of " + pool.getKey() + " done in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (SQLException e) {
+                log.warning("Checkpoint of " + pool.getKey() + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -7,18 +7,46 @@ import com.t4a.annotations.Prompt;
 import com.t4a.processor.ProcessorAware;
 
 import io.github.vishalmysore.a2ui.A2UIAware;
+import io.github.vishalmysore.advisor.IndexAdvisor;
+import io.github.vishalmysore.analytics.ColumnarEngine;
+import io.github.vishalmysore.advisor.IndexSuggestion;
+import io.github.vishalmysore.cache.ActionTrace;
+import io.github.vishalmysore.cdc.ChangeLog;
 import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.ExecutionPlan;
+import io.github.vishalmysore.data.ImportProgress;
+import io.github.vishalmysore.data.LoadStats;
+import io.github.vishalmysore.data.PlanResult;
+import io.github.vishalmysore.data.PlanStep;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.data.ResultPage;
 import io.github.vishalmysore.data.RowData;
 import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.github.vishalmysore.export.ExportFile;
+import io.github.vishalmysore.export.ExportFormat;
+import io.github.vishalmysore.export.ExportService;
 import io.github.vishalmysore.mcp.domain.BlobResourceContents;
 import io.github.vishalmysore.mcp.domain.EmbeddedResource;
+import io.github.vishalmysore.ui.A2UIComponents;
+import io.github.vishalmysore.ui.UiNode;
 import lombok.extern.java.Log;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.sql.*;
 import java.util.*;
@@ -28,8 +56,50 @@ import java.util.*;
 @Agent(groupName = "Database related actions",prompt = "You are a database management agent that can create databases, create tables, insert data into tables, and retrieve data using SQL queries. Use the provided actions to perform database operations as requested by the user.")
 public class DerbyService implements A2UIAware, ProcessorAware {
 
-    private static final String JDBC_URL =
-            "jdbc:derby:memory:myDB;create=true";
+    /** Components that are the same in every result page */
+    private static final UiNode RESULT_TITLE = A2UIComponents.text("title", "📊 Query Results", "h2");
+    private static final UiNode PREV_LABEL = A2UIComponents.text("prev_label", "◀ Previous", "body");
+    private static final UiNode NEXT_LABEL = A2UIComponents.text("next_label", "Next ▶", "body");
+
+    /**
+     * Pooled Derby connections per target database, the default database when none is given
+     */
+    @Autowired
+    private DatabaseRouter databaseRouter;
+
+    @Autowired
+    private ResultStreamer resultStreamer;
+
+    @Autowired
+    private BulkLoader bulkLoader;
+
+    @Autowired
+    private CsvImporter csvImporter;
+
+    @Autowired
+    private ImportTracker importTracker;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private IndexAdvisor indexAdvisor;
+
+    @Autowired
+    private ColumnarEngine columnarEngine;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private ResultPager resultPager;
+
+    /** Exports up to this size are returned inline as an MCP embedded resource */
+    @Value("${sql.export.inline-max-bytes:1048576}")
+    private long exportInlineMaxBytes;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     /* =================================================
        CREATE DATABASE
@@ -51,7 +121,9 @@ public class DerbyService implements A2UIAware, ProcessorAware {
             return "Database name is required.";
         }
 
-        try (Connection conn = DriverManager.getConnection(JDBC_URL)) {
+        ActionTrace.recordWrite();
+        try {
+            databaseRouter.create(databaseName);
             return uiOrText(
                     "Database Created",
                     "Database '" + databaseName + "' created successfully."
@@ -84,23 +156,11 @@ public class DerbyService implements A2UIAware, ProcessorAware {
             return "Table name and columns are required.";
         }
 
-        StringBuilder sql = new StringBuilder("CREATE TABLE ");
-        sql.append(tableData.getTableName()).append(" (");
-
-        for (ColumnData c : tableData.getHeaderList()) {
-            sql.append(c.getColumnName())
-                    .append(" ")
-                    .append(c.getSqlColumnType())
-                    .append(", ");
-        }
-
-        sql.setLength(sql.length() - 2);
-        sql.append(")");
-
-        try (Connection conn = DriverManager.getConnection(JDBC_URL);
+        try (Connection conn = databaseRouter.getConnection(tableData.getDatabaseName());
              Statement stmt = conn.createStatement()) {
 
-            stmt.execute(sql.toString());
+            stmt.execute(SqlBuilder.createTable(tableData));
+            tableChanged(tableData.getDatabaseName(), tableData.getTableName(), TableChangedEvent.ChangeType.CREATED);
             return uiOrText(
                     "Table Created",
                     "Table '" + tableData.getTableName() + "' created successfully."
@@ -133,58 +193,97 @@ public class DerbyService implements A2UIAware, ProcessorAware {
             return "No data provided.";
         }
 
-        List<ColumnData> columns =
-                tableData.getRowDataList()
-                        .get(0)
-                        .getColumnDataList();
+        columnarEngine.beginWrite(tableData.getDatabaseName(), tableData.getTableName());
+        changeLog.beginWrite(tableData.getDatabaseName(), tableData.getTableName());
+        try (Connection conn = databaseRouter.getConnection(tableData.getDatabaseName())) {
 
-        StringBuilder sql = new StringBuilder("INSERT INTO ");
-        sql.append(tableData.getTableName()).append(" (");
+            LoadStats stats = bulkLoader.load(conn, tableData);
+            tableChanged(tableData.getDatabaseName(), tableData.getTableName(),
+                    TableChangedEvent.ChangeType.INSERTED, tableData);
 
-        for (ColumnData c : columns) {
-            sql.append(c.getColumnName()).append(", ");
+            return uiOrText(
+                    "Data Inserted",
+                    stats.summary(tableData.getTableName())
+            );
+
+        } catch (SQLException e) {
+            // earlier chunks may already be committed
+            tableChanged(tableData.getDatabaseName(), tableData.getTableName(), TableChangedEvent.ChangeType.INSERTED);
+            return uiOrText("Insert Error", e.getMessage());
+        } finally {
+            changeLog.endWrite(tableData.getDatabaseName(), tableData.getTableName());
+            columnarEngine.endWrite(tableData.getDatabaseName(), tableData.getTableName());
         }
+    }
+
+    /* =================================================
+       IMPORT CSV
+     ================================================= */
 
-        sql.setLength(sql.length() - 2);
-        sql.append(") VALUES (");
+    @Action(description = "Import a CSV or gzip CSV file from the server's import directory into a table, the table is created from the file header if it does not exist",
+            prompt = "only populate filePath with a path the user gave, do not assume it, leave databaseName empty unless the user names a database")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Object importCsvFile(String tableName, String filePath, String databaseName) {
 
-        for (int i = 0; i < columns.size(); i++) {
-            sql.append("?, ");
+        if (tableName == null || tableName.trim().isEmpty() ||
+                filePath == null || filePath.trim().isEmpty()) {
+            return uiOrText("Import CSV", "Table name and file path are required.");
         }
 
-        sql.setLength(sql.length() - 2);
-        sql.append(")");
-
-        try (Connection conn = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+        File file;
+        try {
+            file = csvImporter.resolveImportFile(filePath);
+        } catch (IOException e) {
+            return uiOrText("Import Error", e.getMessage());
+        }
 
-            for (RowData row : tableData.getRowDataList()) {
-                int idx = 1;
-                for (ColumnData c : row.getColumnDataList()) {
-                    ps.setObject(idx++, c.getColumnValue());
-                }
-                ps.addBatch();
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+            LoadStats stats = csvImporter.importNative(conn, tableName, file.getAbsolutePath());
+            if (stats != null) {
+                tableChanged(databaseName, tableName, TableChangedEvent.ChangeType.INSERTED);
+                return uiOrText("Data Imported", stats.summary(tableName));
             }
+        } catch (SQLException e) {
+            log.info("Native import not possible, streaming instead: " + e.getMessage());
+        }
 
-            ps.executeBatch();
-
-            return uiOrText(
-                    "Data Inserted",
-                    "Rows inserted into table '" + tableData.getTableName() + "'."
-            );
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            ImportProgress progress = importCsv(databaseName, tableName, file.getName(), in, file.length());
+            return uiOrText(progress.getState() == ImportProgress.State.COMPLETED
+                    ? "Data Imported" : "Import Error", progress.getMessage());
+        } catch (IOException e) {
+            return uiOrText("Import Error", e.getMessage());
+        }
+    }
 
-        } catch (SQLException e) {
-            return uiOrText("Insert Error", e.getMessage());
+    /**
+     * Streams an uploaded CSV into the table, progress is visible through the {@link ImportTracker}.
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    public ImportProgress importCsv(String databaseName, String tableName, String fileName,
+                                    InputStream in, long size) {
+        ImportProgress progress = importTracker.start(tableName, fileName, size);
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+            LoadStats stats = csvImporter.importCsv(conn, tableName, in, progress);
+            progress.setMessage(stats.summary(tableName));
+            progress.setState(ImportProgress.State.COMPLETED);
+        } catch (SQLException | IOException | RuntimeException e) {
+            progress.setMessage(e.getMessage());
+            progress.setState(ImportProgress.State.FAILED);
         }
+        tableChanged(databaseName, tableName, progress.isTableCreated()
+                ? TableChangedEvent.ChangeType.CREATED
+                : TableChangedEvent.ChangeType.INSERTED);
+        return progress;
     }
 
     /* =================================================
        RETRIEVE DATA
      ================================================= */
 
-    @Action(description = "Retrieve data" ,prompt = "do not provide insert query make sure the query is safe")
+    @Action(description = "Retrieve data" ,prompt = "do not provide insert query make sure the query is safe, leave databaseName empty unless the user names a database")
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
-    public Object retrieveData(String sqlQuery) {
+    public Object retrieveData(String sqlQuery, String databaseName) {
 
         if (sqlQuery == null || sqlQuery.trim().isEmpty()) {
             if (isUICallback(getCallback())) {
@@ -197,38 +296,350 @@ public class DerbyService implements A2UIAware, ProcessorAware {
             }
             return "SQL query is required.";
         }
-        String normalized = sqlQuery.trim().toLowerCase(Locale.ROOT);
-        if (!normalized.startsWith("select")) {
+        if (!isSelectQuery(sqlQuery)) {
             return uiOrText("Query Error", "Only SELECT queries are allowed.");
         }
-        List<Map<String, Object>> rows =
-                new ArrayList<Map<String, Object>>();
 
-        try (Connection conn = DriverManager.getConnection(JDBC_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sqlQuery)) {
+        ActionTrace.recordRead(SqlTables.tablesIn(sqlQuery));
 
-            ResultSetMetaData md = rs.getMetaData();
+        // aggregates over hot tables are answered from their columnar copy
+        QueryResult aggregate = columnarEngine.tryAggregate(databaseName, sqlQuery);
+        if (aggregate != null) {
+            return isUICallback(getCallback()) ? createResultUI(sqlQuery, firstPage(aggregate)) : aggregate;
+        }
 
-            while (rs.next()) {
-                Map<String, Object> row =
-                        new LinkedHashMap<String, Object>();
-                for (int i = 1; i <= md.getColumnCount(); i++) {
-                    row.put(md.getColumnName(i), rs.getObject(i));
-                }
-                rows.add(row);
-            }
+        try (Connection conn = databaseRouter.getReadConnection(databaseName)) {
 
+            // a UI only shows one page at a time, so only that page is read
             if (isUICallback(getCallback())) {
-                return createResultUI(sqlQuery, rows);
+                ResultPage page = resultPager.firstPage(conn, sqlQuery, databaseName,
+                        resultPager.getDefaultPageSize());
+                return createResultUI(sqlQuery, page);
             }
-            return rows;
+            return resultStreamer.collect(conn, sqlQuery);
 
         } catch (SQLException e) {
             return uiOrText("Query Error", e.getMessage());
         }
     }
 
+    @Action(description = "Show another page of query results for a page token",
+            prompt = "pageToken is the token of the previous or next page button exactly as given")
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public Object showResultPage(String pageToken) {
+
+        String sqlQuery = resultPager.queryOf(pageToken);
+        if (sqlQuery == null) {
+            return uiOrText("Query Error", "Page token is unknown or expired, run the query again.");
+        }
+        ActionTrace.recordRead(SqlTables.tablesIn(sqlQuery));
+        try (Connection conn = databaseRouter.getReadConnection(resultPager.databaseOf(pageToken))) {
+
+            ResultPage page = resultPager.page(conn, pageToken);
+            if (isUICallback(getCallback())) {
+                return createResultUI(sqlQuery, page);
+            }
+            return page;
+
+        } catch (SQLException | IllegalArgumentException e) {
+            return uiOrText("Query Error", e.getMessage());
+        }
+    }
+
+    /* =================================================
+       EXECUTE PLAN
+     ================================================= */
+
+    @Action(description = "Run several database steps of one request in order, for example create a table, insert rows into it and then query it",
+            prompt = "use this only when the user asks for more than one of create table, insert data and retrieve data, list every step in order, leave databaseName empty unless the user names a database")
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public Object executePlan(ExecutionPlan plan) {
+
+        if (plan == null || plan.getSteps() == null || plan.getSteps().isEmpty()) {
+            return uiOrText("Plan Error", "No steps provided.");
+        }
+
+        PlanResult planResult = new PlanResult();
+        String lastQuery = null;
+        Set<String> created = new LinkedHashSet<String>();
+        Set<String> inserted = new LinkedHashSet<String>();
+        int stepNumber = 0;
+
+        try (Connection conn = databaseRouter.getConnection(plan.getDatabaseName())) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (PlanStep step : plan.getSteps()) {
+                    stepNumber++;
+                    String action = step.getAction() == null ? "" : step.getAction().trim();
+                    TableData tableData = step.getTableData();
+
+                    if ("createTables".equalsIgnoreCase(action)) {
+                        requireRole("ADMIN");
+                        requireTable(tableData, tableData != null && tableData.getHeaderList() != null
+                                && !tableData.getHeaderList().isEmpty());
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute(SqlBuilder.createTable(tableData));
+                        }
+                        created.add(tableData.getTableName());
+                        planResult.getSteps().add(stepNumber + ". Table '" + tableData.getTableName() + "' created");
+
+                    } else if ("insertDataInTable".equalsIgnoreCase(action)) {
+                        requireRole("USER");
+                        requireTable(tableData, tableData != null && tableData.getRowDataList() != null
+                                && !tableData.getRowDataList().isEmpty());
+                        LoadStats stats = bulkLoader.loadInTransaction(conn, tableData);
+                        inserted.add(tableData.getTableName());
+                        planResult.getSteps().add(stepNumber + ". " + stats.getRowsCommitted()
+                                + " rows inserted into table '" + tableData.getTableName() + "'");
+
+                    } else if ("retrieveData".equalsIgnoreCase(action)) {
+                        requireRole("USER", "ADMIN");
+                        if (!isSelectQuery(step.getSqlQuery())) {
+                            throw new IllegalArgumentException("Only SELECT queries are allowed.");
+                        }
+                        ActionTrace.recordRead(SqlTables.tablesIn(step.getSqlQuery()));
+                        QueryResult result = resultStreamer.collect(conn, step.getSqlQuery());
+                        planResult.setResult(result);
+                        lastQuery = step.getSqlQuery();
+                        planResult.getSteps().add(stepNumber + ". " + result.getRowCount() + " rows retrieved");
+
+                    } else {
+                        throw new IllegalArgumentException("Unknown action '" + action + "'.");
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                // tables created in the rolled back transaction are gone again
+                for (String table : created) {
+                    tableChanged(plan.getDatabaseName(), table, TableChangedEvent.ChangeType.DROPPED);
+                }
+                return uiOrText("Plan Error", "Step " + stepNumber + " failed, no step was applied: " + e.getMessage());
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            return uiOrText("Plan Error", e.getMessage());
+        }
+
+        for (String table : created) {
+            tableChanged(plan.getDatabaseName(), table, TableChangedEvent.ChangeType.CREATED);
+        }
+        for (String table : inserted) {
+            tableChanged(plan.getDatabaseName(), table, TableChangedEvent.ChangeType.INSERTED);
+        }
+
+        if (isUICallback(getCallback())) {
+            if (planResult.getResult() != null) {
+                return createResultUI(lastQuery, firstPage(planResult.getResult()));
+            }
+            return createMessageUI("Plan Executed", String.join("\n", planResult.getSteps()));
+        }
+        return planResult;
+    }
+
+    /* =================================================
+       STREAM DATA
+     ================================================= */
+
+    /**
+     * Streams a SELECT to the handler row by row without materializing the result.
+     * Used by the NDJSON/SSE endpoints, limits come from sql.stream.* properties.
+     */
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public ResultStreamer.StreamStats streamQuery(String sqlQuery, String databaseName, RowHandler handler)
+            throws SQLException, IOException {
+
+        if (!isSelectQuery(sqlQuery)) {
+            throw new IllegalArgumentException("Only SELECT queries are allowed.");
+        }
+        try (Connection conn = databaseRouter.getReadConnection(databaseName)) {
+            return resultStreamer.stream(conn, sqlQuery,
+                    resultStreamer.getStreamMaxRows(),
+                    resultStreamer.getStreamMaxBytes(),
+                    handler);
+        }
+    }
+
+    /**
+     * Same as above for a handler that reads the rows off the ResultSet itself.
+     */
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public ResultStreamer.StreamStats streamQuery(String sqlQuery, String databaseName, ResultSetRowHandler handler)
+            throws SQLException, IOException {
+
+        if (!isSelectQuery(sqlQuery)) {
+            throw new IllegalArgumentException("Only SELECT queries are allowed.");
+        }
+        try (Connection conn = databaseRouter.getReadConnection(databaseName)) {
+            return resultStreamer.stream(conn, sqlQuery,
+                    resultStreamer.getStreamMaxRows(),
+                    resultStreamer.getStreamMaxBytes(),
+                    handler);
+        }
+    }
+
+    /* =================================================
+       EXPORT DATA
+     ================================================= */
+
+    @Action(description = "Export the result of a SELECT query to a CSV or columnar binary file",
+            prompt = "format is CSV or COLUMNAR, use CSV if the user does not say, do not provide insert query, leave databaseName empty unless the user names a database")
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public Object exportData(String sqlQuery, String format, String databaseName) {
+
+        if (!isSelectQuery(sqlQuery)) {
+            return uiOrText("Export Error", "Only SELECT queries can be exported.");
+        }
+
+        ActionTrace.recordRead(SqlTables.tablesIn(sqlQuery));
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+
+            ExportFile file = exportService.exportToFile(conn, sqlQuery, ExportFormat.of(format));
+            String message = file.getRowCount() + " rows exported" +
+                    (file.isTruncated() ? " (truncated)" : "") +
+                    ", download from " + file.getDownloadPath();
+
+            if (isUICallback(getCallback()) || file.getSizeBytes() > exportInlineMaxBytes) {
+                return uiOrText("Data Exported", message);
+            }
+            return embeddedResource(file);
+
+        } catch (SQLException | IOException e) {
+            return uiOrText("Export Error", e.getMessage());
+        }
+    }
+
+    /**
+     * Streams an export straight to the client, nothing is written to disk.
+     */
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public ResultStreamer.StreamStats exportQuery(String sqlQuery, String databaseName,
+                                                  ExportFormat format, OutputStream out)
+            throws SQLException, IOException {
+
+        if (!isSelectQuery(sqlQuery)) {
+            throw new IllegalArgumentException("Only SELECT queries can be exported.");
+        }
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+            return exportService.write(conn, sqlQuery, format, out);
+        }
+    }
+
+    /* =================================================
+       INDEX ADVISOR
+     ================================================= */
+
+    @Action(description = "Suggest indexes for the tables based on the queries run so far and report how applied indexes changed query latency",
+            prompt = "leave databaseName empty unless the user names a database")
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    public Object suggestIndexes(String databaseName) {
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+
+            StringBuilder sb = new StringBuilder();
+            for (IndexSuggestion suggestion : indexAdvisor.suggest(conn)) {
+                sb.append(suggestion.getIndexName()).append(": ").append(suggestion.summary()).append('\n');
+            }
+            for (IndexSuggestion applied : indexAdvisor.report(conn)) {
+                sb.append(applied.getIndexName()).append(": ").append(applied.summary()).append('\n');
+            }
+            String message = sb.length() == 0
+                    ? "No index suggestions, the recorded queries are already served by indexes or ran too rarely."
+                    : sb.toString().trim();
+            return uiOrText("Index Advisor", message);
+
+        } catch (SQLException e) {
+            return uiOrText("Index Advisor Error", e.getMessage());
+        }
+    }
+
+    @Action(description = "Create a suggested index by its name, or all suggested indexes when no name is given",
+            prompt = "indexName is a name returned by suggestIndexes, leave it empty to apply all suggestions, leave databaseName empty unless the user names a database")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Object applyIndexes(String indexName, String databaseName) {
+        final StringBuilder sb = new StringBuilder();
+        try (Connection conn = databaseRouter.getConnection(databaseName)) {
+
+            List<IndexSuggestion> applied = indexAdvisor.apply(conn, indexName, suggestion -> {
+                tableChanged(databaseName, suggestion.getTableName(), TableChangedEvent.ChangeType.ALTERED);
+                sb.append(suggestion.getDdl()).append('\n');
+            });
+            if (applied.isEmpty()) {
+                return uiOrText("Index Advisor", "No matching index suggestion.");
+            }
+            return uiOrText("Indexes Created", sb.toString().trim());
+
+        } catch (SQLException e) {
+            String created = sb.length() == 0 ? "" : "\nCreated before the error:\n" + sb.toString().trim();
+            return uiOrText("Index Advisor Error", e.getMessage() + created);
+        }
+    }
+
+    private EmbeddedResource embeddedResource(ExportFile file) throws IOException {
+        BlobResourceContents contents = new BlobResourceContents();
+        contents.setUri(file.getDownloadPath());
+        contents.setMimeType(file.getFormat().getMimeType());
+        contents.setBlob(Base64.getEncoder().encodeToString(Files.readAllBytes(file.getPath())));
+
+        EmbeddedResource resource = new EmbeddedResource();
+        resource.setResource(contents);
+        return resource;
+    }
+
+    private void tableChanged(String databaseName, String tableName, TableChangedEvent.ChangeType changeType) {
+        tableChanged(databaseName, tableName, changeType, null);
+    }
+
+    private void tableChanged(String databaseName, String tableName, TableChangedEvent.ChangeType changeType,
+                              TableData insertedRows) {
+        ActionTrace.recordWrite();
+        eventPublisher.publishEvent(
+                new TableChangedEvent(this, databaseName, tableName, changeType, insertedRows));
+    }
+
+    /**
+     * Plan steps are authorized like the actions they stand for.
+     */
+    private static void requireRole(String... roles) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                for (String role : roles) {
+                    if (("ROLE_" + role).equals(authority.getAuthority())) {
+                        return;
+                    }
+                }
+            }
+        }
+        throw new AccessDeniedException("Access is denied");
+    }
+
+    private static void requireTable(TableData tableData, boolean complete) {
+        if (tableData == null || tableData.getTableName() == null
+                || tableData.getTableName().trim().isEmpty() || !complete) {
+            throw new IllegalArgumentException("Table name and columns or rows are required.");
+        }
+    }
+
+    /** Result of a plan shown as a single page, the transaction that produced it is gone */
+    private ResultPage firstPage(QueryResult result) {
+        ResultPage page = new ResultPage();
+        page.setColumns(result.getColumns());
+        page.setPageNumber(1);
+        page.setPageSize(resultPager.getDefaultPageSize());
+        page.setFirstRow(1);
+        List<Object[]> rows = result.getRows();
+        page.setRows(new ArrayList<Object[]>(rows.subList(0, Math.min(rows.size(), page.getPageSize()))));
+        page.setTruncated(result.isTruncated() || rows.size() > page.getPageSize());
+        return page;
+    }
+
+    private static boolean isSelectQuery(String sqlQuery) {
+        return sqlQuery != null &&
+                sqlQuery.trim().toLowerCase(Locale.ROOT).startsWith("select");
+    }
+
     /* =================================================
        UI HELPERS
      ================================================= */
@@ -247,12 +658,12 @@ public class DerbyService implements A2UIAware, ProcessorAware {
                 Arrays.asList("title", "message");
 
         List<Map<String, Object>> components =
-                new ArrayList<Map<String, Object>>();
+                new ArrayList<Map<String, Object>>(3);
 
-        components.add(createRootColumn("root", children));
-        components.add(createTextComponent(
+        components.add(A2UIComponents.column("root", children));
+        components.add(A2UIComponents.text(
                 "title", "🗄️ " + title, "h2"));
-        components.add(createTextComponent(
+        components.add(A2UIComponents.text(
                 "message", message, "body"));
 
         return buildA2UIMessage(
@@ -272,12 +683,12 @@ public class DerbyService implements A2UIAware, ProcessorAware {
                 Arrays.asList("title", fieldName);
 
         List<Map<String, Object>> components =
-                new ArrayList<Map<String, Object>>();
+                new ArrayList<Map<String, Object>>(3);
 
-        components.add(createRootColumn("root", children));
-        components.add(createTextComponent(
+        components.add(A2UIComponents.column("root", children));
+        components.add(A2UIComponents.text(
                 "title", "✍️ " + title, "h2"));
-        components.add(createTextField(fieldName, label));
+        components.add(A2UIComponents.textField(fieldName, label));
 
         return buildA2UIMessage(
                 surfaceId,
@@ -285,82 +696,94 @@ public class DerbyService implements A2UIAware, ProcessorAware {
                 components
         );
     }
+
     private Map<String, Object> createSingleInputForm(
             String surfaceId,
             String title,
             String label,
             String fieldName) {
 
-        Map<String, Object> textField = new HashMap<>();
-        textField.put("id", fieldName);
-
-        Map<String, Object> textFieldComponent = new HashMap<>();
-        Map<String, Object> textFieldProps = new HashMap<>();
-        textFieldProps.put("label", new HashMap<String, Object>() {{
-            put("literalString", label);
-        }});
-        textFieldProps.put("text", new HashMap<String, Object>() {{
-            put("literalString", "");
-        }});
-        textFieldComponent.put("TextField", textFieldProps);
-        textField.put("component", textFieldComponent);
-
         return buildA2UIMessage(
                 surfaceId,
                 "root",
-                Arrays.asList(
-                        createRootColumn("root", Arrays.asList("title", "field")),
-                        createTextComponent("title", "✍️ " + title, "h2"),
-                        textField
+                Arrays.<Map<String, Object>>asList(
+                        A2UIComponents.column("root", Arrays.asList("title", fieldName)),
+                        A2UIComponents.text("title", "✍️ " + title, "h2"),
+                        A2UIComponents.textField(fieldName, label)
                 )
         );
     }
 
-
-    private Map<String, Object> createTextField(
-            String id, String label) {
-
-        Map<String, Object> field =
-                new HashMap<String, Object>();
-
-        field.put("id", id);
-        field.put("component", "TextField");
-        field.put("label", label);
-        field.put("text", "");
-
-        return field;
-    }
-
+    /**
+     * Renders one page as a table: a header row, one row of cells per result row and
+     * previous/next buttons that carry the page tokens.
+     */
     private Map<String, Object> createResultUI(
             String query,
-            List<Map<String, Object>> rows) {
+            ResultPage page) {
+
+        String[] columns = page.getColumns();
+        List<Object[]> rows = page.getRows();
 
         List<String> children =
-                new ArrayList<String>();
+                new ArrayList<String>(rows.size() + 6);
 
         List<Map<String, Object>> components =
-                new ArrayList<Map<String, Object>>();
+                new ArrayList<Map<String, Object>>((rows.size() + 1) * (columns.length + 1) + 10);
 
         children.add("title");
         children.add("query");
 
-        components.add(createTextComponent(
-                "title", "📊 Query Results", "h2"));
-        components.add(createTextComponent(
+        components.add(RESULT_TITLE);
+        components.add(A2UIComponents.text(
                 "query", "Query: " + query, "body"));
 
-        int count = 0;
-        for (Map<String, Object> row : rows) {
-            count++;
-            if (count > 5) break;
-
-            String id = "row_" + count;
+        List<String> header = new ArrayList<String>(columns.length);
+        for (int c = 0; c < columns.length; c++) {
+            String id = "h_" + c;
+            header.add(id);
+            components.add(A2UIComponents.text(id, columns[c], "h5"));
+        }
+        children.add("header");
+        components.add(A2UIComponents.row("header", header));
+
+        for (int r = 0; r < rows.size(); r++) {
+            Object[] row = rows.get(r);
+            List<String> cells = new ArrayList<String>(row.length);
+            for (int c = 0; c < row.length; c++) {
+                String id = "r" + r + "_" + c;
+                cells.add(id);
+                components.add(A2UIComponents.text(id, String.valueOf(row[c]), "body"));
+            }
+            String id = "row_" + r;
             children.add(id);
-            components.add(createTextComponent(
-                    id, row.toString(), "body"));
+            components.add(A2UIComponents.row(id, cells));
+        }
+
+        String range = rows.isEmpty() ? "No rows"
+                : "Rows " + page.getFirstRow() + "-" + (page.getFirstRow() + rows.size() - 1)
+                + ", page " + page.getPageNumber()
+                + (page.isTruncated() ? ", more rows not shown" : "");
+        children.add("page_info");
+        components.add(A2UIComponents.text("page_info", range, "caption"));
+
+        List<String> buttons = new ArrayList<String>(2);
+        if (page.getPreviousToken() != null) {
+            buttons.add("prev");
+            components.add(PREV_LABEL);
+            components.add(createPageButton("prev", "prev_label", page.getPreviousToken()));
+        }
+        if (page.getNextToken() != null) {
+            buttons.add("next");
+            components.add(NEXT_LABEL);
+            components.add(createPageButton("next", "next_label", page.getNextToken()));
+        }
+        if (!buttons.isEmpty()) {
+            children.add("paging");
+            components.add(A2UIComponents.row("paging", buttons));
         }
 
-        components.add(createRootColumn("root", children));
+        components.add(A2UIComponents.column("root", children));
 
         return buildA2UIMessage(
                 "query_results",
@@ -368,4 +791,13 @@ public class DerbyService implements A2UIAware, ProcessorAware {
                 components
         );
     }
+
+    /**
+     * Button that asks the agent for the page behind the token, handled by showResultPage.
+     */
+    private static Map<String, Object> createPageButton(
+            String id, String labelId, String pageToken) {
+
+        return A2UIComponents.button(id, labelId, "showResultPage", "pageToken", pageToken);
+    }
 }
@@ -0,0 +1,48 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.data.ImportProgress;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the progress of running and recently finished imports.
+ */
+@Component
+public class ImportTracker {
+
+    private static final int MAX_ENTRIES = 100;
+
+    private final Map<String, ImportProgress> imports =
+            new LinkedHashMap<String, ImportProgress>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ImportProgress> eldest) {
+                    return size() > MAX_ENTRIES
+                            && eldest.getValue().getState() != ImportProgress.State.RUNNING;
+                }
+            };
+
+    public synchronized ImportProgress start(String tableName, String fileName, long totalBytes) {
+        ImportProgress progress = new ImportProgress();
+        progress.setId(UUID.randomUUID().toString());
+        progress.setTableName(tableName);
+        progress.setFileName(fileName);
+        progress.setTotalBytes(totalBytes);
+        imports.put(progress.getId(), progress);
+        return progress;
+    }
+
+    public synchronized ImportProgress get(String id) {
+        return imports.get(id);
+    }
+
+    public synchronized List<ImportProgress> list() {
+        Collection<ImportProgress> values = imports.values();
+        return new ArrayList<ImportProgress>(values);
+    }
+}
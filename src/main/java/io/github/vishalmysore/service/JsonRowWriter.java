@@ -0,0 +1,150 @@
+package io.github.vishalmysore.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Writes a result as NDJSON: a {"columns": [...]} line, then one JSON array per row. Values
+ * are read with the ResultSet getter for the column type and written with the matching
+ * generator call, so numbers and strings go from the driver to the output without an
+ * Object[] per row or a boxed value per cell. Other types are written through the
+ * generator's codec and look the same as in the rest of the API.
+ */
+public class JsonRowWriter implements ResultSetRowHandler {
+
+    private final JsonGenerator gen;
+    private final int flushEvery;
+
+    private int[] types;
+    private int pending;
+
+    public JsonRowWriter(JsonGenerator gen, int flushEvery) {
+        this.gen = gen;
+        this.flushEvery = flushEvery;
+    }
+
+    @Override
+    public void onColumns(String[] columnNames) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName("columns");
+        gen.writeStartArray();
+        for (String name : columnNames) {
+            gen.writeString(name);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+
+    @Override
+    public long onRow(ResultSet rs, int columnCount) throws SQLException, IOException {
+        if (types == null) {
+            ResultSetMetaData md = rs.getMetaData();
+            types = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                types[i] = md.getColumnType(i + 1);
+            }
+        }
+        long bytes = 0;
+        gen.writeStartArray();
+        for (int i = 0; i < columnCount; i++) {
+            bytes += write(rs, i + 1, types[i]);
+        }
+        gen.writeEndArray();
+        gen.writeRaw('\n');
+        if (++pending == flushEvery) {
+            gen.flush();
+            pending = 0;
+        }
+        return bytes;
+    }
+
+    /** Writes one value, returns its size the way ResultStreamer estimates it */
+    private long write(ResultSet rs, int column, int type) throws SQLException, IOException {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER: {
+                int v = rs.getInt(column);
+                if (rs.wasNull()) {
+                    return writeNull();
+                }
+                gen.writeNumber(v);
+                return 8;
+            }
+            case Types.BIGINT: {
+                long v = rs.getLong(column);
+                if (rs.wasNull()) {
+                    return writeNull();
+                }
+                gen.writeNumber(v);
+                return 8;
+            }
+            case Types.REAL: {
+                // written as a float, so the digits match Float.toString of the getObject path
+                float v = rs.getFloat(column);
+                if (rs.wasNull()) {
+                    return writeNull();
+                }
+                gen.writeNumber(v);
+                return 8;
+            }
+            case Types.FLOAT:
+            case Types.DOUBLE: {
+                double v = rs.getDouble(column);
+                if (rs.wasNull()) {
+                    return writeNull();
+                }
+                gen.writeNumber(v);
+                return 8;
+            }
+            case Types.DECIMAL:
+            case Types.NUMERIC: {
+                BigDecimal v = rs.getBigDecimal(column);
+                if (v == null) {
+                    return writeNull();
+                }
+                gen.writeNumber(v);
+                return 8;
+            }
+            case Types.BOOLEAN:
+            case Types.BIT: {
+                boolean v = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    return writeNull();
+                }
+                gen.writeBoolean(v);
+                return 8;
+            }
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR: {
+                String v = rs.getString(column);
+                if (v == null) {
+                    return writeNull();
+                }
+                gen.writeString(v);
+                return v.length();
+            }
+            default: {
+                Object v = rs.getObject(column);
+                if (v == null) {
+                    return writeNull();
+                }
+                gen.writeObject(v);
+                return ResultStreamer.estimateBytes(v);
+            }
+        }
+    }
+
+    private long writeNull() throws IOException {
+        gen.writeNull();
+        return 4;
+    }
+}
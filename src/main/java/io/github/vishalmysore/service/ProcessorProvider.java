@@ -0,0 +1,46 @@
+package io.github.vishalmysore.service;
+
+import com.t4a.processor.AIProcessor;
+import com.t4a.processor.spring.SpringOpenAIProcessor;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the AI processor, and with it the scan of @Agent/@Action beans and their
+ * prompt metadata, once when the application is ready instead of on every request.
+ * The instance is immutable after construction and shared by all request threads.
+ */
+@Log
+@Component
+public class ProcessorProvider {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private volatile AIProcessor processor;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        get();
+    }
+
+    public AIProcessor get() {
+        AIProcessor current = processor;
+        if (current == null) {
+            synchronized (this) {
+                current = processor;
+                if (current == null) {
+                    long start = System.currentTimeMillis();
+                    current = new SpringOpenAIProcessor(applicationContext);
+                    processor = current;
+                    log.info("AI processor ready in " + (System.currentTimeMillis() - start) + " ms");
+                }
+            }
+        }
+        return current;
+    }
+}
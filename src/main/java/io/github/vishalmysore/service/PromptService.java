@@ -0,0 +1,110 @@
+package io.github.vishalmysore.service;
+
+import com.t4a.processor.AIProcessingException;
+import com.t4a.processor.AIProcessor;
+import io.github.vishalmysore.cache.ActionTrace;
+import io.github.vishalmysore.cache.PromptResponseCache;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.limit.RequestLimiter;
+import io.github.vishalmysore.metrics.Roles;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLException;
+
+/**
+ * Answers a free text prompt: picks and runs one action through the shared processor,
+ * then lets the LLM phrase the answer. Pure read answers are served from the prompt cache.
+ * The action is picked with a compact summary of the default database's tables appended to
+ * the prompt, so generated SQL uses real table and column names the first time.
+ * Prompts that miss the cache are admitted through the {@link RequestLimiter} first.
+ */
+@Log
+@Service
+public class PromptService {
+
+    @Autowired
+    private ProcessorProvider processorProvider;
+
+    @Autowired
+    private PromptResponseCache promptResponseCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    @Autowired
+    private RequestLimiter requestLimiter;
+
+    @Value("${prompt.schema-summary.enabled:true}")
+    private boolean schemaSummaryEnabled;
+
+    public String answer(String prompt) throws AIProcessingException {
+        String cached = promptResponseCache.get(prompt);
+        if (cached != null) {
+            log.fine("Answered from prompt cache: " + prompt);
+            return cached;
+        }
+        long epoch = promptResponseCache.currentEpoch();
+        RequestLimiter.Permit permit = requestLimiter.acquirePrompt();
+        ActionTrace trace = ActionTrace.begin();
+        AIProcessor processor = processorProvider.get();
+        try {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            Object object;
+            try {
+                object = processor.processSingleAction(withSchema(prompt));
+            } finally {
+                stop(sample, "processSingleAction", trace);
+            }
+            sample = Timer.start(meterRegistry);
+            String answer;
+            try {
+                answer = processor.query(prompt, object);
+            } finally {
+                stop(sample, "query", trace);
+            }
+            if (trace.isCacheable()) {
+                promptResponseCache.put(prompt, answer, trace.getReadTables(), epoch);
+            }
+            return answer;
+        } finally {
+            ActionTrace.end();
+            permit.close();
+        }
+    }
+
+    private String withSchema(String prompt) {
+        if (!schemaSummaryEnabled) {
+            return prompt;
+        }
+        String summary;
+        try {
+            summary = schemaCatalog.summary(null);
+        } catch (SQLException e) {
+            log.fine("No schema summary for prompt: " + e.getMessage());
+            return prompt;
+        }
+        if (summary.isEmpty()) {
+            return prompt;
+        }
+        return prompt + "\n\nExisting tables, use these table and column names in SQL:\n" + summary;
+    }
+
+    /** One timer per LLM round trip, tagged with the action the prompt resolved to */
+    private void stop(Timer.Sample sample, String stage, ActionTrace trace) {
+        String action = trace.getAction() != null ? trace.getAction() : "none";
+        sample.stop(Timer.builder("agent.llm")
+                .tag("stage", stage)
+                .tag("action", action)
+                .tag("role", Roles.current())
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.vishalmysore.service;
+
+import lombok.extern.java.Log;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+
+/**
+ * Lets a request cancel the query its worker thread is running, e.g. when the client of an
+ * SSE stream or async prompt goes away. The request creates the token, the worker thread
+ * {@link #enter() enters} it and {@link ResultStreamer} attaches each running statement.
+ * <p>
+ * Embedded Derby does not implement {@link Statement#cancel()}, so the worker thread is
+ * interrupted instead; Derby notices the interrupt and aborts the statement. The row loop
+ * also checks the flag, which stops a scan that is already returning rows.
+ */
+@Log
+public class QueryCancellation {
+
+    private static final ThreadLocal<QueryCancellation> CURRENT = new ThreadLocal<QueryCancellation>();
+
+    private volatile boolean cancelled;
+    private Statement statement;
+    private Thread thread;
+
+    public static QueryCancellation current() {
+        return CURRENT.get();
+    }
+
+    public void enter() {
+        CURRENT.set(this);
+    }
+
+    public void exit() {
+        CURRENT.remove();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    synchronized void attach(Statement statement) throws SQLException {
+        if (cancelled) {
+            throw cancelledException();
+        }
+        this.statement = statement;
+        this.thread = Thread.currentThread();
+    }
+
+    synchronized void detach() {
+        statement = null;
+        thread = null;
+        // an interrupt that arrived after the statement finished must not leak into the pool thread
+        Thread.interrupted();
+    }
+
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (SQLFeatureNotSupportedException e) {
+            thread.interrupt();
+        } catch (SQLException e) {
+            log.fine("Statement cancel failed, interrupting: " + e.getMessage());
+            thread.interrupt();
+        }
+    }
+
+    static SQLException cancelledException() {
+        // 57014: processing was cancelled as requested
+        return new SQLException("Query cancelled", "57014");
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.config.DerbyStorageProperties;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Pre-execution check for generated SELECTs. The statement is compiled in Derby's
+ * explain-only XPLAIN mode, which optimizes it without running it, and the optimizer's
+ * estimated cost and row count of the top result set are read back from the XPLAIN tables.
+ * <ul>
+ *     <li>cost over sql.guard.max-cost: the query is rejected</li>
+ *     <li>more estimated rows than the caller will read: FETCH FIRST is appended, so Derby
+ *     can stop early instead of producing rows that would be thrown away</li>
+ * </ul>
+ * Estimates are cached per database and normalized query shape and dropped when a table
+ * changes. Capturing a plan switches session settings, so explains are serialized; with the
+ * cache they only happen for new query shapes. A caller inside a transaction is explained on
+ * a connection of its own, so the XPLAIN rows are neither part of that transaction nor kept
+ * locked until it ends.
+ */
+@Log
+@Component
+public class QueryGuard {
+
+    private static final String XPLAIN_SCHEMA = "SQLAGENT_XPLAIN";
+
+    private static final String[] XPLAIN_TABLES = {
+            "SYSXPLAIN_SCAN_PROPS", "SYSXPLAIN_SORT_PROPS", "SYSXPLAIN_RESULTSET_TIMINGS",
+            "SYSXPLAIN_STATEMENT_TIMINGS", "SYSXPLAIN_RESULTSETS", "SYSXPLAIN_STATEMENTS"
+    };
+
+    /** Queries that already limit their rows or end in a clause FETCH FIRST cannot follow */
+    private static final Pattern NOT_REWRITABLE = Pattern.compile(
+            "\\b(FETCH\\s+(FIRST|NEXT)|OFFSET|FOR\\s+(UPDATE|READ\\s+ONLY|FETCH\\s+ONLY)|WITH\\s+(RR|RS|CS|UR))\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    @Value("${sql.guard.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sql.guard.max-cost:1000000}")
+    private double maxCost;
+
+    @Getter
+    @Value("${sql.guard.query-timeout-seconds:30}")
+    private int queryTimeoutSeconds;
+
+    @Value("${sql.guard.estimate-cache-size:256}")
+    private int estimateCacheSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private DerbyStorageProperties storage;
+
+    private final Object explainLock = new Object();
+
+    private Map<String, Estimate> estimates;
+
+    private Counter passed;
+    private Counter rewritten;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        estimates = Collections.synchronizedMap(new LinkedHashMap<String, Estimate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Estimate> eldest) {
+                return size() > estimateCacheSize;
+            }
+        });
+        passed = meterRegistry.counter("sql.guard", "result", "passed");
+        rewritten = meterRegistry.counter("sql.guard", "result", "rewritten");
+        rejected = meterRegistry.counter("sql.guard", "result", "rejected");
+    }
+
+    @Getter
+    public static class Estimate {
+        private final double cost;
+        private final double rows;
+
+        Estimate(double cost, double rows) {
+            this.cost = cost;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Returns the SQL to run, which is either the query itself or the query with a row limit.
+     *
+     * @param rowLimit rows the caller reads at most, the rewrite keeps one extra row so
+     *                 truncation can still be detected
+     * @throws QueryRejectedException when the estimated cost is over the limit
+     */
+    public String check(Connection conn, String sql, long rowLimit) throws SQLException {
+        if (!enabled) {
+            return sql;
+        }
+        Estimate estimate = estimate(conn, sql);
+        if (estimate == null) {
+            passed.increment();
+            return sql;
+        }
+        if (estimate.cost > maxCost) {
+            rejected.increment();
+            log.info("Rejected query with estimated cost " + estimate.cost + ": " + sql);
+            throw new QueryRejectedException(String.format(Locale.ROOT,
+                    "Query rejected, estimated cost %.0f is over the limit of %.0f. "
+                            + "Add a WHERE clause on an indexed column or join on keys.",
+                    estimate.cost, maxCost));
+        }
+        String trimmed = stripSemicolon(sql);
+        if (rowLimit < Integer.MAX_VALUE && estimate.rows > rowLimit
+                && !NOT_REWRITABLE.matcher(trimmed).find()) {
+            rewritten.increment();
+            return trimmed + " FETCH FIRST " + (rowLimit + 1) + " ROWS ONLY";
+        }
+        passed.increment();
+        return sql;
+    }
+
+    /**
+     * Optimizer estimate for the query, null when no plan could be captured; the query then
+     * runs unchecked and fails on its own if it is invalid.
+     */
+    public Estimate estimate(Connection conn, String sql) throws SQLException {
+        String key = conn.getMetaData().getURL() + '\n' + SqlNormalizer.normalize(sql).getSql();
+        Estimate estimate = estimates.get(key);
+        if (estimate != null) {
+            return estimate;
+        }
+        synchronized (explainLock) {
+            try {
+                if (conn.getAutoCommit()) {
+                    estimate = explain(conn, sql);
+                } else {
+                    try (Connection own = DriverManager.getConnection(conn.getMetaData().getURL(),
+                            storage.getUser(), storage.getPassword())) {
+                        estimate = explain(own, sql);
+                    }
+                }
+            } catch (SQLException e) {
+                log.fine("No plan estimate for query: " + e.getMessage());
+                return null;
+            }
+        }
+        if (estimate != null) {
+            estimates.put(key, estimate);
+        }
+        return estimate;
+    }
+
+    private Estimate explain(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+            stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_XPLAIN_SCHEMA('" + XPLAIN_SCHEMA + "')");
+            stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_XPLAIN_MODE(1)");
+            try {
+                // explain-only mode: compiled and optimized, no rows are produced
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        // nothing to read
+                    }
+                }
+            } finally {
+                stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_XPLAIN_MODE(0)");
+                stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_XPLAIN_SCHEMA('')");
+                stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+            }
+            try {
+                try (ResultSet rs = stmt.executeQuery("SELECT MAX(EST_COST), MAX(EST_ROW_COUNT) FROM "
+                        + XPLAIN_SCHEMA + ".SYSXPLAIN_RESULTSETS WHERE PARENT_RS_ID IS NULL")) {
+                    if (rs.next() && rs.getObject(1) != null) {
+                        return new Estimate(rs.getDouble(1), rs.getDouble(2));
+                    }
+                    return null;
+                }
+            } finally {
+                for (String table : XPLAIN_TABLES) {
+                    stmt.executeUpdate("DELETE FROM " + XPLAIN_SCHEMA + "." + table);
+                }
+            }
+        }
+    }
+
+    private static String stripSemicolon(String sql) {
+        String trimmed = sql.trim();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    /** Row counts, and with them the estimates, move when a table is written to */
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        estimates.clear();
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.vishalmysore.service;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by the {@link QueryGuard} before execution when the optimizer's estimate for a
+ * query is over the configured limit. It is an SQLException so the existing "Query Error"
+ * paths report it like any other failed query.
+ */
+public class QueryRejectedException extends SQLException {
+
+    /** SQLState class 54, program limit exceeded */
+    private static final String SQL_STATE = "54000";
+
+    public QueryRejectedException(String message) {
+        super(message, SQL_STATE);
+    }
+}
@@ -0,0 +1,371 @@
+package io.github.vishalmysore.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.github.vishalmysore.cache.ActionTrace;
+import io.github.vishalmysore.config.DerbyStorageProperties;
+import io.github.vishalmysore.event.TableChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot replicas of the default database for SELECTs. Reads on a replica take their
+ * locks in a separate Derby database, so they no longer queue behind inserts on the
+ * primary and read throughput grows with the number of replicas and cores.
+ * <p>
+ * Derby's own replication keeps the slave unreadable until failover, so a replica here is
+ * an online backup of the primary restored with createFrom. A refresh only runs after a
+ * table changed: one backup is taken and every replica is rebuilt from it as a new
+ * generation, the previous generation is dropped once its last connection is returned.
+ * This is a snapshot mode, not incremental replication: every refresh copies the whole
+ * database, so sql.replica.refresh-seconds is kept long and replicas pay off for read-mostly
+ * workloads.
+ * While no refresh has caught up with a write, replicas are served for at most
+ * sql.replica.max-lag-seconds, after that reads go to the primary until the refresh is
+ * done. Reads served from a replica that is behind are not put in the prompt cache.
+ * <p>
+ * Only MEMORY and EMBEDDED storage can be replicated, named databases always read from
+ * their own pool.
+ */
+@Log
+@Component
+public class ReadReplicas {
+
+    @Value("${sql.replica.count:0}")
+    private int count;
+
+    @Value("${sql.replica.pool-size:4}")
+    private int poolSize;
+
+    /** TRANSACTION_READ_UNCOMMITTED, TRANSACTION_READ_COMMITTED, ... applied to replica pools */
+    @Value("${sql.replica.isolation:TRANSACTION_READ_COMMITTED}")
+    private String isolation;
+
+    @Value("${sql.replica.max-lag-seconds:5}")
+    private long maxLagSeconds;
+
+    /** Minimum time between two refreshes, each one copies the whole database */
+    @Value("${sql.replica.refresh-seconds:60}")
+    private long refreshSeconds;
+
+    /** Where the backup is written, empty for a temporary directory */
+    @Value("${sql.replica.backup-dir:}")
+    private String backupDir;
+
+    @Autowired
+    private HikariDataSource primary;
+
+    @Autowired
+    private DerbyStorageProperties storage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final List<Replica> replicas = new CopyOnWriteArrayList<Replica>();
+    private final List<Replica> retired = new CopyOnWriteArrayList<Replica>();
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+
+    /** Time of the first write the replicas do not have yet, 0 while they are current */
+    private volatile long behindSince;
+    private volatile long snapshotVersion = -1;
+    private volatile String primaryUrl;
+
+    private ScheduledExecutorService refresher;
+
+    private Counter replicaReads;
+    private Counter primaryReads;
+
+    private static class Replica {
+        private final String name;
+        private final HikariDataSource dataSource;
+
+        Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        int activeConnections() {
+            return dataSource.getHikariPoolMXBean().getActiveConnections();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        replicaReads = meterRegistry.counter("sql.replica.reads", "target", "replica");
+        primaryReads = meterRegistry.counter("sql.replica.reads", "target", "primary");
+        if (!isEnabled()) {
+            if (count > 0) {
+                log.warning("sql.replica.count is ignored, " + storage.getMode() + " storage cannot be replicated");
+            }
+            return;
+        }
+        meterRegistry.gauge("sql.replica.lag", this, r -> r.lagMillis() / 1000.0);
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshIfBehind, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            drop(replica);
+        }
+        for (Replica replica : retired) {
+            drop(replica);
+        }
+        replicas.clear();
+        retired.clear();
+    }
+
+    public boolean isEnabled() {
+        return count > 0 && storage.isEmbeddedEngine();
+    }
+
+    /**
+     * Connection for a SELECT on the default database: the least loaded replica while the
+     * replicas are within the allowed lag, otherwise the primary.
+     */
+    public Connection getConnection() throws SQLException {
+        long lag = lagMillis();
+        if (lag <= TimeUnit.SECONDS.toMillis(maxLagSeconds)) {
+            Replica replica = replicas.stream()
+                    .min(Comparator.comparingInt(Replica::activeConnections))
+                    .orElse(null);
+            if (replica != null) {
+                try {
+                    Connection conn = replica.dataSource.getConnection();
+                    if (lag > 0) {
+                        ActionTrace.recordStaleRead();
+                    }
+                    replicaReads.increment();
+                    return conn;
+                } catch (SQLException e) {
+                    // retired by a refresh between lookup and checkout
+                    log.fine("Replica " + replica.name + " unavailable: " + e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * URL of the primary for a replica URL, so per database state such as the recorded
+     * workload is kept for the database the replica was copied from.
+     */
+    public String primaryUrl(String url) {
+        String primaryUrl = this.primaryUrl;
+        if (primaryUrl != null && url != null) {
+            List<Replica> all = new ArrayList<Replica>(replicas);
+            all.addAll(retired);
+            for (Replica replica : all) {
+                if (url.contains(replica.name)) {
+                    return primaryUrl;
+                }
+            }
+        }
+        return url;
+    }
+
+    long lagMillis() {
+        if (snapshotVersion < 0) {
+            return Long.MAX_VALUE;
+        }
+        long since = behindSince;
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        if (!isEnabled() || !isDefault(event.getDatabaseName())) {
+            return;
+        }
+        synchronized (this) {
+            version.incrementAndGet();
+            if (behindSince == 0) {
+                behindSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private boolean isDefault(String databaseName) {
+        return databaseName == null || databaseName.trim().isEmpty()
+                || databaseName.trim().equalsIgnoreCase(storage.getDatabase());
+    }
+
+    private void refreshIfBehind() {
+        dropRetired();
+        if (snapshotVersion >= 0 && behindSince == 0) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (SQLException | IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Replica refresh failed, reads stay on the primary", e);
+        }
+    }
+
+    private void refresh() throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        long copied = version.get();
+        boolean temporary = backupDir == null || backupDir.trim().isEmpty();
+        Path dir = temporary
+                ? Files.createTempDirectory("derby-replica")
+                : Files.createDirectories(Paths.get(backupDir.trim()));
+        Path backup = null;
+        List<Replica> fresh = new ArrayList<Replica>();
+        try {
+            backup = backup(dir);
+            long gen = generation.incrementAndGet();
+            for (int i = 1; i <= count; i++) {
+                fresh.add(restore(storage.getDatabase() + "_R" + i + "_G" + gen, backup));
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            for (Replica replica : fresh) {
+                drop(replica);
+            }
+            throw e;
+        } finally {
+            if (temporary) {
+                delete(dir);
+            } else if (backup != null) {
+                delete(backup);
+            }
+        }
+
+        List<Replica> previous = new ArrayList<Replica>(replicas);
+        synchronized (this) {
+            replicas.addAll(fresh);
+            replicas.removeAll(previous);
+            snapshotVersion = copied;
+            // writes that landed while the backup ran are still missing
+            behindSince = version.get() == copied ? 0 : started;
+        }
+        retired.addAll(previous);
+        dropRetired();
+        log.info("Refreshed " + count + " replicas in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    /** Online backup of the primary, returns the directory holding the copy */
+    private Path backup(Path dir) throws SQLException, IOException {
+        try (Connection conn = primary.getConnection();
+             CallableStatement cs = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_BACKUP_DATABASE(?)")) {
+            if (primaryUrl == null) {
+                primaryUrl = conn.getMetaData().getURL();
+            }
+            cs.setString(1, dir.toAbsolutePath().toString());
+            cs.execute();
+        }
+        File[] copies = dir.toFile().listFiles(File::isDirectory);
+        if (copies == null || copies.length != 1) {
+            throw new IOException("Expected one database backup in " + dir);
+        }
+        return copies[0].toPath();
+    }
+
+    private Replica restore(String name, Path backup) throws SQLException {
+        String url = urlOf(name);
+        // createFrom copies the backup, the pool then opens the restored database by name
+        DriverManager.getConnection(url + ";createFrom=" + backup.toAbsolutePath(),
+                storage.getUser(), storage.getPassword()).close();
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("derby-" + name);
+        config.setDriverClassName(storage.driverClassName());
+        config.setJdbcUrl(url);
+        config.setUsername(storage.getUser());
+        config.setPassword(storage.getPassword());
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(0);
+        config.setTransactionIsolation(isolation);
+        config.setConnectionTimeout(primary.getConnectionTimeout());
+        config.setIdleTimeout(primary.getIdleTimeout());
+        config.setValidationTimeout(primary.getValidationTimeout());
+        config.setConnectionTestQuery(primary.getConnectionTestQuery());
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new Replica(name, new HikariDataSource(config));
+    }
+
+    private String urlOf(String name) {
+        return storage.getMode() == DerbyStorageProperties.Mode.MEMORY
+                ? "jdbc:derby:memory:" + name
+                : "jdbc:derby:" + name;
+    }
+
+    private void dropRetired() {
+        for (Replica replica : retired) {
+            if (replica.activeConnections() == 0 && retired.remove(replica)) {
+                drop(replica);
+            }
+        }
+    }
+
+    private void drop(Replica replica) {
+        replica.dataSource.close();
+        boolean memory = storage.getMode() == DerbyStorageProperties.Mode.MEMORY;
+        try {
+            DriverManager.getConnection(urlOf(replica.name) + (memory ? ";drop=true" : ";shutdown=true"),
+                    storage.getUser(), storage.getPassword()).close();
+        } catch (SQLException e) {
+            // Derby reports a successful drop or shutdown as an exception
+            log.fine("Replica " + replica.name + " closed: " + e.getMessage());
+        }
+        if (!memory) {
+            try {
+                delete(Paths.get(storage.getHome(), replica.name));
+            } catch (IOException e) {
+                log.warning("Could not delete replica " + replica.name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(path)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path p : paths) {
+            Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.advisor.QueryColumns;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ResultPage;
+import io.github.vishalmysore.event.TableChangedEvent;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pages through a SELECT so only the requested page is read from Derby.
+ * <p>
+ * Single table queries that return the table's single column primary key once, under its own
+ * name, and are unordered or ordered by that key are paged by key: each page starts after the last key of the
+ * previous one, {@code WHERE pk > ?} uses the primary key index and all pages after the
+ * first share one prepared statement. Everything else falls back to OFFSET/FETCH, which
+ * keeps the user's ORDER BY but has Derby skip the earlier rows. Queries that already limit
+ * their rows with FETCH or OFFSET are paged by offset over the limited result, as a derived
+ * table; when Derby does not take the query as one, e.g. for duplicate column names, it is
+ * shown as a single page marked truncated.
+ * <p>
+ * The query and the page start positions stay on the server in a cursor; the client only
+ * carries an opaque token of the form {@code <cursor>-<page>}, which is bound to the user
+ * that ran the query and expires after sql.page.ttl-minutes without use.
+ */
+@Log
+@Component
+public class ResultPager {
+
+    private static final Pattern LIMITED = Pattern.compile(
+            "\\b(FETCH\\s+(FIRST|NEXT)|OFFSET)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+
+    /** Rows of a set operation can repeat the key of one table */
+    private static final Pattern SET_OPERATION = Pattern.compile(
+            "\\b(UNION|EXCEPT|INTERSECT)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SELECT = Pattern.compile("^\\s*SELECT\\s+(?:ALL\\s+|DISTINCT\\s+)?",
+            Pattern.CASE_INSENSITIVE);
+
+    /** Select list item with an alias, group 1 is the expression */
+    private static final Pattern ALIASED = Pattern.compile(
+            "^(.*?)\\s+(?:AS\\s+)?(\"?[A-Za-z_][\\w$]*\"?)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern PLAIN_COLUMN = Pattern.compile(
+            "^(?:\"?[A-Za-z_][\\w$]*\"?\\.)?\"?[A-Za-z_][\\w$]*\"?$");
+
+    private static final String ALIAS = "PAGE_Q";
+
+    /** Derby: column not found, the key is not part of the select list */
+    private static final String COLUMN_NOT_FOUND = "42X04";
+
+    /** Derby: the statement does not compile, SQL state class 42 */
+    private static final String SYNTAX_OR_ACCESS = "42";
+
+    @Autowired
+    private ResultStreamer resultStreamer;
+
+    @Autowired
+    private SchemaCatalog schemaCatalog;
+
+    @Getter
+    @Value("${sql.page.size:50}")
+    private int defaultPageSize;
+
+    @Value("${sql.page.max-cursors:1000}")
+    private int maxCursors;
+
+    @Value("${sql.page.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private final Map<String, Cursor> cursors = new LinkedHashMap<String, Cursor>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cursor> eldest) {
+            return size() > maxCursors;
+        }
+    };
+
+    private static class Cursor {
+        private final String id = UUID.randomUUID().toString().replace("-", "");
+        private final String owner;
+        private final String sql;
+        private final String databaseName;
+        private final int pageSize;
+        /** Key column for keyset paging, null for OFFSET paging */
+        private String keyColumn;
+        /** The query has its own FETCH or OFFSET and is paged as a derived table */
+        private boolean limited;
+        /** A limited query that does not work as a derived table, only its first page is shown */
+        private boolean single;
+        /** Start of every page seen so far: the last key before it, or the row offset */
+        private final List<Object> starts = new ArrayList<Object>();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Cursor(String owner, String sql, String databaseName, int pageSize) {
+            this.owner = owner;
+            this.sql = sql;
+            this.databaseName = databaseName;
+            this.pageSize = pageSize;
+        }
+    }
+
+    public String databaseOf(String token) {
+        Cursor cursor = cursor(token);
+        return cursor == null ? null : cursor.databaseName;
+    }
+
+    public String queryOf(String token) {
+        Cursor cursor = cursor(token);
+        return cursor == null ? null : cursor.sql;
+    }
+
+    /**
+     * Reads the first page of the query and opens a cursor for the following ones.
+     */
+    public ResultPage firstPage(Connection conn, String sql, String databaseName, int pageSize)
+            throws SQLException {
+        String inner = stripSemicolon(sql);
+        Cursor cursor = new Cursor(currentUser(), inner, databaseName,
+                pageSize > 0 ? pageSize : defaultPageSize);
+        cursor.limited = LIMITED.matcher(inner).find();
+        cursor.keyColumn = cursor.limited ? null : keyColumn(conn, inner);
+        cursor.starts.add(cursor.keyColumn != null ? null : (Object) 0L);
+        synchronized (cursors) {
+            cursors.put(cursor.id, cursor);
+        }
+        return read(conn, cursor, 0);
+    }
+
+    /**
+     * Reads the page the token points to.
+     *
+     * @throws IllegalArgumentException when the token is unknown, expired or belongs to another user
+     */
+    public ResultPage page(Connection conn, String token) throws SQLException {
+        Cursor cursor = cursor(token);
+        int page = pageOf(token);
+        if (cursor == null || page < 0) {
+            throw new IllegalArgumentException("Page token is unknown or expired, run the query again.");
+        }
+        synchronized (cursor) {
+            if (page >= cursor.starts.size()) {
+                throw new IllegalArgumentException("Pages have to be browsed in order, page " + (page + 1)
+                        + " has not been reached yet.");
+            }
+        }
+        return read(conn, cursor, page);
+    }
+
+    private ResultPage read(Connection conn, Cursor cursor, int page) throws SQLException {
+        Object start;
+        synchronized (cursor) {
+            start = cursor.starts.get(page);
+        }
+        final ResultPage result = new ResultPage();
+        result.setPageNumber(page + 1);
+        result.setPageSize(cursor.pageSize);
+
+        ResultStreamer.StreamStats stats;
+        try {
+            stats = stream(conn, pageSql(cursor, start), cursor.pageSize, result);
+        } catch (SQLException e) {
+            String state = e.getSQLState();
+            if (cursor.keyColumn != null && COLUMN_NOT_FOUND.equals(state)) {
+                // the key column is not selected, page by offset instead
+                synchronized (cursor) {
+                    cursor.keyColumn = null;
+                    cursor.starts.clear();
+                    cursor.starts.add(0L);
+                }
+                return read(conn, cursor, 0);
+            }
+            if (cursor.limited && !cursor.single && state != null && state.startsWith(SYNTAX_OR_ACCESS)) {
+                // not valid as a derived table, run it as it is
+                synchronized (cursor) {
+                    cursor.single = true;
+                    cursor.starts.clear();
+                    cursor.starts.add(0L);
+                }
+                return read(conn, cursor, 0);
+            }
+            throw e;
+        }
+
+        if (cursor.keyColumn == null) {
+            result.setFirstRow((Long) start + 1);
+        } else {
+            result.setFirstRow((long) page * cursor.pageSize + 1);
+        }
+        if (page > 0) {
+            result.setPreviousToken(cursor.id + "-" + (page - 1));
+        }
+        if (stats.isTruncated() && cursor.single) {
+            result.setTruncated(true);
+        } else if (stats.isTruncated() && stats.getRowCount() > 0) {
+            Object next;
+            if (cursor.keyColumn == null) {
+                next = (Long) start + stats.getRowCount();
+            } else {
+                int keyIndex = indexOf(result.getColumns(), cursor.keyColumn);
+                next = result.getRows().get(result.getRows().size() - 1)[keyIndex];
+            }
+            synchronized (cursor) {
+                if (cursor.starts.size() == page + 1) {
+                    cursor.starts.add(next);
+                }
+            }
+            result.setNextToken(cursor.id + "-" + (page + 1));
+        }
+        cursor.lastUsed = System.currentTimeMillis();
+        return result;
+    }
+
+    private ResultStreamer.StreamStats stream(Connection conn, String sql, int pageSize, final ResultPage result)
+            throws SQLException {
+        try {
+            return resultStreamer.stream(conn, sql, pageSize, resultStreamer.getMaxBytes(), new RowHandler() {
+                @Override
+                public void onColumns(String[] columnNames) {
+                    result.setColumns(columnNames);
+                }
+
+                @Override
+                public void onRow(Object[] values) {
+                    result.getRows().add(values);
+                }
+            });
+        } catch (IOException e) {
+            // in-memory handler never writes anywhere
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String pageSql(Cursor cursor, Object start) {
+        if (cursor.single) {
+            return cursor.sql;
+        }
+        if (cursor.keyColumn == null) {
+            String sql = cursor.limited ? "SELECT * FROM (" + cursor.sql + ") AS " + ALIAS : cursor.sql;
+            return sql + " OFFSET " + start + " ROWS FETCH NEXT " + (cursor.pageSize + 1) + " ROWS ONLY";
+        }
+        String key = ALIAS + "." + cursor.keyColumn;
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(withoutKeyOrder(cursor.sql, cursor.keyColumn))
+                .append(") AS ").append(ALIAS);
+        if (start != null) {
+            sql.append(" WHERE ").append(key).append(" > ").append(literal(start));
+        }
+        return sql.append(" ORDER BY ").append(key)
+                .append(" FETCH NEXT ").append(cursor.pageSize + 1).append(" ROWS ONLY").toString();
+    }
+
+    /**
+     * The single column primary key of the only table of the query, when the query is not
+     * ordered by anything else. Null when the query has to be paged by offset.
+     */
+    private String keyColumn(Connection conn, String sql) throws SQLException {
+        QueryColumns columns = QueryColumns.parse(sql);
+        if (columns.getTables().size() != 1 || SET_OPERATION.matcher(sql).find()) {
+            return null;
+        }
+        SchemaCatalog.Table table = schemaCatalog.table(conn, columns.getTables().get(0));
+        if (table == null) {
+            return null;
+        }
+        for (SchemaCatalog.Index index : table.getIndexes()) {
+            if (index.isPrimaryKey() && index.getColumns().size() == 1) {
+                String key = index.getColumns().get(0);
+                SchemaCatalog.Column column = table.column(key);
+                boolean comparable = column != null && literalType(column.getJdbcType());
+                boolean ordered = !ORDER_BY.matcher(sql).find()
+                        || !withoutKeyOrder(sql, key).equals(sql);
+                return comparable && ordered && selectsKeyOnce(sql, key) ? key : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * True when exactly one column of the result is named like the key and it is the key
+     * column itself, not another column or an expression aliased to its name.
+     */
+    private static boolean selectsKeyOnce(String sql, String key) {
+        List<String> items = selectList(sql);
+        if (items == null) {
+            return false;
+        }
+        int keys = 0;
+        for (String item : items) {
+            if (item.equals("*") || item.endsWith(".*")) {
+                keys++;
+                continue;
+            }
+            String expression = item;
+            String name = null;
+            Matcher aliased = ALIASED.matcher(item);
+            if (aliased.matches()) {
+                expression = aliased.group(1).trim();
+                name = TableChangedEvent.normalizeTableName(aliased.group(2));
+            }
+            boolean plain = PLAIN_COLUMN.matcher(expression).matches();
+            if (name == null) {
+                if (!plain) {
+                    // Derby names unaliased expressions by position
+                    continue;
+                }
+                name = TableChangedEvent.normalizeTableName(expression);
+            }
+            if (name.equals(key)) {
+                if (!plain || !TableChangedEvent.normalizeTableName(expression).equals(key)) {
+                    return false;
+                }
+                keys++;
+            }
+        }
+        return keys == 1;
+    }
+
+    /** Items of the outermost select list, null when it cannot be told apart */
+    private static List<String> selectList(String sql) {
+        Matcher select = SELECT.matcher(sql);
+        if (!select.find()) {
+            return null;
+        }
+        List<String> items = new ArrayList<String>();
+        int depth = 0;
+        int start = select.end();
+        char quote = 0;
+        for (int i = start; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                items.add(sql.substring(start, i).trim());
+                start = i + 1;
+            } else if (depth == 0 && sql.regionMatches(true, i, "FROM", 0, 4)
+                    && !Character.isJavaIdentifierPart(sql.charAt(i - 1))
+                    && (i + 4 == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(i + 4)))) {
+                items.add(sql.substring(start, i).trim());
+                return items;
+            }
+        }
+        return null;
+    }
+
+    /** Drops a trailing ORDER BY on the key column alone, the outer query orders by it */
+    private static String withoutKeyOrder(String sql, String key) {
+        return sql.replaceFirst("(?i)\\s+ORDER\\s+BY\\s+(?:[A-Za-z_][\\w$]*\\.)?" + Pattern.quote(key)
+                + "(?:\\s+ASC)?\\s*$", "");
+    }
+
+    private static boolean literalType(int jdbcType) {
+        switch (jdbcType) {
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String literal(Object value) {
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+
+    private Cursor cursor(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dash = token.lastIndexOf('-');
+        String id = dash < 0 ? token : token.substring(0, dash);
+        Cursor cursor;
+        synchronized (cursors) {
+            cursor = cursors.get(id.trim());
+            if (cursor != null && System.currentTimeMillis() - cursor.lastUsed > ttlMinutes * 60_000L) {
+                cursors.remove(cursor.id);
+                cursor = null;
+            }
+        }
+        if (cursor == null || !cursor.owner.equals(currentUser())) {
+            return null;
+        }
+        return cursor;
+    }
+
+    private static int pageOf(String token) {
+        int dash = token.lastIndexOf('-');
+        try {
+            return dash < 0 ? -1 : Integer.parseInt(token.substring(dash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int indexOf(String[] columns, String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Key column " + name + " missing from the page");
+    }
+
+    private static String stripSemicolon(String sql) {
+        String trimmed = sql.trim();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    private static String currentUser() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth == null ? "" : auth.getName();
+    }
+}
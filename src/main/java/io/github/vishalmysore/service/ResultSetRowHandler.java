@@ -0,0 +1,20 @@
+package io.github.vishalmysore.service;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Like a {@link RowHandler}, but reads each row itself, straight from the positioned
+ * ResultSet, so the streamer builds no Object[] for it. The byte limit is checked before
+ * each row against the sizes returned so far, the last row may cross it.
+ */
+public interface ResultSetRowHandler {
+
+    void onColumns(String[] columnNames) throws IOException;
+
+    /**
+     * @return estimated size of the row in bytes, counted against the byte limit
+     */
+    long onRow(ResultSet rs, int columnCount) throws SQLException, IOException;
+}
@@ -0,0 +1,254 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.advisor.WorkloadRecorder;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.metrics.SqlMetrics;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.*;
+
+/**
+ * Runs a SELECT with a JDBC fetch size and hands rows to a {@link RowHandler}
+ * as they are read, so nothing beyond the current fetch window is held in memory.
+ * Row-count and byte limits stop the scan early and mark the result as truncated.
+ * Statements come from the {@link StatementCache}, so repeated query shapes skip Derby's compile.
+ * Every query passes the {@link QueryGuard} first, runs with its query timeout and can be
+ * cancelled through the thread's {@link QueryCancellation}.
+ */
+@Log
+@Component
+public class ResultStreamer {
+
+    @Autowired
+    private StatementCache statementCache;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private QueryGuard queryGuard;
+
+    @Autowired
+    private WorkloadRecorder workloadRecorder;
+
+    @Autowired
+    private ReadReplicas readReplicas;
+
+    @Getter
+    @Value("${sql.query.fetch-size:500}")
+    private int fetchSize;
+
+    /** Limits for results materialized in memory by retrieveData */
+    @Getter
+    @Value("${sql.query.max-rows:10000}")
+    private long maxRows;
+
+    @Getter
+    @Value("${sql.query.max-bytes:16777216}")
+    private long maxBytes;
+
+    /** Limits for results streamed to the client, memory stays flat regardless */
+    @Getter
+    @Value("${sql.stream.max-rows:5000000}")
+    private long streamMaxRows;
+
+    @Getter
+    @Value("${sql.stream.max-bytes:2147483648}")
+    private long streamMaxBytes;
+
+    public StreamStats stream(Connection conn, String sql,
+                              long rowLimit, long byteLimit,
+                              RowHandler handler) throws SQLException, IOException {
+        return execute(conn, sql, rowLimit, byteLimit, handler, null);
+    }
+
+    /**
+     * Streams to a handler that reads the rows off the ResultSet itself.
+     */
+    public StreamStats stream(Connection conn, String sql,
+                              long rowLimit, long byteLimit,
+                              ResultSetRowHandler handler) throws SQLException, IOException {
+        return execute(conn, sql, rowLimit, byteLimit, null, handler);
+    }
+
+    public StreamStats stream(ResultSet rs,
+                              long rowLimit, long byteLimit,
+                              RowHandler handler) throws SQLException, IOException {
+        return stream(rs, rowLimit, byteLimit, handler, null);
+    }
+
+    public StreamStats stream(ResultSet rs,
+                              long rowLimit, long byteLimit,
+                              ResultSetRowHandler handler) throws SQLException, IOException {
+        return stream(rs, rowLimit, byteLimit, null, handler);
+    }
+
+    /** Exactly one of handler and direct is set */
+    private StreamStats execute(Connection conn, String sql,
+                                long rowLimit, long byteLimit,
+                                RowHandler handler, ResultSetRowHandler direct) throws SQLException, IOException {
+
+        String guarded = queryGuard.check(conn, sql, rowLimit);
+        QueryCancellation cancellation = QueryCancellation.current();
+        try (StatementCache.BoundQuery query = statementCache.prepare(conn, guarded)) {
+            PreparedStatement ps = query.getStatement();
+            // one extra row lets us tell "exactly at the limit" from "truncated"
+            int maxRows = rowLimit < Integer.MAX_VALUE ? (int) rowLimit + 1 : 0;
+            ps.setMaxRows(maxRows);
+            // Derby rejects a fetch size above the max rows, cached statements keep the last ones
+            ps.setFetchSize(maxRows > 0 ? Math.min(fetchSize, maxRows) : fetchSize);
+            ps.setQueryTimeout(queryGuard.getQueryTimeoutSeconds());
+            if (cancellation != null) {
+                cancellation.attach(ps);
+            }
+            try {
+                long start = System.nanoTime();
+                StreamStats stats;
+                try (ResultSet rs = ps.executeQuery()) {
+                    sqlMetrics.executed(System.nanoTime() - start);
+                    stats = stream(rs, rowLimit, byteLimit, handler, direct);
+                }
+                workloadRecorder.record(readReplicas.primaryUrl(conn.getMetaData().getURL()), sql, System.nanoTime() - start);
+                return stats;
+            } catch (SQLException e) {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    throw QueryCancellation.cancelledException();
+                }
+                throw e;
+            } finally {
+                if (cancellation != null) {
+                    cancellation.detach();
+                }
+            }
+        }
+    }
+
+    private StreamStats stream(ResultSet rs,
+                               long rowLimit, long byteLimit,
+                               RowHandler handler, ResultSetRowHandler direct) throws SQLException, IOException {
+
+        long start = System.nanoTime();
+        ResultSetMetaData md = rs.getMetaData();
+        int columnCount = md.getColumnCount();
+        String[] columns = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = md.getColumnLabel(i + 1);
+        }
+
+        StreamStats stats = new StreamStats();
+        try {
+            if (direct != null) {
+                direct.onColumns(columns);
+                read(rs, columnCount, rowLimit, byteLimit, direct, stats);
+            } else {
+                handler.onColumns(columns);
+                read(rs, columnCount, rowLimit, byteLimit, handler, stats);
+            }
+        } finally {
+            sqlMetrics.fetched(System.nanoTime() - start, stats.rowCount, stats.bytes);
+        }
+        if (stats.truncated) {
+            log.info("Result truncated after " + stats.rowCount + " rows / " + stats.bytes + " bytes");
+        }
+        return stats;
+    }
+
+    private void read(ResultSet rs, int columnCount,
+                      long rowLimit, long byteLimit,
+                      RowHandler handler, StreamStats stats) throws SQLException, IOException {
+        QueryCancellation cancellation = QueryCancellation.current();
+        while (rs.next()) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw QueryCancellation.cancelledException();
+            }
+            if (stats.rowCount >= rowLimit) {
+                stats.truncated = true;
+                break;
+            }
+            Object[] values = new Object[columnCount];
+            long rowBytes = 0;
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = rs.getObject(i + 1);
+                rowBytes += estimateBytes(values[i]);
+            }
+            if (stats.bytes + rowBytes > byteLimit) {
+                stats.truncated = true;
+                break;
+            }
+            stats.bytes += rowBytes;
+            stats.rowCount++;
+            handler.onRow(values);
+        }
+    }
+
+    private void read(ResultSet rs, int columnCount,
+                      long rowLimit, long byteLimit,
+                      ResultSetRowHandler handler, StreamStats stats) throws SQLException, IOException {
+        QueryCancellation cancellation = QueryCancellation.current();
+        while (rs.next()) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw QueryCancellation.cancelledException();
+            }
+            if (stats.rowCount >= rowLimit || stats.bytes >= byteLimit) {
+                stats.truncated = true;
+                break;
+            }
+            stats.bytes += handler.onRow(rs, columnCount);
+            stats.rowCount++;
+        }
+    }
+
+    /**
+     * Reads a bounded result into memory using the retrieveData limits.
+     */
+    public QueryResult collect(Connection conn, String sql) throws SQLException {
+        final QueryResult result = new QueryResult();
+        try {
+            StreamStats stats = stream(conn, sql, maxRows, maxBytes, new RowHandler() {
+                @Override
+                public void onColumns(String[] columnNames) {
+                    result.setColumns(columnNames);
+                }
+
+                @Override
+                public void onRow(Object[] values) {
+                    result.getRows().add(values);
+                }
+            });
+            result.setRowCount(stats.getRowCount());
+            result.setTruncated(stats.isTruncated());
+        } catch (IOException e) {
+            // in-memory handler never writes anywhere
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 8;
+        }
+        return String.valueOf(value).length();
+    }
+
+    @Getter
+    public static class StreamStats {
+        private long rowCount;
+        private long bytes;
+        private boolean truncated;
+    }
+}
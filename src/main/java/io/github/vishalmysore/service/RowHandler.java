@@ -0,0 +1,14 @@
+package io.github.vishalmysore.service;
+
+import java.io.IOException;
+
+/**
+ * Receives a result set one row at a time. Column names are resolved once and
+ * handed over before the first row, rows arrive as positional arrays.
+ */
+public interface RowHandler {
+
+    void onColumns(String[] columnNames) throws IOException;
+
+    void onRow(Object[] values) throws IOException;
+}
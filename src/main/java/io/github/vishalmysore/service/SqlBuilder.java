@@ -0,0 +1,47 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.TableData;
+
+import java.util.List;
+
+/**
+ * DDL and DML text shared by the actions and the bulk paths.
+ */
+public final class SqlBuilder {
+
+    private SqlBuilder() {
+    }
+
+    public static String createTable(TableData tableData) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE ");
+        sql.append(tableData.getTableName()).append(" (");
+
+        for (ColumnData c : tableData.getHeaderList()) {
+            sql.append(c.getColumnName())
+                    .append(" ")
+                    .append(c.getSqlColumnType())
+                    .append(", ");
+        }
+
+        sql.setLength(sql.length() - 2);
+        sql.append(")");
+        return sql.toString();
+    }
+
+    public static String insert(String tableName, List<String> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ");
+        sql.append(tableName).append(" (");
+        for (String column : columns) {
+            sql.append(column).append(", ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append("?, ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(")");
+        return sql.toString();
+    }
+}
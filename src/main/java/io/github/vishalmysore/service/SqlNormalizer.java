@@ -0,0 +1,217 @@
+package io.github.vishalmysore.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns literals of an LLM generated SELECT into JDBC parameters, so queries that
+ * only differ in their literals share one prepared statement and one Derby plan.
+ * <p>
+ * Only literals in a comparison position are replaced (after =, &lt;&gt;, &lt;, &gt;, LIKE,
+ * BETWEEN .. AND and inside IN lists). Literals in the select list, ORDER BY or
+ * FETCH FIRST clauses are left untouched because Derby cannot type a bare parameter there.
+ */
+public final class SqlNormalizer {
+
+    private static final String BETWEEN_AND = "BETWEEN AND";
+
+    private SqlNormalizer() {
+    }
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class NormalizedQuery {
+        private final String sql;
+        private final List<Object> parameters;
+
+        public boolean isParameterized() {
+            return !parameters.isEmpty();
+        }
+    }
+
+    public static NormalizedQuery normalize(String sql) {
+        NormalizedQuery unchanged = new NormalizedQuery(sql, Collections.emptyList());
+        if (sql.indexOf('?') >= 0) {
+            // already parameterized or unparsable for us, leave it alone
+            return unchanged;
+        }
+
+        StringBuilder out = new StringBuilder(sql.length());
+        List<Object> params = new ArrayList<Object>();
+        String prev = "";
+        int depth = 0;
+        int inListDepth = -1;
+        boolean betweenOpen = false;
+        int n = sql.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                out.append(c);
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                end = end < 0 ? n : end;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '\'') {
+                StringBuilder literal = new StringBuilder();
+                int end = i + 1;
+                while (end < n) {
+                    char d = sql.charAt(end);
+                    if (d == '\'') {
+                        if (end + 1 < n && sql.charAt(end + 1) == '\'') {
+                            literal.append('\'');
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    literal.append(d);
+                    end++;
+                }
+                if (end >= n) {
+                    return unchanged;
+                }
+                if (isParameterPosition(prev, depth, inListDepth)) {
+                    out.append('?');
+                    params.add(literal.toString());
+                } else {
+                    out.append(sql, i, end + 1);
+                }
+                prev = "'";
+                i = end + 1;
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+                if (end < 0) {
+                    return unchanged;
+                }
+                out.append(sql, i, end + 1);
+                prev = "\"";
+                i = end + 1;
+            } else if (isNumberStart(sql, i, prev, depth, inListDepth)) {
+                int end = i + 1;
+                while (end < n && isNumberPart(sql, end)) {
+                    end++;
+                }
+                String number = sql.substring(i, end);
+                if (isParameterPosition(prev, depth, inListDepth)) {
+                    Object value = parseNumber(number);
+                    if (value == null) {
+                        return unchanged;
+                    }
+                    out.append('?');
+                    params.add(value);
+                } else {
+                    out.append(number);
+                }
+                prev = "0";
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i + 1;
+                while (end < n && (Character.isLetterOrDigit(sql.charAt(end))
+                        || sql.charAt(end) == '_' || sql.charAt(end) == '$')) {
+                    end++;
+                }
+                String word = sql.substring(i, end).toUpperCase(Locale.ROOT);
+                out.append(sql, i, end);
+                if ("BETWEEN".equals(word)) {
+                    betweenOpen = true;
+                } else if ("AND".equals(word) && betweenOpen) {
+                    betweenOpen = false;
+                    word = BETWEEN_AND;
+                }
+                prev = word;
+                i = end;
+            } else if (c == '<' || c == '>' || c == '=' || c == '!') {
+                int end = i + 1;
+                while (end < n && "<>=".indexOf(sql.charAt(end)) >= 0) {
+                    end++;
+                }
+                out.append(sql, i, end);
+                prev = sql.substring(i, end);
+                i = end;
+            } else {
+                if (c == '(') {
+                    depth++;
+                    if ("IN".equals(prev)) {
+                        inListDepth = depth;
+                    }
+                } else if (c == ')') {
+                    if (depth == inListDepth) {
+                        inListDepth = -1;
+                    }
+                    depth--;
+                }
+                out.append(c);
+                prev = String.valueOf(c);
+                i++;
+            }
+        }
+
+        if (params.isEmpty()) {
+            return unchanged;
+        }
+        return new NormalizedQuery(out.toString(), params);
+    }
+
+    private static boolean isParameterPosition(String prev, int depth, int inListDepth) {
+        if (depth == inListDepth) {
+            return "(".equals(prev) || ",".equals(prev);
+        }
+        return "=".equals(prev) || "<>".equals(prev) || "!=".equals(prev)
+                || "<".equals(prev) || ">".equals(prev)
+                || "<=".equals(prev) || ">=".equals(prev)
+                || "LIKE".equals(prev) || "BETWEEN".equals(prev) || BETWEEN_AND.equals(prev);
+    }
+
+    private static boolean isNumberStart(String sql, int i, String prev, int depth, int inListDepth) {
+        char c = sql.charAt(i);
+        boolean nextIsDigit = i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1));
+        if (Character.isDigit(c)) {
+            return true;
+        }
+        if (c == '.') {
+            return nextIsDigit;
+        }
+        // a sign only belongs to the literal when it directly follows a comparison
+        return (c == '-' || c == '+') && nextIsDigit && isParameterPosition(prev, depth, inListDepth);
+    }
+
+    private static boolean isNumberPart(String sql, int i) {
+        char c = sql.charAt(i);
+        if (Character.isDigit(c) || c == '.' || c == 'e' || c == 'E') {
+            return true;
+        }
+        char before = sql.charAt(i - 1);
+        return (c == '-' || c == '+') && (before == 'e' || before == 'E');
+    }
+
+    private static Object parseNumber(String number) {
+        try {
+            if (number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                return Double.valueOf(number);
+            }
+            if (number.indexOf('.') >= 0) {
+                return new BigDecimal(number);
+            }
+            long value = Long.parseLong(number);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.event.TableChangedEvent;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Best effort extraction of the tables a SELECT reads, good enough for cache
+ * invalidation. Names are returned in the form used by {@link TableChangedEvent}.
+ * Tables read by subqueries, derived tables included, are part of the result.
+ */
+public final class SqlTables {
+
+    private static final Pattern FROM = Pattern.compile("\\bFROM\\s+", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern CLAUSE_END = Pattern.compile(
+            "(?:WHERE|GROUP|ORDER|HAVING|FETCH|OFFSET|UNION|EXCEPT|INTERSECT|INNER|LEFT|RIGHT|FULL|CROSS|JOIN)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern JOIN_TABLE = Pattern.compile(
+            "\\bJOIN\\s+([\\w.$\"]+)", Pattern.CASE_INSENSITIVE);
+
+    private SqlTables() {
+    }
+
+    public static Set<String> tablesIn(String sql) {
+        Set<String> tables = new LinkedHashSet<String>();
+        Matcher from = FROM.matcher(sql);
+        Matcher clauseEnd = CLAUSE_END.matcher(sql);
+        while (from.find()) {
+            // the FROM list runs to its closing ')' or the next clause, derived tables in
+            // it are skipped here and read when the search reaches their own FROM
+            StringBuilder item = new StringBuilder();
+            int depth = 0;
+            for (int i = from.end(); i <= sql.length(); i++) {
+                char c = i < sql.length() ? sql.charAt(i) : ')';
+                if (depth == 0 && (c == ',' || c == ')' || startsClause(clauseEnd, sql, i))) {
+                    addItem(tables, item.toString().trim());
+                    item.setLength(0);
+                    if (c != ',') {
+                        break;
+                    }
+                    continue;
+                }
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                item.append(c);
+            }
+        }
+        Matcher join = JOIN_TABLE.matcher(sql);
+        while (join.find()) {
+            tables.add(TableChangedEvent.normalizeTableName(join.group(1)));
+        }
+        return tables;
+    }
+
+    private static boolean startsClause(Matcher clauseEnd, String sql, int i) {
+        if (i == 0 || Character.isLetterOrDigit(sql.charAt(i - 1)) || sql.charAt(i - 1) == '_') {
+            return false;
+        }
+        clauseEnd.region(i, sql.length());
+        return clauseEnd.lookingAt();
+    }
+
+    private static void addItem(Set<String> tables, String item) {
+        if (!item.isEmpty() && !item.startsWith("(")) {
+            tables.add(TableChangedEvent.normalizeTableName(item.split("\\s+")[0]));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.vishalmysore.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of prepared statements per physical pooled connection, keyed by the
+ * normalized SQL text from {@link SqlNormalizer}. A hit skips both the JDBC prepare
+ * and Derby's parse/compile phase.
+ * <p>
+ * Statements are prepared on the unwrapped Derby connection so they outlive the
+ * pool's per-checkout proxy. A physical connection is only ever used by one thread
+ * at a time, so the per-connection maps need no locking of their own.
+ * <p>
+ * Cached statements reference their connection, so a weak key would never clear. Instead
+ * the entries of connections the pool has closed are dropped whenever a new physical
+ * connection shows up, which is when the pool replaces a retired one.
+ */
+@Log
+@Component
+public class StatementCache {
+
+    @Value("${sql.statement-cache.size:64}")
+    private int cacheSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Connection, Map<String, PreparedStatement>> caches =
+            Collections.synchronizedMap(new IdentityHashMap<Connection, Map<String, PreparedStatement>>());
+
+    /** Normalized texts Derby refused to prepare, so we go straight to the literal SQL */
+    private final Set<String> rejected = Collections.newSetFromMap(
+            Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > 1024;
+                }
+            }));
+
+    @Getter
+    private final AtomicLong hits = new AtomicLong();
+    @Getter
+    private final AtomicLong misses = new AtomicLong();
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter fallbackCounter;
+    private Timer prepareTimer;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = meterRegistry.counter("sql.statement.cache", "result", "hit");
+        missCounter = meterRegistry.counter("sql.statement.cache", "result", "miss");
+        fallbackCounter = meterRegistry.counter("sql.statement.cache", "result", "fallback");
+        prepareTimer = Timer.builder("sql.prepare")
+                .description("JDBC prepare, i.e. Derby parse and compile, on cache misses")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Prepares the query with its literals bound as parameters. Falls back to the
+     * original text when Derby cannot type one of the generated parameters.
+     */
+    public BoundQuery prepare(Connection conn, String sql) throws SQLException {
+        SqlNormalizer.NormalizedQuery normalized = SqlNormalizer.normalize(sql);
+        if (normalized.isParameterized() && !rejected.contains(normalized.getSql())) {
+            try {
+                BoundQuery query = lookup(conn, normalized.getSql());
+                bind(query.getStatement(), normalized.getParameters());
+                return query;
+            } catch (SQLException e) {
+                log.fine("Parameterized form rejected, using literal SQL: " + e.getMessage());
+                rejected.add(normalized.getSql());
+                fallbackCounter.increment();
+            }
+        }
+        return lookup(conn, sql);
+    }
+
+    private BoundQuery lookup(Connection conn, String key) throws SQLException {
+        if (cacheSize <= 0) {
+            miss();
+            return new BoundQuery(compile(conn, key), false);
+        }
+        Connection physical = conn.unwrap(Connection.class);
+        Map<String, PreparedStatement> cache = caches.get(physical);
+        if (cache == null) {
+            evictClosed();
+            cache = newLru();
+            caches.put(physical, cache);
+        }
+        PreparedStatement ps = cache.get(key);
+        if (ps != null && !ps.isClosed()) {
+            hits.incrementAndGet();
+            hitCounter.increment();
+            return new BoundQuery(ps, true);
+        }
+        miss();
+        ps = compile(physical, key);
+        cache.put(key, ps);
+        return new BoundQuery(ps, true);
+    }
+
+    private PreparedStatement compile(Connection conn, String sql) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return conn.prepareStatement(sql);
+        } finally {
+            prepareTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Drops the statements of physical connections that are closed */
+    private void evictClosed() {
+        synchronized (caches) {
+            Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> it = caches.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Connection, Map<String, PreparedStatement>> entry = it.next();
+                boolean closed;
+                try {
+                    closed = entry.getKey().isClosed();
+                } catch (SQLException e) {
+                    closed = true;
+                }
+                if (closed) {
+                    for (PreparedStatement ps : entry.getValue().values()) {
+                        try {
+                            ps.close();
+                        } catch (SQLException e) {
+                            log.fine("Could not close statement of a closed connection: " + e.getMessage());
+                        }
+                    }
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void miss() {
+        misses.incrementAndGet();
+        missCounter.increment();
+    }
+
+    private Map<String, PreparedStatement> newLru() {
+        return new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= cacheSize) {
+                    return false;
+                }
+                try {
+                    eldest.getValue().close();
+                } catch (SQLException e) {
+                    log.fine("Could not close evicted statement: " + e.getMessage());
+                }
+                return true;
+            }
+        };
+    }
+
+    private static void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /**
+     * A prepared statement with its parameters bound. Closing it keeps cached
+     * statements open for the next caller and closes uncached ones.
+     */
+    @Getter
+    public static class BoundQuery implements AutoCloseable {
+        private final PreparedStatement statement;
+        private final boolean cached;
+
+        BoundQuery(PreparedStatement statement, boolean cached) {
+            this.statement = statement;
+            this.cached = cached;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (cached) {
+                statement.clearParameters();
+            } else {
+                statement.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.vishalmysore.ui;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed builders for the A2UI components the agent renders, in the A2UI component shape
+ * {@code {"id": ..., "component": {"<Type>": {...}}}}. They return {@link UiNode}s, which
+ * cost one small array per node where a HashMap tree cost a table and entries per level.
+ */
+public final class A2UIComponents {
+
+    private A2UIComponents() {
+    }
+
+    public static UiNode literal(String value) {
+        return UiNode.of("literalString", value);
+    }
+
+    public static UiNode text(String id, String text, String usageHint) {
+        UiNode props = usageHint == null
+                ? UiNode.of("text", literal(text))
+                : UiNode.of("text", literal(text), "usageHint", usageHint);
+        return component(id, "Text", props);
+    }
+
+    public static UiNode row(String id, List<String> children) {
+        return component(id, "Row", UiNode.of("children", UiNode.of("explicitList", children)));
+    }
+
+    public static UiNode column(String id, List<String> children) {
+        return component(id, "Column", UiNode.of("children", UiNode.of("explicitList", children)));
+    }
+
+    public static UiNode textField(String id, String label) {
+        return component(id, "TextField", UiNode.of("label", literal(label), "text", literal("")));
+    }
+
+    /**
+     * Button that sends the named action with one context value when clicked.
+     */
+    public static UiNode button(String id, String childId, String actionName,
+                                String contextKey, String contextValue) {
+        UiNode context = UiNode.of("key", contextKey, "value", literal(contextValue));
+        UiNode action = UiNode.of("name", actionName, "context", Collections.singletonList(context));
+        return component(id, "Button", UiNode.of("child", childId, "action", action));
+    }
+
+    private static UiNode component(String id, String type, UiNode props) {
+        return UiNode.of("id", id, "component", UiNode.of(type, props));
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.vishalmysore.ui;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One node of an A2UI payload: an immutable map with a handful of fixed keys, stored as a
+ * single key/value array instead of a HashMap with its table and entry objects. It is still
+ * a {@code Map}, so it can be passed to {@code A2UIAware.buildA2UIMessage}. Jackson writes
+ * it with {@link Serializer}, field by field, without going through the map serializer.
+ * Nodes never change after construction, so constant ones can be shared between responses.
+ */
+@JsonSerialize(using = UiNode.Serializer.class)
+public final class UiNode extends AbstractMap<String, Object> {
+
+    /** key, value, key, value, ... */
+    private final Object[] entries;
+
+    private UiNode(Object... entries) {
+        this.entries = entries;
+    }
+
+    public static UiNode of(String key, Object value) {
+        return new UiNode(key, value);
+    }
+
+    public static UiNode of(String k1, Object v1, String k2, Object v2) {
+        return new UiNode(k1, v1, k2, v2);
+    }
+
+    public static UiNode of(String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        return new UiNode(k1, v1, k2, v2, k3, v3);
+    }
+
+    public static UiNode of(String k1, Object v1, String k2, Object v2, String k3, Object v3,
+                            String k4, Object v4) {
+        return new UiNode(k1, v1, k2, v2, k3, v3, k4, v4);
+    }
+
+    @Override
+    public Object get(Object key) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i].equals(key)) {
+                return entries[i + 1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < entries.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= entries.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry =
+                                new SimpleImmutableEntry<String, Object>((String) entries[next], entries[next + 1]);
+                        next += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.length / 2;
+            }
+        };
+    }
+
+    public static class Serializer extends StdSerializer<UiNode> {
+
+        public Serializer() {
+            super(UiNode.class);
+        }
+
+        @Override
+        public void serialize(UiNode node, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            Object[] entries = node.entries;
+            for (int i = 0; i < entries.length; i += 2) {
+                gen.writeFieldName((String) entries[i]);
+                Object value = entries[i + 1];
+                if (value instanceof UiNode) {
+                    serialize((UiNode) value, gen, provider);
+                } else if (value instanceof String) {
+                    gen.writeString((String) value);
+                } else {
+                    provider.defaultSerializeValue(value, gen);
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+}
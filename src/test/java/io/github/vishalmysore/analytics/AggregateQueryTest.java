@@ -0,0 +1,115 @@
+package io.github.vishalmysore.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregateQueryTest {
+
+    @Test
+    void parsesGroupedAggregate() {
+        AggregateQuery query = AggregateQuery.parse(
+                "select region, SUM(amount) AS total, count(*) from sales " +
+                        "where year >= 2020 and region <> 'it''s' group by region;");
+        assertNotNull(query);
+        assertEquals("SALES", query.getTable());
+        assertEquals(Collections.singletonList("REGION"), query.getGroupBy());
+
+        assertEquals(3, query.getItems().size());
+        AggregateQuery.Item group = query.getItems().get(0);
+        assertNull(group.getFunction());
+        assertEquals("REGION", group.getLabel());
+        AggregateQuery.Item sum = query.getItems().get(1);
+        assertEquals(AggregateQuery.Function.SUM, sum.getFunction());
+        assertEquals("AMOUNT", sum.getColumn());
+        assertEquals("TOTAL", sum.getLabel());
+        AggregateQuery.Item count = query.getItems().get(2);
+        assertEquals(AggregateQuery.Function.COUNT, count.getFunction());
+        assertNull(count.getColumn());
+        // Derby labels unnamed expressions by position
+        assertEquals("3", count.getLabel());
+
+        assertEquals(2, query.getFilters().size());
+        AggregateQuery.Filter year = query.getFilters().get(0);
+        assertEquals("YEAR", year.getColumn());
+        assertEquals(AggregateQuery.Operator.GE, year.getOperator());
+        assertEquals(new BigDecimal("2020"), year.getLiteral());
+        assertEquals("it's", query.getFilters().get(1).getLiteral());
+
+        assertEquals(new java.util.HashSet<String>(Arrays.asList("REGION", "AMOUNT", "YEAR")), query.columns());
+    }
+
+    @Test
+    void parsesSignedLiteralsAndNullChecks() {
+        AggregateQuery query = AggregateQuery.parse(
+                "SELECT MIN(price) low FROM items WHERE price > -1.5 AND qty != +3 AND name IS NOT NULL");
+        assertNotNull(query);
+        assertEquals("LOW", query.getItems().get(0).getLabel());
+        assertEquals(new BigDecimal("-1.5"), query.getFilters().get(0).getLiteral());
+        assertEquals(AggregateQuery.Operator.NE, query.getFilters().get(1).getOperator());
+        assertEquals(new BigDecimal("3"), query.getFilters().get(1).getLiteral());
+        assertEquals(AggregateQuery.Operator.IS_NOT_NULL, query.getFilters().get(2).getOperator());
+        assertNull(query.getFilters().get(2).getLiteral());
+    }
+
+    @Test
+    void rejectsShapesThatStayWithDerby() {
+        String[] rejected = {
+                null,
+                "SELECT a FROM t",
+                "SELECT a, COUNT(*) FROM t",
+                "SELECT SUM(*) FROM t",
+                "SELECT MEDIAN(a) FROM t",
+                "SELECT COUNT(*) FROM t WHERE a = 1 OR b = 2",
+                "SELECT COUNT(*) FROM t JOIN u ON t.id = u.id",
+                "SELECT COUNT(DISTINCT a) FROM t",
+                "SELECT a, COUNT(*) FROM t GROUP BY a HAVING COUNT(*) > 1",
+                "SELECT a, COUNT(*) FROM t GROUP BY a ORDER BY a",
+                "SELECT COUNT(*) FROM app.t",
+                "SELECT COUNT(*) FROM \"t\"",
+                "SELECT SUM(a + 1) FROM t",
+                "SELECT COUNT(*) FROM t WHERE a = b",
+                "SELECT COUNT(*) FROM t WHERE a = -'x'",
+                "SELECT COUNT(*) FROM t WHERE a = 'open",
+                "SELECT COUNT(*) FROM t WHERE a IN (1, 2)",
+                "SELECT COUNT(*) FROM t FETCH FIRST 1 ROWS ONLY"
+        };
+        for (String sql : rejected) {
+            assertNull(AggregateQuery.parse(sql), sql);
+        }
+    }
+
+    @Test
+    void parsesPlainSelections() {
+        AggregateQuery star = AggregateQuery.parseSelection("SELECT * FROM orders WHERE status = 'NEW'");
+        assertNotNull(star);
+        assertTrue(star.isStar());
+        assertTrue(star.getItems().isEmpty());
+        assertEquals("ORDERS", star.getTable());
+        assertEquals("NEW", star.getFilters().get(0).getLiteral());
+
+        AggregateQuery columns = AggregateQuery.parseSelection("SELECT id, total AS amount FROM orders");
+        assertNotNull(columns);
+        assertFalse(columns.isStar());
+        assertEquals(2, columns.getItems().size());
+        assertEquals("AMOUNT", columns.getItems().get(1).getLabel());
+        assertEquals("TOTAL", columns.getItems().get(1).getColumn());
+    }
+
+    @Test
+    void selectionRejectsAggregatesAndGrouping() {
+        assertNull(AggregateQuery.parseSelection("SELECT COUNT(*) FROM orders"));
+        assertNull(AggregateQuery.parseSelection("SELECT status FROM orders GROUP BY status"));
+        assertNull(AggregateQuery.parseSelection("SELECT * FROM orders ORDER BY id"));
+        // and the aggregate parser does not take plain selections
+        assertNull(AggregateQuery.parse("SELECT * FROM orders"));
+    }
+}
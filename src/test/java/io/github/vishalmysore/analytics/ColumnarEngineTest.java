@@ -0,0 +1,239 @@
+package io.github.vishalmysore.analytics;
+
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ColumnData;
+import io.github.vishalmysore.data.QueryResult;
+import io.github.vishalmysore.data.RowData;
+import io.github.vishalmysore.data.TableData;
+import io.github.vishalmysore.service.ReadReplicas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every aggregate shape the engine accepts on embedded Derby and on the columnar copy
+ * of the same table and expects the same labels, values and value types.
+ */
+class ColumnarEngineTest {
+
+    private static final String URL = "jdbc:derby:memory:columnarEngineTest";
+
+    private static final String[] REGIONS = {"north", "South", "east", "West", "Zed"};
+
+    /** More rows than one chunk, so partial groups of parallel scans are merged */
+    private static final int ROWS = 5000;
+
+    private static final String[] QUERIES = {
+            "SELECT COUNT(*), COUNT(amount), SUM(amount), AVG(amount), MIN(amount), MAX(amount) FROM sales",
+            "SELECT region, COUNT(*), SUM(amount), AVG(amount) FROM sales GROUP BY region",
+            // integer AVG truncates towards zero, negative averages included
+            "SELECT qty, AVG(amount), AVG(qty) FROM sales WHERE amount < 0 GROUP BY qty",
+            "SELECT region, qty, AVG(qty), MIN(price), MAX(price) AS top, SUM(price) FROM sales GROUP BY region, qty",
+            "SELECT MIN(region), MAX(region), COUNT(region) FROM sales",
+            "SELECT qty, MIN(region) AS lowest, MAX(region) FROM sales WHERE amount > 0 GROUP BY qty",
+            "SELECT COUNT(*), SUM(big), AVG(price), AVG(big) FROM sales WHERE region = 'east' AND price >= 10.5",
+            "SELECT region, COUNT(price) FROM sales WHERE amount IS NULL GROUP BY region",
+            "SELECT AVG(amount), SUM(qty) FROM sales WHERE region <> 'north' AND qty <= 2 AND price IS NOT NULL",
+            "SELECT big, COUNT(*) FROM sales WHERE id < 50 GROUP BY big",
+            "SELECT COUNT(*), SUM(amount), MIN(region), AVG(price) FROM sales WHERE amount > 100000",
+            "SELECT region, COUNT(*) FROM sales WHERE amount > 100000 GROUP BY region"
+    };
+
+    private Connection conn;
+    private ColumnarEngine engine;
+    private SchemaCatalog schemaCatalog;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        conn = DriverManager.getConnection(URL + ";create=true");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE sales (id INT, region VARCHAR(20), amount INT, price DOUBLE,"
+                    + " qty SMALLINT, big BIGINT)");
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO sales VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                Object[] row = row(i);
+                for (int c = 0; c < row.length; c++) {
+                    ps.setObject(c + 1, row[c]);
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        schemaCatalog = new SchemaCatalog();
+        ReflectionTestUtils.setField(schemaCatalog, "readReplicas", new ReadReplicas());
+
+        engine = new ColumnarEngine();
+        ReflectionTestUtils.setField(engine, "enabled", true);
+        ReflectionTestUtils.setField(engine, "chunkRows", 1024);
+        ReflectionTestUtils.setField(engine, "parallelism", 4);
+        ReflectionTestUtils.setField(engine, "maxResultRows", 10000);
+        ReflectionTestUtils.setField(engine, "meterRegistry", new SimpleMeterRegistry());
+        engine.init();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        engine.stop();
+        conn.close();
+        try {
+            DriverManager.getConnection(URL + ";drop=true");
+        } catch (SQLException e) {
+            // 08006: the in-memory database was dropped
+            assertEquals("08006", e.getSQLState());
+        }
+    }
+
+    @Test
+    void matchesDerbyOnEverySupportedShape() throws SQLException {
+        ColumnarTable table = copy("SALES");
+        for (String sql : QUERIES) {
+            assertSameResult(sql, table);
+        }
+    }
+
+    @Test
+    void matchesDerbyAfterAppendingInsertedRows() throws SQLException {
+        ColumnarTable table = copy("SALES");
+        TableData inserted = new TableData();
+        inserted.setTableName("sales");
+        List<RowData> rows = new ArrayList<RowData>();
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO sales VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = ROWS; i < ROWS + 300; i++) {
+                Object[] row = row(i);
+                for (int c = 0; c < row.length; c++) {
+                    ps.setObject(c + 1, row[c]);
+                }
+                ps.addBatch();
+                rows.add(rowData(row));
+            }
+            ps.executeBatch();
+        }
+        inserted.setRowDataList(rows);
+
+        assertTrue(table.append(inserted, Integer.MAX_VALUE));
+        assertEquals(ROWS + 300, table.getRowCount());
+        for (String sql : QUERIES) {
+            assertSameResult(sql, table);
+        }
+    }
+
+    @Test
+    void groupsOfValuesDifferingInTrailingSpacesStayWithDerby() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE notes (k VARCHAR(10), n INT)");
+            stmt.execute("INSERT INTO notes VALUES ('a', 1), ('a ', 2), ('b', 3)");
+        }
+        ColumnarTable table = copy("NOTES");
+        assertNull(execute(table, "SELECT k, COUNT(*) FROM notes GROUP BY k"));
+        // filters compare like Derby, padded or not
+        assertSameResult("SELECT COUNT(*), SUM(n), MIN(k) FROM notes WHERE k = 'a'", table);
+        assertSameResult("SELECT COUNT(*), SUM(n) FROM notes WHERE k <> 'a  '", table);
+    }
+
+    /** Deterministic rows with NULLs, negatives and doubles whose sums are exact */
+    private static Object[] row(int i) {
+        return new Object[]{
+                i,
+                i % 7 == 0 ? null : REGIONS[i % REGIONS.length],
+                i % 11 == 0 ? null : (i * 37) % 1000 - 300,
+                i % 13 == 0 ? null : (i % 97) * 0.25,
+                i % 17 == 0 ? null : (short) (i % 5),
+                (long) (i % 40) * 100_000_000L
+        };
+    }
+
+    private static RowData rowData(Object[] row) {
+        String[] names = {"ID", "REGION", "AMOUNT", "PRICE", "QTY", "BIG"};
+        List<ColumnData> cells = new ArrayList<ColumnData>();
+        for (int c = 0; c < names.length; c++) {
+            ColumnData cell = new ColumnData();
+            cell.setColumnName(names[c]);
+            cell.setColumnValue(row[c] == null ? null : row[c].toString());
+            cells.add(cell);
+        }
+        RowData rowData = new RowData();
+        rowData.setColumnDataList(cells);
+        return rowData;
+    }
+
+    private ColumnarTable copy(String tableName) throws SQLException {
+        SchemaCatalog.Table meta = schemaCatalog.table(conn, tableName);
+        assertNotNull(meta, tableName);
+        ColumnarTable table = ColumnarTable.load(conn, meta, Integer.MAX_VALUE, 500);
+        assertNotNull(table, tableName);
+        return table;
+    }
+
+    private QueryResult execute(ColumnarTable table, String sql) {
+        AggregateQuery query = AggregateQuery.parse(sql);
+        assertNotNull(query, sql);
+        return ReflectionTestUtils.invokeMethod(engine, "execute", table, query);
+    }
+
+    private void assertSameResult(String sql, ColumnarTable table) throws SQLException {
+        QueryResult columnar = execute(table, sql);
+        assertNotNull(columnar, sql);
+
+        List<String> labels = new ArrayList<String>();
+        List<List<Object>> expected = new ArrayList<List<Object>>();
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int c = 1; c <= meta.getColumnCount(); c++) {
+                labels.add(meta.getColumnLabel(c));
+            }
+            while (rs.next()) {
+                List<Object> row = new ArrayList<Object>();
+                for (int c = 1; c <= labels.size(); c++) {
+                    row.add(rs.getObject(c));
+                }
+                expected.add(row);
+            }
+        }
+        List<List<Object>> actual = new ArrayList<List<Object>>();
+        for (Object[] row : columnar.getRows()) {
+            actual.add(Arrays.asList(row));
+        }
+
+        assertEquals(labels, Arrays.asList(columnar.getColumns()), sql);
+        // Derby does not promise an order without ORDER BY
+        assertEquals(sorted(expected), sorted(actual), sql);
+        assertEquals(types(sorted(expected)), types(sorted(actual)), sql);
+    }
+
+    private static List<List<Object>> sorted(List<List<Object>> rows) {
+        List<List<Object>> copy = new ArrayList<List<Object>>(rows);
+        copy.sort(Comparator.comparing(Object::toString));
+        return copy;
+    }
+
+    private static List<String> types(List<List<Object>> rows) {
+        List<String> types = new ArrayList<String>();
+        for (List<Object> row : rows) {
+            for (Object value : row) {
+                types.add(value == null ? "null" : value.getClass().getSimpleName());
+            }
+        }
+        return types;
+    }
+}
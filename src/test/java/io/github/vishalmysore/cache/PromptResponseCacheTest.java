@@ -0,0 +1,53 @@
+package io.github.vishalmysore.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PromptResponseCacheTest {
+
+    private PromptResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PromptResponseCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(cache, "keyMode", PromptResponseCache.KeyMode.SIMILARITY);
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.92);
+        ReflectionTestUtils.setField(cache, "embedder", new HashingPromptEmbedder());
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        cache.init();
+    }
+
+    @Test
+    void similarPromptWithOtherNumbersIsAMiss() {
+        cache.put("sales in 2023 over 500", "answer 2023", Collections.singleton("SALES"), cache.currentEpoch());
+        assertNull(cache.get("sales in 2024 over 600"));
+        assertNull(cache.get("sales in 2023 over 600"));
+        assertNull(cache.get("sales over 500 in 2023"));
+        assertEquals("answer 2023", cache.get("sales in 2023 over 500"));
+    }
+
+    @Test
+    void similarPromptWithTheSameLiteralsIsAHit() {
+        cache.put("list the orders of customer 'Smith' above 250", "smith orders",
+                Collections.singleton("ORDERS"), cache.currentEpoch());
+        assertEquals("smith orders", cache.get("list all the orders of customer 'Smith' above 250"));
+        assertNull(cache.get("list all the orders of customer 'Jones' above 250"));
+    }
+
+    @Test
+    void literalsKeepSignsAndDecimals() {
+        assertEquals(Arrays.asList("-5", "1.5", "'a b'", "\"x\""),
+                PromptResponseCache.literals("below -5 and over 1.5 for 'a b' and \"x\""));
+    }
+}
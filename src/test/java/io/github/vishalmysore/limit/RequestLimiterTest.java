@@ -0,0 +1,160 @@
+package io.github.vishalmysore.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RequestLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new RequestLimiter();
+        set("enabled", true);
+        set("adminPromptsPerMinute", 6000d);
+        set("adminActionsPerMinute", 6000d);
+        set("userPromptsPerMinute", 6000d);
+        set("userActionsPerMinute", 6000d);
+        set("burstSeconds", 10d);
+        set("llmMaxConcurrent", 1);
+        set("queryMaxConcurrent", 2);
+        set("queryActions", new String[]{"retrieveData", "streamQuery"});
+        set("maxPerPrincipal", 1);
+        set("queueTimeoutMs", 50L);
+        set("maxQueued", 64);
+        set("meterRegistry", meterRegistry);
+    }
+
+    @AfterEach
+    void clearCaller() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void principalLimitRejectionLeavesTheSlotFree() {
+        limiter.init();
+        as("alice");
+        RequestLimiter.Permit first = limiter.acquireAction("retrieveData");
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquireAction("retrieveData"));
+        assertEquals("query", e.getGate());
+        assertEquals("principal", e.getKind());
+
+        // the rejected call took neither a slot nor alice's count
+        as("bob");
+        limiter.acquireAction("streamQuery").close();
+        as("alice");
+        first.close();
+        limiter.acquireAction("retrieveData").close();
+    }
+
+    @Test
+    void timeoutRollsBackThePrincipalCount() {
+        set("queryMaxConcurrent", 1);
+        limiter.init();
+        as("alice");
+        RequestLimiter.Permit held = limiter.acquireAction("retrieveData");
+        as("bob");
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquireAction("retrieveData"));
+        assertEquals("timeout", e.getKind());
+
+        as("alice");
+        held.close();
+        // bob would be over his limit of one had the timed out call kept its count
+        as("bob");
+        limiter.acquireAction("retrieveData").close();
+    }
+
+    @Test
+    void fullQueueRejectsAtOnceAndRollsBack() {
+        set("queryMaxConcurrent", 1);
+        set("maxQueued", 0);
+        limiter.init();
+        as("alice");
+        RequestLimiter.Permit held = limiter.acquireAction("retrieveData");
+        as("bob");
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquireAction("retrieveData"));
+        assertEquals("queue-full", e.getKind());
+
+        held.close();
+        limiter.acquireAction("retrieveData").close();
+    }
+
+    @Test
+    void closingTwiceReleasesOneSlot() {
+        set("queryMaxConcurrent", 1);
+        limiter.init();
+        as("alice");
+        RequestLimiter.Permit permit = limiter.acquireAction("retrieveData");
+        permit.close();
+        permit.close();
+
+        RequestLimiter.Permit held = limiter.acquireAction("retrieveData");
+        as("bob");
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquireAction("retrieveData"));
+        assertEquals("timeout", e.getKind());
+        held.close();
+    }
+
+    @Test
+    void rateLimitRejectsOnceTheBurstIsSpent() {
+        set("userActionsPerMinute", 60d);
+        set("burstSeconds", 1d);
+        set("queueTimeoutMs", 0L);
+        limiter.init();
+        as("alice");
+        limiter.acquireAction("listTables").close();
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquireAction("listTables"));
+        assertEquals("rate", e.getGate());
+        assertEquals("listTables", e.getKind());
+        assertEquals(1, e.getRetryAfterSeconds());
+
+        // buckets are per principal and per action
+        limiter.acquireAction("describeTable").close();
+        as("bob");
+        limiter.acquireAction("listTables").close();
+    }
+
+    @Test
+    void promptsTakeTheLlmGate() {
+        set("maxPerPrincipal", 2);
+        limiter.init();
+        as("alice");
+        RequestLimiter.Permit held = limiter.acquirePrompt();
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquirePrompt());
+        assertEquals("llm", e.getGate());
+        // the query gate is separate
+        limiter.acquireAction("retrieveData").close();
+        held.close();
+        limiter.acquirePrompt().close();
+    }
+
+    @Test
+    void disabledLimiterAdmitsEverything() {
+        set("enabled", false);
+        set("queryMaxConcurrent", 1);
+        limiter.init();
+        as("alice");
+        for (int i = 0; i < 10; i++) {
+            limiter.acquireAction("retrieveData");
+        }
+    }
+
+    private void set(String field, Object value) {
+        ReflectionTestUtils.setField(limiter, field, value);
+    }
+
+    private static void as(String user) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                user, "n/a", AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+}
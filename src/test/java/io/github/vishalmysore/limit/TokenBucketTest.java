@@ -0,0 +1,69 @@
+package io.github.vishalmysore.limit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /** One token per second, a burst of three */
+    private final TokenBucket bucket = new TokenBucket(60, 3, 0);
+
+    @Test
+    void fullBucketServesItsCapacityAtOnce() {
+        assertTrue(bucket.isFull(0));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(0, 0));
+        }
+        assertFalse(bucket.isFull(0));
+        assertEquals(-1, bucket.reserve(0, 0));
+    }
+
+    @Test
+    void reservationsQueueBehindEachOther() {
+        drain();
+        assertEquals(SECOND, bucket.reserve(0, 5 * SECOND), 1);
+        assertEquals(2 * SECOND, bucket.reserve(0, 5 * SECOND), 1);
+        // the third would have to wait longer than allowed
+        assertEquals(-1, bucket.reserve(0, 2 * SECOND));
+    }
+
+    @Test
+    void rejectedReservationTakesNothing() {
+        drain();
+        assertEquals(-1, bucket.reserve(0, SECOND / 2));
+        assertEquals(-1, bucket.reserve(0, SECOND / 2));
+        assertEquals(SECOND, bucket.nanosUntilAvailable(0), 1);
+    }
+
+    @Test
+    void refundGivesTheTokenBack() {
+        drain();
+        assertEquals(SECOND, bucket.reserve(0, 5 * SECOND), 1);
+        bucket.refund();
+        assertEquals(SECOND, bucket.nanosUntilAvailable(0), 1);
+    }
+
+    @Test
+    void refillsWithTimeUpToCapacity() {
+        drain();
+        assertEquals(0, bucket.nanosUntilAvailable(SECOND));
+        assertFalse(bucket.isFull(2 * SECOND));
+        assertTrue(bucket.isFull(3 * SECOND));
+        assertTrue(bucket.isFull(60 * SECOND));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(60 * SECOND, 0));
+        }
+        assertEquals(-1, bucket.reserve(60 * SECOND, 0));
+    }
+
+    private void drain() {
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(0, 0);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.vishalmysore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkLoaderTest {
+
+    @Test
+    void convertsBooleans() throws SQLException {
+        assertEquals(Boolean.TRUE, BulkLoader.convert("TRUE", Types.BOOLEAN, "flag"));
+        assertEquals(Boolean.TRUE, BulkLoader.convert(" 1 ", Types.BOOLEAN, "flag"));
+        assertEquals(Boolean.FALSE, BulkLoader.convert("false", Types.BOOLEAN, "flag"));
+        assertEquals(Boolean.FALSE, BulkLoader.convert("0", Types.BIT, "flag"));
+        assertNull(BulkLoader.convert("", Types.BOOLEAN, "flag"));
+    }
+
+    @Test
+    void rejectsValuesThatAreNotBooleans() {
+        for (String value : new String[]{"yes", "t", "2", "ture"}) {
+            SQLException e = assertThrows(SQLException.class, () -> BulkLoader.convert(value, Types.BOOLEAN, "flag"));
+            assertEquals("22018", e.getSQLState());
+        }
+    }
+
+    @Test
+    void convertsNumbersAndRejectsGarbage() throws SQLException {
+        assertEquals(42, BulkLoader.convert("42", Types.INTEGER, "n"));
+        assertEquals(new BigDecimal("1.50"), BulkLoader.convert("1.50", Types.DECIMAL, "n"));
+        SQLException e = assertThrows(SQLException.class, () -> BulkLoader.convert("4x", Types.BIGINT, "n"));
+        assertEquals("22018", e.getSQLState());
+    }
+}
@@ -0,0 +1,213 @@
+package io.github.vishalmysore.service;
+
+import io.github.vishalmysore.advisor.WorkloadRecorder;
+import io.github.vishalmysore.cache.SchemaCatalog;
+import io.github.vishalmysore.data.ResultPage;
+import io.github.vishalmysore.metrics.SqlMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultPagerTest {
+
+    private static final String URL = "jdbc:derby:memory:resultPagerTest";
+
+    private static final int ROWS = 23;
+
+    private Connection conn;
+    private ResultPager pager;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        conn = DriverManager.getConnection(URL + ";create=true");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE items (id INT PRIMARY KEY, grp INT, name VARCHAR(10))");
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO items VALUES (?, ?, ?)")) {
+            for (int id = 1; id <= ROWS; id++) {
+                ps.setInt(1, id);
+                ps.setInt(2, id % 3);
+                ps.setString(3, "n" + (id % 4));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StatementCache statementCache = new StatementCache();
+        ReflectionTestUtils.setField(statementCache, "cacheSize", 16);
+        ReflectionTestUtils.setField(statementCache, "meterRegistry", meterRegistry);
+        statementCache.init();
+        SqlMetrics sqlMetrics = new SqlMetrics();
+        ReflectionTestUtils.setField(sqlMetrics, "meterRegistry", meterRegistry);
+        sqlMetrics.init();
+
+        ResultStreamer resultStreamer = new ResultStreamer();
+        ReflectionTestUtils.setField(resultStreamer, "statementCache", statementCache);
+        ReflectionTestUtils.setField(resultStreamer, "sqlMetrics", sqlMetrics);
+        ReflectionTestUtils.setField(resultStreamer, "queryGuard", new QueryGuard());
+        ReflectionTestUtils.setField(resultStreamer, "workloadRecorder", new WorkloadRecorder());
+        ReflectionTestUtils.setField(resultStreamer, "readReplicas", new ReadReplicas());
+        ReflectionTestUtils.setField(resultStreamer, "fetchSize", 100);
+        ReflectionTestUtils.setField(resultStreamer, "maxBytes", 1L << 20);
+
+        SchemaCatalog schemaCatalog = new SchemaCatalog();
+        ReflectionTestUtils.setField(schemaCatalog, "readReplicas", new ReadReplicas());
+
+        pager = new ResultPager();
+        ReflectionTestUtils.setField(pager, "resultStreamer", resultStreamer);
+        ReflectionTestUtils.setField(pager, "schemaCatalog", schemaCatalog);
+        ReflectionTestUtils.setField(pager, "maxCursors", 100);
+        ReflectionTestUtils.setField(pager, "ttlMinutes", 30L);
+        as("alice");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        SecurityContextHolder.clearContext();
+        conn.close();
+        try {
+            DriverManager.getConnection(URL + ";drop=true");
+        } catch (SQLException e) {
+            // 08006: the in-memory database was dropped
+            assertEquals("08006", e.getSQLState());
+        }
+    }
+
+    @Test
+    void pagesByKeyThroughEveryRowOnce() throws SQLException {
+        List<ResultPage> pages = all("SELECT id, name FROM items ORDER BY id", 5);
+        assertEquals(5, pages.size());
+        assertEquals(range(1, ROWS), column(pages, 0));
+        assertEquals(21, pages.get(4).getFirstRow());
+        assertNull(pages.get(4).getNextToken());
+
+        pages = all("SELECT * FROM items", 10);
+        assertEquals(range(1, ROWS), column(pages, 0));
+    }
+
+    @Test
+    void pagesTiesInTheOrderColumnWithoutGapsOrRepeats() throws SQLException {
+        List<ResultPage> pages = all("SELECT id, grp FROM items ORDER BY grp, id", 4);
+        List<Object> ids = column(pages, 0);
+        assertEquals(ROWS, ids.size());
+        assertEquals(range(1, ROWS), sortedInts(ids));
+        List<Object> groups = column(pages, 1);
+        for (int i = 1; i < groups.size(); i++) {
+            assertTrue((Integer) groups.get(i - 1) <= (Integer) groups.get(i));
+        }
+    }
+
+    @Test
+    void doesNotPageByAnAliasNamedLikeTheKey() throws SQLException {
+        // ID here is the name column, full of ties, paging after its last value would skip rows
+        List<ResultPage> pages = all("SELECT name AS id, grp FROM items", 5);
+        assertEquals(ROWS, column(pages, 0).size());
+
+        pages = all("SELECT id AS k, name AS \"ID\" FROM items", 5);
+        assertEquals(ROWS, column(pages, 0).size());
+
+        pages = all("SELECT id FROM items UNION ALL SELECT id FROM items", 5);
+        assertEquals(2 * ROWS, column(pages, 0).size());
+    }
+
+    @Test
+    void pagesQueriesWithTheirOwnFetchAndOffset() throws SQLException {
+        List<ResultPage> pages = all("SELECT id FROM items ORDER BY id FETCH FIRST 12 ROWS ONLY", 5);
+        assertEquals(3, pages.size());
+        assertEquals(range(1, 12), column(pages, 0));
+        assertFalse(pages.get(2).isTruncated());
+
+        pages = all("SELECT id FROM items ORDER BY id OFFSET 20 ROWS", 5);
+        assertEquals(range(21, ROWS), column(pages, 0));
+    }
+
+    @Test
+    void showsALimitedQueryThatIsNoDerivedTableAsOneTruncatedPage() throws SQLException {
+        // duplicate column names are not allowed in a derived table
+        ResultPage page = pager.firstPage(conn, "SELECT id, id FROM items ORDER BY id FETCH FIRST 12 ROWS ONLY", null, 5);
+        assertEquals(5, page.getRows().size());
+        assertTrue(page.isTruncated());
+        assertNull(page.getNextToken());
+    }
+
+    @Test
+    void tokensOnlyWorkForTheUserThatRanTheQuery() throws SQLException {
+        ResultPage first = pager.firstPage(conn, "SELECT id FROM items", null, 5);
+        String token = first.getNextToken();
+
+        as("bob");
+        assertThrows(IllegalArgumentException.class, () -> pager.page(conn, token));
+        assertNull(pager.queryOf(token));
+
+        as("alice");
+        assertEquals(Arrays.<Object>asList(6, 7, 8, 9, 10), column(Arrays.asList(pager.page(conn, token)), 0));
+    }
+
+    @Test
+    void pagesHaveToBeReachedInOrder() throws SQLException {
+        ResultPage first = pager.firstPage(conn, "SELECT id FROM items", null, 5);
+        String skipped = first.getNextToken().replaceFirst("-1$", "-3");
+        assertThrows(IllegalArgumentException.class, () -> pager.page(conn, skipped));
+    }
+
+    private List<ResultPage> all(String sql, int pageSize) throws SQLException {
+        List<ResultPage> pages = new ArrayList<ResultPage>();
+        ResultPage page = pager.firstPage(conn, sql, null, pageSize);
+        pages.add(page);
+        while (page.getNextToken() != null) {
+            page = pager.page(conn, page.getNextToken());
+            pages.add(page);
+        }
+        return pages;
+    }
+
+    private static List<Object> column(List<ResultPage> pages, int index) {
+        List<Object> values = new ArrayList<Object>();
+        for (ResultPage page : pages) {
+            for (Object[] row : page.getRows()) {
+                values.add(row[index]);
+            }
+        }
+        return values;
+    }
+
+    private static List<Object> range(int from, int to) {
+        List<Object> values = new ArrayList<Object>();
+        for (int i = from; i <= to; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    private static List<Object> sortedInts(List<Object> values) {
+        List<Object> sorted = new ArrayList<Object>(values);
+        sorted.sort((a, b) -> Integer.compare((Integer) a, (Integer) b));
+        return sorted;
+    }
+
+    private static void as(String user) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                user, "n/a", AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+}
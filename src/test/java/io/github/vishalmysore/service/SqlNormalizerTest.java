@@ -0,0 +1,78 @@
+package io.github.vishalmysore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlNormalizerTest {
+
+    @Test
+    void replacesComparisonLiterals() {
+        SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize(
+                "SELECT * FROM users WHERE id = 42 AND name <> 'O''Brien' AND email LIKE '%@x.com'");
+        assertTrue(query.isParameterized());
+        assertEquals("SELECT * FROM users WHERE id = ? AND name <> ? AND email LIKE ?", query.getSql());
+        assertEquals(Arrays.<Object>asList(42, "O'Brien", "%@x.com"), query.getParameters());
+    }
+
+    @Test
+    void typesNumbersLikeDerbyLiterals() {
+        SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize(
+                "SELECT * FROM t WHERE a = 3000000000 AND b < 9.99 AND c >= 1e3 AND d > .5 AND e != -7");
+        assertEquals("SELECT * FROM t WHERE a = ? AND b < ? AND c >= ? AND d > ? AND e != ?", query.getSql());
+        assertEquals(Arrays.<Object>asList(3000000000L, new BigDecimal("9.99"), 1000.0, new BigDecimal(".5"), -7),
+                query.getParameters());
+    }
+
+    @Test
+    void replacesBetweenBoundsAndInLists() {
+        SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize(
+                "SELECT * FROM t WHERE a BETWEEN 1 AND 10 AND b IN ('x', 'y') AND c = 2");
+        assertEquals("SELECT * FROM t WHERE a BETWEEN ? AND ? AND b IN (?, ?) AND c = ?", query.getSql());
+        assertEquals(Arrays.<Object>asList(1, 10, "x", "y", 2), query.getParameters());
+    }
+
+    @Test
+    void leavesLiteralsOutsideComparisons() {
+        String sql = "SELECT 'label', price - 1 FROM t ORDER BY 2 FETCH FIRST 10 ROWS ONLY";
+        SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize(sql);
+        assertFalse(query.isParameterized());
+        assertEquals(sql, query.getSql());
+        assertEquals(Collections.emptyList(), query.getParameters());
+    }
+
+    @Test
+    void keepsArithmeticAfterTheLiteral() {
+        SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize("SELECT * FROM t WHERE a > 5 - b");
+        assertEquals("SELECT * FROM t WHERE a > ? - b", query.getSql());
+        assertEquals(Collections.<Object>singletonList(5), query.getParameters());
+    }
+
+    @Test
+    void leavesCommentsAndQuotedIdentifiersAlone() {
+        SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize(
+                "-- where id = 1\nSELECT \"a=1\" FROM t WHERE id = 2");
+        assertEquals("-- where id = 1\nSELECT \"a=1\" FROM t WHERE id = ?", query.getSql());
+        assertEquals(Collections.<Object>singletonList(2), query.getParameters());
+    }
+
+    @Test
+    void leavesUnparsableQueriesUnchanged() {
+        String[] unchanged = {
+                "SELECT * FROM t WHERE id = ?",
+                "SELECT * FROM t WHERE name = 'open",
+                "SELECT * FROM \"t WHERE id = 1"
+        };
+        for (String sql : unchanged) {
+            SqlNormalizer.NormalizedQuery query = SqlNormalizer.normalize(sql);
+            assertFalse(query.isParameterized(), sql);
+            assertEquals(sql, query.getSql());
+        }
+    }
+}
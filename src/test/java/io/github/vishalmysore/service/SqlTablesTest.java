@@ -0,0 +1,37 @@
+package io.github.vishalmysore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlTablesTest {
+
+    @Test
+    void readsFromListsAndJoins() {
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("CUSTOMERS", "ORDERS", "ITEMS")),
+                SqlTables.tablesIn("SELECT * FROM app.customers c, \"ORDERS\" o JOIN items i ON o.id = i.order_id"
+                        + " WHERE c.id = o.customer_id"));
+    }
+
+    @Test
+    void readsDerivedTables() {
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("ORDERS")),
+                SqlTables.tablesIn("SELECT * FROM (SELECT id, total FROM orders WHERE total > 5) x"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("CUSTOMERS", "ORDERS")),
+                SqlTables.tablesIn("SELECT * FROM customers c, (SELECT customer_id FROM orders) o"
+                        + " WHERE c.id = o.customer_id"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("A", "B", "C")),
+                SqlTables.tablesIn("SELECT * FROM a, (SELECT x FROM (SELECT x FROM b) y) z, c"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("A", "B")),
+                SqlTables.tablesIn("SELECT * FROM a JOIN (SELECT * FROM b) bb ON a.x = bb.x"));
+    }
+
+    @Test
+    void readsSubqueriesInConditions() {
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("T", "U")),
+                SqlTables.tablesIn("SELECT * FROM t WHERE id IN (SELECT id FROM u) ORDER BY id"));
+    }
+}